@@ -0,0 +1,102 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates delimiter separated input for the benchmarks
+ */
+final class BenchmarkData {
+
+    private static final String[] words = {"alpha", "Berlin", "Marie", "Sklodowska", "Curie", "Washington", "Female",
+            "Male", "United States", "Germany", "Wolfgang", "Amadeus"};
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param columns - Number of columns
+     * @return - Header line, comma separated
+     */
+    static String header(int columns) {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < columns; i++)
+            header.append(i == 0 ? "" : ",").append("column").append(i);
+        return header.toString();
+    }
+
+    /**
+     * Generate comma separated rows
+     * @param rows - Number of rows
+     * @param columns - Number of columns
+     * @param quoteDensity - Share of text cells which are quoted and contain the delimiter
+     * @param typeMix - numeric, text or mixed, which value types the columns hold
+     * @return - Rows without line terminators
+     */
+    static List<String> lines(int rows, int columns, double quoteDensity, String typeMix) {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>(rows);
+        StringBuilder line = new StringBuilder();
+        for (int row = 0; row < rows; row++) {
+            line.setLength(0);
+            for (int column = 0; column < columns; column++) {
+                if (column > 0)
+                    line.append(',');
+                appendCell(line, cellType(typeMix, column), quoteDensity, random);
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Generate rows in the layout of a Person
+     * @param rows - Number of rows
+     * @return - Rows without line terminators
+     */
+    static List<String> personLines(int rows) {
+        Random random = new Random(42);
+        List<String> lines = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            lines.add("\"" + words[random.nextInt(words.length)] + ", " + words[random.nextInt(words.length)] + "\","
+                    + words[random.nextInt(words.length)] + " |,\"Curie\",Female,"
+                    + String.format("%02d-%02d-%04d", 1 + random.nextInt(28), 1 + random.nextInt(12),
+                    1900 + random.nextInt(120)) + "," + random.nextInt(10000));
+        }
+        return lines;
+    }
+
+    private static char cellType(String typeMix, int column) {
+        switch (typeMix) {
+            case "numeric":
+                return column % 2 == 0 ? 'l' : 'd';
+            case "text":
+                return 's';
+            default:
+                return "ldts".charAt(column % 4);
+        }
+    }
+
+    private static void appendCell(StringBuilder line, char type, double quoteDensity, Random random) {
+        switch (type) {
+            case 'l':
+                line.append(random.nextInt(1000000));
+                break;
+            case 'd':
+                line.append(random.nextInt(100000) / 100.0);
+                break;
+            case 't':
+                line.append(String.format("%04d-%02d-%02d", 1900 + random.nextInt(120), 1 + random.nextInt(12),
+                        1 + random.nextInt(28)));
+                break;
+            default:
+                if (random.nextDouble() < quoteDensity) {
+                    line.append('"').append(words[random.nextInt(words.length)]).append(", ")
+                            .append(words[random.nextInt(words.length)]).append('"');
+                } else {
+                    line.append(words[random.nextInt(words.length)]);
+                }
+        }
+    }
+}
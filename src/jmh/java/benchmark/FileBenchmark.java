@@ -0,0 +1,91 @@
+package benchmark;
+
+import com.example.pst.ConversionOptions;
+import com.example.pst.Main;
+import com.example.pst.RejectsFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end conversion of a generated file with {@link Main#convertFileWithIntelligence}, into a temporary file.
+ * Scores are rows per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FileBenchmark {
+
+    private static final int rows = 100000;
+
+    @Param({"6", "50"})
+    public int columns;
+
+    @Param({"0.2"})
+    public double quoteDensity;
+
+    @Param({"mixed"})
+    public String typeMix;
+
+    @Param({"1", "4"})
+    public int workers;
+
+    @Param({"true", "false"})
+    public boolean memoryMapped;
+
+    private Path input;
+    private Path output;
+    private long bytes;
+    private ConversionOptions options;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(BenchmarkData.header(columns));
+        lines.addAll(BenchmarkData.lines(rows, columns, quoteDensity, typeMix));
+        input = Files.createTempFile("pst-benchmark", ".txt");
+        Files.write(input, lines);
+        bytes = Files.size(input);
+        output = Files.createTempFile("pst-benchmark", ".jsonl");
+
+        options = new ConversionOptions();
+        options.setOutputFile(output.toString());
+        options.setWorkers(workers);
+        options.setMemoryMapped(memoryMapped);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(RejectsFile.pathFor(output));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(rows)
+    public void convertFileWithIntelligence(InputBytes inputBytes) throws IOException {
+        new Main().convertFileWithIntelligence(input.toString(), options);
+        inputBytes.add(bytes);
+    }
+}
@@ -0,0 +1,26 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the input consumed by a benchmark, reported by JMH as MB per second
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class InputBytes {
+
+    public double inputMB;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        inputMB = 0;
+    }
+
+    void add(long bytes) {
+        inputMB += bytes / 1e6;
+    }
+}
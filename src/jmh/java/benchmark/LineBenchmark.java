@@ -0,0 +1,117 @@
+package benchmark;
+
+import com.example.pst.FieldOffsets;
+import com.example.pst.IntelligentJsonLineConverter;
+import com.example.pst.JsonLineConverter;
+import com.example.pst.LineTokenizer;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per row costs of splitting and converting lines. Scores are rows per second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LineBenchmark {
+
+    private static final int rows = 1000;
+    private static final String splitterPostfix = "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
+
+    @Param({"6", "50", "200"})
+    public int columns;
+
+    @Param({"0", "0.2", "1"})
+    public double quoteDensity;
+
+    @Param({"numeric", "text", "mixed"})
+    public String typeMix;
+
+    private List<String> lines;
+    private List<String> personLines;
+    private long bytes;
+    private long personBytes;
+    private LineTokenizer tokenizer;
+    private FieldOffsets offsets;
+    private JsonLineConverter personConverter;
+    private IntelligentJsonLineConverter converter;
+    private IntelligentJsonLineConverter typedConverter;
+    private StringBuilder json;
+
+    @Setup
+    public void setup() {
+        lines = BenchmarkData.lines(rows, columns, quoteDensity, typeMix);
+        personLines = BenchmarkData.personLines(rows);
+        bytes = lines.stream().mapToLong(line -> line.length() + 1).sum();
+        personBytes = personLines.stream().mapToLong(line -> line.length() + 1).sum();
+
+        Gson gson = new GsonBuilder().create();
+        tokenizer = LineTokenizer.forDelimeter(",");
+        offsets = new FieldOffsets();
+        personConverter = new JsonLineConverter(",");
+        converter = new IntelligentJsonLineConverter(",", BenchmarkData.header(columns), gson);
+        typedConverter = converter.inferSchema(lines.subList(0, 100));
+        json = new StringBuilder();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(rows)
+    public void regexSplit(Blackhole blackhole, InputBytes input) {
+        for (String line : lines)
+            blackhole.consume(line.split("," + splitterPostfix, -1));
+        input.add(bytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(rows)
+    public void tokenize(Blackhole blackhole, InputBytes input) {
+        for (String line : lines)
+            blackhole.consume(tokenizer.tokenize(line, offsets));
+        input.add(bytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(rows)
+    public void convert(Blackhole blackhole, InputBytes input) {
+        for (String line : personLines)
+            blackhole.consume(personConverter.convert(line));
+        input.add(personBytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(rows)
+    public void intelligentConvert(Blackhole blackhole, InputBytes input) {
+        for (String line : lines)
+            blackhole.consume(converter.intelligentConvert(line));
+        input.add(bytes);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(rows)
+    public void intelligentConvertTyped(Blackhole blackhole, InputBytes input) {
+        json.setLength(0);
+        for (String line : lines)
+            typedConverter.intelligentConvert(line, json);
+        blackhole.consume(json);
+        input.add(bytes);
+    }
+}
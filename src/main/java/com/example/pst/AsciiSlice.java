@@ -0,0 +1,53 @@
+package com.example.pst;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A range of ASCII bytes seen as characters, so the text recognizers can read input bytes without decoding them.
+ * An instance is reused from cell to cell, so it must not be shared between threads.
+ */
+final class AsciiSlice implements CharSequence {
+
+    private ByteBuffer bytes;
+    private int start;
+    private int length;
+
+    /**
+     * Point the slice at a range
+     * @param bytes - Buffer holding the text
+     * @param from - Offset of the first byte
+     * @param to - Offset after the last byte, all bytes of the range are below 128
+     * @return - This slice
+     */
+    AsciiSlice set(ByteBuffer bytes, int from, int to) {
+        this.bytes = bytes;
+        this.start = from;
+        this.length = to - from;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " of " + length);
+        return (char) bytes.get(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return toString().substring(from, to);
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++)
+            chars[i] = (char) bytes.get(start + i);
+        return new String(chars);
+    }
+}
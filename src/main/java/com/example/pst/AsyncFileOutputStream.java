@@ -0,0 +1,257 @@
+package com.example.pst;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a file through two direct buffers: the calling thread fills one while a background thread
+ * writes the other to the file channel, so producing output overlaps with the disk write.
+ * A failed write is reported to the caller by the next write, flush or close.
+ * An instance must be used by one thread at a time.
+ */
+public class AsyncFileOutputStream extends OutputStream {
+
+    public static final int defaultFlushSize = 4 << 20;
+
+    private static final AtomicInteger writerCount = new AtomicInteger();
+
+    //Marks the end of the output for the writer thread
+    private static final ByteBuffer end = ByteBuffer.allocate(0);
+
+    private final FileChannel channel;
+    private final boolean fsync;
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(2);
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(2);
+    private final Thread writer;
+    private volatile IOException failure;
+    private ByteBuffer current;
+    private long position;
+    private boolean closed;
+
+    /**
+     * Create or truncate a file for writing
+     * @param path - File to write
+     * @param flushSize - Size of each of the two buffers, data is handed to the writer thread when a buffer is full
+     * @param fsync - Whether the file is forced to the storage device when the stream is closed
+     * @throws IOException - Thrown if the file cannot be opened
+     */
+    public AsyncFileOutputStream(Path path, int flushSize, boolean fsync) throws IOException {
+        this(path, 0, flushSize, fsync);
+    }
+
+    /**
+     * Create a file, or cut an existing one to an offset and continue writing there
+     * @param path - File to write
+     * @param offset - Length the file is cut to, 0 truncates it
+     * @param flushSize - Size of each of the two buffers, data is handed to the writer thread when a buffer is full
+     * @param fsync - Whether the file is forced to the storage device when the stream is closed
+     * @throws IOException - Thrown if the file cannot be opened or is shorter than the offset
+     */
+    public AsyncFileOutputStream(Path path, long offset, int flushSize, boolean fsync) throws IOException {
+        if (flushSize < 1)
+            throw new IllegalArgumentException("Flush size must be at least 1");
+        if (offset < 0)
+            throw new IllegalArgumentException("Offset must not be negative");
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < offset)
+                throw new IOException("Output file " + path + " is shorter than " + offset + " bytes");
+            channel.truncate(offset);
+            channel.position(offset);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        this.position = offset;
+        this.fsync = fsync;
+        this.current = ByteBuffer.allocateDirect(flushSize);
+        free.add(ByteBuffer.allocateDirect(flushSize));
+
+        this.writer = new Thread(this::writeFilled, "pst-output-" + writerCount.incrementAndGet());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (!current.hasRemaining())
+            handOver();
+        current.put((byte) b);
+        position++;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureOpen();
+        if (offset < 0 || length < 0 || offset + length > bytes.length)
+            throw new IndexOutOfBoundsException();
+        while (length > 0) {
+            if (!current.hasRemaining())
+                handOver();
+            int count = Math.min(length, current.remaining());
+            current.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+            position += count;
+        }
+    }
+
+    /**
+     * Write the remaining bytes of a buffer
+     * @param source - Bytes to write, its position is moved to its limit
+     * @throws IOException - Thrown if an earlier write to the file failed
+     */
+    public void write(ByteBuffer source) throws IOException {
+        ensureOpen();
+        position += source.remaining();
+        while (source.hasRemaining()) {
+            if (!current.hasRemaining())
+                handOver();
+            if (source.remaining() <= current.remaining()) {
+                current.put(source);
+            } else {
+                ByteBuffer part = source.duplicate();
+                ((Buffer) part).limit(part.position() + current.remaining());
+                current.put(part);
+                ((Buffer) source).position(part.position());
+            }
+        }
+    }
+
+    /**
+     * Hand the buffered bytes to the writer thread and wait until everything is written to the file
+     * @throws IOException - Thrown if a write to the file failed
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (current.position() > 0)
+            handOver();
+
+        //Both buffers are free once the writer thread is idle
+        ByteBuffer other = take(free);
+        free.add(other);
+        checkFailure();
+    }
+
+    /**
+     * @return - Length of the file once every byte written so far has reached it
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Write the buffered bytes and force the file to the storage device, whether or not fsync was requested
+     * @throws IOException - Thrown if a write to the file failed
+     */
+    public void force() throws IOException {
+        flush();
+        channel.force(true);
+    }
+
+    /**
+     * Write the buffered bytes, force them to the device if requested and close the file
+     * @throws IOException - Thrown if a write to the file failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        try {
+            if (current.position() > 0 && failure == null)
+                handOver();
+            put(filled, end);
+            join();
+            checkFailure();
+            if (fsync)
+                channel.force(true);
+        } finally {
+            writer.interrupt();
+            channel.close();
+        }
+    }
+
+    /**
+     * Hand the current buffer to the writer thread and continue with the other one, waiting for it if it is
+     * still being written
+     */
+    private void handOver() throws IOException {
+        ((Buffer) current).flip();
+        put(filled, current);
+        current = take(free);
+        checkFailure();
+    }
+
+    /**
+     * Writer thread: write filled buffers in order and return them. After a failure buffers are returned
+     * unwritten, so the calling thread never waits for a buffer and learns about the failure
+     */
+    private void writeFilled() {
+        try {
+            for (ByteBuffer buffer = filled.take(); buffer != end; buffer = filled.take()) {
+                try {
+                    while (failure == null && buffer.hasRemaining())
+                        channel.write(buffer);
+                } catch (IOException e) {
+                    failure = e;
+                }
+                ((Buffer) buffer).clear();
+                free.add(buffer);
+            }
+        } catch (InterruptedException e) {
+            if (failure == null)
+                failure = new InterruptedIOException("Output writer interrupted");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        IOException failure = this.failure;
+        if (failure != null)
+            throw new IOException("Writing output failed", failure);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+        checkFailure();
+    }
+
+    private void join() throws IOException {
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing output");
+        }
+    }
+
+    private static void put(BlockingQueue<ByteBuffer> queue, ByteBuffer buffer) throws IOException {
+        try {
+            queue.put(buffer);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing output");
+        }
+    }
+
+    private static ByteBuffer take(BlockingQueue<ByteBuffer> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing output");
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.pst;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts many files in one JVM, several at the same time on a fixed number of threads.
+ * Every file gets its own output named after it, a failing file is reported and does not stop the others.
+ * Files with the same header share their converter through the {@link ConverterFactory} of the {@link Main}.
+ */
+public class BatchConverter {
+
+    private static final AtomicInteger batchCount = new AtomicInteger();
+
+    private final Main main;
+
+    /**
+     * @param main - Converter of single files, shared by all threads
+     */
+    public BatchConverter(Main main) {
+        this.main = main;
+    }
+
+    /**
+     * Expand input arguments to files. An argument is a file, a directory whose files are all taken, a glob
+     * like data/*.csv matched against the files of its directory, or @list naming a file with one input per line
+     * @param arguments - Input arguments
+     * @return - Files in argument order, the files of a directory or glob sorted by name
+     * @throws IOException - Thrown if a directory or list cannot be read, or an input does not exist
+     */
+    public static List<Path> resolveInputs(List<String> arguments) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (String argument : arguments) {
+            if (argument.startsWith("@")) {
+                List<String> listed = new ArrayList<>();
+                for (String line : Files.readAllLines(Paths.get(argument.substring(1)))) {
+                    if (!line.trim().isEmpty())
+                        listed.add(line.trim());
+                }
+                inputs.addAll(resolveInputs(listed));
+            } else if (isGlob(argument)) {
+                Path glob = Paths.get(argument);
+                Path directory = glob.getParent() == null ? Paths.get(".") : glob.getParent();
+                PathMatcher matcher = glob.getFileSystem().getPathMatcher("glob:" + glob.getFileName());
+                inputs.addAll(filesOf(directory, path -> matcher.matches(path.getFileName())));
+            } else {
+                Path path = Paths.get(argument);
+                if (Files.isDirectory(path))
+                    inputs.addAll(filesOf(path, file -> true));
+                else if (Files.isRegularFile(path))
+                    inputs.add(path);
+                else
+                    throw new IOException("Input not found: " + argument);
+            }
+        }
+        return inputs;
+    }
+
+    /**
+     * Name the output of an input file by {@link ConversionOptions#getOutputPattern()}
+     * @param input - Input file
+     * @param options - Output directory and pattern
+     * @return - Output file
+     */
+    public static Path outputFor(Path input, ConversionOptions options) {
+        String file = input.getFileName().toString();
+        String name = file;
+        if (name.toLowerCase(Locale.ROOT).endsWith(".gz"))
+            name = name.substring(0, name.length() - 3);
+        int dot = name.lastIndexOf('.');
+        if (dot > 0)
+            name = name.substring(0, dot);
+        return Paths.get(options.getOutputDirectory())
+                .resolve(options.getOutputPattern().replace("{name}", name).replace("{file}", file));
+    }
+
+    /**
+     * Convert files concurrently, each to the output named by {@link #outputFor(Path, ConversionOptions)}
+     * @param inputs - Files to convert
+     * @param options - Options of every file, and the number of files converted at once
+     * @return - Report of every file in input order, failed files carry their error
+     * @throws IOException - Thrown if the output directory cannot be created
+     * @throws IllegalArgumentException - Thrown if two inputs would be written to the same output, or an input
+     * would be overwritten
+     */
+    public List<ConversionReport> convert(List<Path> inputs, ConversionOptions options) throws IOException {
+        Map<Path, Path> outputs = new HashMap<>();
+        for (Path input : inputs) {
+            Path output = outputFor(input, options).toAbsolutePath().normalize();
+            if (output.equals(input.toAbsolutePath().normalize()))
+                throw new IllegalArgumentException("Input " + input + " would be overwritten by its output");
+            Path other = outputs.put(output, input);
+            if (other != null)
+                throw new IllegalArgumentException("Inputs " + other + " and " + input + " both write " + output);
+        }
+        Files.createDirectories(Paths.get(options.getOutputDirectory()));
+
+        int id = batchCount.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(options.getParallelFiles(), runnable -> {
+            Thread thread = new Thread(runnable, "pst-batch-" + id + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<ConversionReport>> futures = new ArrayList<>();
+            for (Path input : inputs)
+                futures.add(executor.submit(() -> convert(input, options)));
+
+            List<ConversionReport> reports = new ArrayList<>();
+            for (Future<ConversionReport> future : futures)
+                reports.add(future.get());
+            return reports;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while converting files");
+        } catch (ExecutionException e) {
+            //Conversions report their own errors, anything else is a bug
+            throw new IllegalStateException("Converting files failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Print one line per file and a total line
+     * @param reports - Reports of a batch
+     * @param out - Stream to print to
+     */
+    public static void printSummary(List<ConversionReport> reports, PrintStream out) {
+        long rows = 0;
+        long skipped = 0;
+        long inputBytes = 0;
+        long outputBytes = 0;
+        int failed = 0;
+        for (ConversionReport report : reports) {
+            out.println(report);
+            rows += report.getRows();
+            skipped += report.getSkippedRows();
+            inputBytes += report.getInputBytes();
+            outputBytes += report.getOutputBytes();
+            if (!report.isSuccessful())
+                failed++;
+        }
+        out.println(reports.size() + " files, " + failed + " failed, " + rows + " rows, " + skipped + " skipped, "
+                + inputBytes + " bytes in, " + outputBytes + " bytes out");
+    }
+
+    private ConversionReport convert(Path input, ConversionOptions options) {
+        long started = System.nanoTime();
+        ConversionOptions fileOptions = options.copy();
+        fileOptions.setOutputFile(outputFor(input, options).toString());
+        try {
+            return main.convertFileWithIntelligence(input.toString(), fileOptions);
+        } catch (Exception e) {
+            return ConversionReport.failed(input, Paths.get(fileOptions.getOutputFile()), e,
+                    System.nanoTime() - started);
+        }
+    }
+
+    private static boolean isGlob(String argument) {
+        return argument.indexOf('*') >= 0 || argument.indexOf('?') >= 0 || argument.indexOf('[') >= 0
+                || argument.indexOf('{') >= 0;
+    }
+
+    private static List<Path> filesOf(Path directory, DirectoryStream.Filter<Path> filter) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, filter)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry))
+                    files.add(entry);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.pst;
+
+/**
+ * A range of a character sequence seen as a character sequence of its own, without copying it.
+ * An instance is reused from cell to cell, so it must not be shared between threads.
+ */
+final class CharSlice implements CharSequence {
+
+    private CharSequence text;
+    private int start;
+    private int length;
+
+    /**
+     * Point the slice at a range
+     * @param text - Text holding the range
+     * @param from - Offset of the first character
+     * @param to - Offset after the last character
+     * @return - This slice
+     */
+    CharSlice set(CharSequence text, int from, int to) {
+        this.text = text;
+        this.start = from;
+        this.length = to - from;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException("Index " + index + " of " + length);
+        return text.charAt(start + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return text.subSequence(start + from, start + to);
+    }
+
+    @Override
+    public String toString() {
+        return text.subSequence(start, start + length).toString();
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.pst;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * Progress of a resumable conversion: how much of the input is converted, how long the output and the rejects file
+ * are at that point and the header, dialect, column types and selected columns and rows the conversion started with,
+ * so a restart neither re-reads converted rows nor samples them again, and writes rows of the same shape.
+ * Instances are immutable.
+ */
+public final class Checkpoint {
+
+    public static final String fileSuffix = ".checkpoint";
+
+    //Separates the selected columns and the filters in the checkpoint file, line breaks do not occur in either
+    private static final String listSeparator = "\n";
+
+    private final String header;
+    private final Dialect dialect;
+    private final ColumnSchema schema;
+    private final List<String> columns;
+    private final List<RowFilter> filters;
+    private final long inputOffset;
+    private final long outputOffset;
+    private final long rejectsOffset;
+
+    /**
+     * @param header - Line naming the fields, the first line of the input file if it has a header
+     * @param dialect - Dialect of the input file, null if it was not recorded
+     * @param schema - Column types the converter uses, null if none were inferred
+     * @param columns - Names of the columns written, null for all
+     * @param filters - Filters every written row matches
+     * @param inputOffset - Byte offset of the first input line which is not converted yet
+     * @param outputOffset - Length of the output holding the lines before the input offset
+     * @param rejectsOffset - Length of the rejects file holding the rejected lines before the input offset, -1 if it
+     * was not recorded
+     */
+    public Checkpoint(String header, Dialect dialect, ColumnSchema schema, List<String> columns,
+                      List<RowFilter> filters, long inputOffset, long outputOffset, long rejectsOffset) {
+        if (inputOffset < 0 || outputOffset < 0 || rejectsOffset < -1)
+            throw new IllegalArgumentException("Offsets must not be negative");
+        this.header = header;
+        this.dialect = dialect;
+        this.schema = schema;
+        this.columns = columns == null ? null : Collections.unmodifiableList(new ArrayList<>(columns));
+        this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+        this.inputOffset = inputOffset;
+        this.outputOffset = outputOffset;
+        this.rejectsOffset = rejectsOffset;
+    }
+
+    /**
+     * @param output - Output file of a conversion
+     * @return - File holding the checkpoint of the conversion, next to the output
+     */
+    public static Path pathFor(Path output) {
+        return output.resolveSibling(output.getFileName() + fileSuffix);
+    }
+
+    /**
+     * @return - Line naming the fields, the first line of the input file if it has a header
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @return - Dialect of the input file, null if it was not recorded
+     */
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * @return - Column types the converter uses, null if none were inferred
+     */
+    public ColumnSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return - Names of the columns written, null for all
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return - Filters every written row matches
+     */
+    public List<RowFilter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * @return - Byte offset of the first input line which is not converted yet
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * @return - Length of the output holding the lines before the input offset
+     */
+    public long getOutputOffset() {
+        return outputOffset;
+    }
+
+    /**
+     * @return - Length of the rejects file holding the rejected lines before the input offset, -1 if it was not
+     * recorded
+     */
+    public long getRejectsOffset() {
+        return rejectsOffset;
+    }
+
+    /**
+     * Read a checkpoint file
+     * @param path - Checkpoint file
+     * @return - Checkpoint, empty if the file does not exist
+     * @throws IOException - Thrown if the file cannot be read or is not a checkpoint
+     */
+    public static Optional<Checkpoint> read(Path path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+
+        try {
+            String dialect = properties.getProperty("dialect");
+            String schema = properties.getProperty("schema");
+            String columns = properties.getProperty("columns");
+            List<RowFilter> filters = new ArrayList<>();
+            String filterList = properties.getProperty("filters");
+            if (filterList != null) {
+                for (String filter : filterList.split(listSeparator, -1))
+                    filters.add(RowFilter.parse(filter));
+            }
+            String rejectsOffset = properties.getProperty("rejectsOffset");
+            return Optional.of(new Checkpoint(required(properties, "header"),
+                    dialect == null ? null : Dialect.parse(dialect),
+                    schema == null ? null : ColumnSchema.parse(schema),
+                    columns == null ? null : Arrays.asList(columns.split(listSeparator, -1)), filters,
+                    Long.parseLong(required(properties, "inputOffset")),
+                    Long.parseLong(required(properties, "outputOffset")),
+                    rejectsOffset == null ? -1 : Long.parseLong(rejectsOffset)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid checkpoint " + path + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Replace a checkpoint file. The checkpoint is written to a temporary file which is moved over the old one,
+     * so a crash leaves either the old or the new checkpoint
+     * @param path - Checkpoint file
+     * @param fsync - Whether the checkpoint is forced to the storage device before it replaces the old one
+     * @throws IOException - Thrown if the file cannot be written
+     */
+    public void write(Path path, boolean fsync) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("header", header);
+        if (dialect != null)
+            properties.setProperty("dialect", dialect.format());
+        if (schema != null)
+            properties.setProperty("schema", schema.format());
+        if (columns != null)
+            properties.setProperty("columns", String.join(listSeparator, columns));
+        if (!filters.isEmpty()) {
+            List<String> texts = new ArrayList<>();
+            for (RowFilter filter : filters)
+                texts.add(filter.toString());
+            properties.setProperty("filters", String.join(listSeparator, texts));
+        }
+        properties.setProperty("inputOffset", Long.toString(inputOffset));
+        properties.setProperty("outputOffset", Long.toString(outputOffset));
+        if (rejectsOffset >= 0)
+            properties.setProperty("rejectsOffset", Long.toString(rejectsOffset));
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            properties.store(out, "pst conversion checkpoint");
+            out.flush();
+            if (fsync)
+                channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String required(Properties properties, String key) {
+        String value = properties.getProperty(key);
+        if (value == null)
+            throw new IllegalArgumentException("Missing " + key);
+        return value;
+    }
+}
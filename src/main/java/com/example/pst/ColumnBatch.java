@@ -0,0 +1,265 @@
+package com.example.pst;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A row group under construction: typed values collected column by column, written in the
+ * {@link ColumnarFormat} layout. Values are kept in primitive arrays, strings as indexes into a dictionary per
+ * column. Cells of a row are added in column order, then the row is ended.
+ * An instance must be used by one thread at a time.
+ */
+public final class ColumnBatch {
+
+    private static final byte missing = 0;
+    private static final byte longKind = 1;
+    private static final byte doubleKind = 2;
+    private static final byte dateKind = 4;
+    private static final byte stringKind = 8;
+
+    //Longs up to 2^53 are exact doubles
+    private static final long maxExactDouble = 1L << 53;
+
+    private final List<String> columns;
+    private final Column[] values;
+    private int rows;
+    private int column;
+
+    /**
+     * @param columns - Names of the columns
+     */
+    public ColumnBatch(List<String> columns) {
+        this.columns = columns;
+        this.values = new Column[columns.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = new Column();
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return - Number of ended rows
+     */
+    public int rowCount() {
+        return rows;
+    }
+
+    public void addNull() {
+        next().add(missing, 0);
+    }
+
+    public void addLong(long value) {
+        next().add(longKind, value);
+    }
+
+    public void addDouble(double value) {
+        next().add(doubleKind, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * @param epochDay - Days since 1970-01-01
+     */
+    public void addDate(long epochDay) {
+        next().add(dateKind, epochDay);
+    }
+
+    public void addString(String value) {
+        Column cells = next();
+        cells.add(stringKind, cells.indexOf(value));
+    }
+
+    /**
+     * Add a cell of a converted row, strings are copied out of their line
+     * @param row - Converted row
+     * @param column - Column index in the row
+     */
+    public void addCell(RowBuffer row, int column) {
+        switch (row.kind(column)) {
+            case RowBuffer.longCell:
+                addLong(row.getLong(column));
+                break;
+            case RowBuffer.doubleCell:
+                addDouble(row.getDouble(column));
+                break;
+            case RowBuffer.dateCell:
+                addDate(row.getEpochDay(column));
+                break;
+            case RowBuffer.textCell:
+            case RowBuffer.utf8Cell:
+                addString(row.getString(column));
+                break;
+            default:
+                addNull();
+        }
+    }
+
+    /**
+     * End a row after a cell was added to every column
+     */
+    public void endRow() {
+        if (column != values.length)
+            throw new IllegalStateException("Row has " + column + " cells, batch has " + values.length + " columns");
+        column = 0;
+        rows++;
+    }
+
+    /**
+     * Drop the cells of a row which is not ended
+     */
+    public void abandonRow() {
+        for (int i = 0; i < column; i++)
+            values[i].size = rows;
+        column = 0;
+    }
+
+    /**
+     * Remove every row, keeping the allocated arrays
+     */
+    public void clear() {
+        for (Column cells : values)
+            cells.clear();
+        rows = 0;
+        column = 0;
+    }
+
+    /**
+     * Encode the ended rows as a row group
+     * @return - Row group bytes, empty if there are no rows
+     */
+    public ByteBuffer encode() {
+        if (rows == 0)
+            return ByteBuffer.allocate(0);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows * values.length * 8 + 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(rows);
+            for (Column cells : values)
+                cells.write(out, rows);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    private Column next() {
+        if (column == values.length)
+            throw new IllegalStateException("Row already has a cell for every column");
+        return values[column++];
+    }
+
+    /**
+     * Cells of one column: the kind of every cell and its value, the bits of a double or the dictionary index
+     * of a string
+     */
+    private static final class Column {
+        private byte[] kinds = new byte[1024];
+        private long[] cells = new long[1024];
+        private int size;
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+
+        private void add(byte kind, long value) {
+            if (size == kinds.length) {
+                kinds = Arrays.copyOf(kinds, size * 2);
+                cells = Arrays.copyOf(cells, size * 2);
+            }
+            kinds[size] = kind;
+            cells[size++] = value;
+        }
+
+        private int indexOf(String value) {
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = dictionary.size();
+                indexes.put(value, index);
+                dictionary.add(value);
+            }
+            return index;
+        }
+
+        private void clear() {
+            size = 0;
+            indexes.clear();
+            dictionary.clear();
+        }
+
+        private void write(DataOutputStream out, int rows) throws IOException {
+            int kindsSeen = 0;
+            boolean exactLongs = true;
+            boolean intDays = true;
+            byte[] present = new byte[(rows + 7) / 8];
+            for (int row = 0; row < rows; row++) {
+                kindsSeen |= kinds[row];
+                if (kinds[row] != missing)
+                    present[row >>> 3] |= 1 << (row & 7);
+                if (kinds[row] == longKind && Math.abs(cells[row]) > maxExactDouble)
+                    exactLongs = false;
+                if (kinds[row] == dateKind && (int) cells[row] != cells[row])
+                    intDays = false;
+            }
+
+            if ((kindsSeen & ~longKind) == 0) {
+                out.writeByte(ColumnarFormat.int64);
+                out.write(present);
+                for (int row = 0; row < rows; row++)
+                    out.writeLong(cells[row]);
+            } else if ((kindsSeen & ~doubleKind) == 0 || (kindsSeen == (longKind | doubleKind) && exactLongs)) {
+                out.writeByte(ColumnarFormat.float64);
+                out.write(present);
+                for (int row = 0; row < rows; row++)
+                    out.writeDouble(kinds[row] == longKind ? cells[row] : Double.longBitsToDouble(cells[row]));
+            } else if (kindsSeen == dateKind && intDays) {
+                out.writeByte(ColumnarFormat.date32);
+                out.write(present);
+                for (int row = 0; row < rows; row++)
+                    out.writeInt((int) cells[row]);
+            } else if (kindsSeen == stringKind) {
+                out.writeByte(ColumnarFormat.string);
+                out.write(present);
+                writeStrings(out, dictionary, rows, row -> (int) cells[row]);
+            } else {
+                //Mixed values are written as the text of their json value
+                Column texts = new Column();
+                for (int row = 0; row < rows; row++)
+                    texts.add(kinds[row], kinds[row] == missing ? 0 : texts.indexOf(text(row)));
+                out.writeByte(ColumnarFormat.string);
+                out.write(present);
+                writeStrings(out, texts.dictionary, rows, row -> (int) texts.cells[row]);
+            }
+        }
+
+        private String text(int row) {
+            switch (kinds[row]) {
+                case longKind:
+                    return Long.toString(cells[row]);
+                case doubleKind:
+                    return Double.toString(Double.longBitsToDouble(cells[row]));
+                case dateKind:
+                    return LocalDate.ofEpochDay(cells[row]).format(JsonRowEncoder.outputDateFormatter);
+                default:
+                    return dictionary.get((int) cells[row]);
+            }
+        }
+
+        private static void writeStrings(DataOutputStream out, List<String> dictionary, int rows,
+                                         IntUnaryOperator index) throws IOException {
+            out.writeInt(dictionary.size());
+            for (String value : dictionary)
+                ColumnarFormat.writeString(out, value);
+            for (int row = 0; row < rows; row++)
+                out.writeInt(index.applyAsInt(row));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.pst;
+
+import java.util.Arrays;
+
+/**
+ * Value types of the columns of a file, inferred from a sample of its rows.
+ * A converter uses the type of a column to try a single parser for its cells first.
+ * Instances are immutable.
+ */
+public final class ColumnSchema {
+
+    public static final int defaultSampleSize = 100;
+
+    private final ColumnType[] types;
+    private final int[] datePatterns;
+
+    private ColumnSchema(ColumnType[] types, int[] datePatterns) {
+        this.types = types;
+        this.datePatterns = datePatterns;
+    }
+
+    /**
+     * Collects the types of sampled cells
+     */
+    static final class Inference {
+
+        private final ColumnType[] types;
+        private final int[] datePatterns;
+
+        Inference(int columns) {
+            types = new ColumnType[columns];
+            datePatterns = new int[columns];
+            Arrays.fill(datePatterns, -1);
+        }
+
+        /**
+         * Record the type of a non empty cell
+         * @param column - Column index
+         * @param type - Type of the cell value
+         * @param datePattern - Index of the date format which parsed the cell, -1 if it is not a date
+         */
+        void observe(int column, ColumnType type, int datePattern) {
+            if (types[column] == null) {
+                types[column] = type;
+                datePatterns[column] = datePattern;
+            } else if (types[column] != type || datePatterns[column] != datePattern) {
+                types[column] = ColumnType.MIXED;
+                datePatterns[column] = -1;
+            }
+        }
+
+        /**
+         * @return - Schema where a column has a type only if all of its sampled values have that type
+         */
+        ColumnSchema toSchema() {
+            ColumnType[] inferred = types.clone();
+            for (int i = 0; i < inferred.length; i++) {
+                if (inferred[i] == null)
+                    inferred[i] = ColumnType.MIXED;
+            }
+            return new ColumnSchema(inferred, datePatterns.clone());
+        }
+    }
+
+    /**
+     * @return - Number of columns
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * @param column - Column index
+     * @return - Type of the column
+     */
+    public ColumnType type(int column) {
+        return types[column];
+    }
+
+    /**
+     * @param column - Column index
+     * @return - Index of the supported date format of a {@link ColumnType#DATE} column, -1 for other columns
+     */
+    public int datePattern(int column) {
+        return datePatterns[column];
+    }
+
+    /**
+     * Write the schema as text, one entry per column separated by commas. Date columns carry the index of
+     * their date format, like DATE:2
+     * @return - Text read back by {@link #parse(String)}
+     */
+    public String format() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0)
+                text.append(',');
+            text.append(types[i].name());
+            if (datePatterns[i] >= 0)
+                text.append(':').append(datePatterns[i]);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Read a schema written by {@link #format()}
+     * @param text - Schema as text
+     * @return - Schema
+     * @throws IllegalArgumentException - Thrown if the text is not a schema
+     */
+    public static ColumnSchema parse(String text) {
+        String[] columns = text.split(",", -1);
+        ColumnType[] types = new ColumnType[columns.length];
+        int[] datePatterns = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            int colon = columns[i].indexOf(':');
+            types[i] = ColumnType.valueOf(colon < 0 ? columns[i] : columns[i].substring(0, colon));
+            datePatterns[i] = colon < 0 ? -1 : Integer.parseInt(columns[i].substring(colon + 1));
+            if ((types[i] == ColumnType.DATE) != (datePatterns[i] >= 0))
+                throw new IllegalArgumentException("Invalid schema column " + columns[i]);
+        }
+        return new ColumnSchema(types, datePatterns);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(types);
+    }
+}
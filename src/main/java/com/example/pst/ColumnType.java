@@ -0,0 +1,15 @@
+package com.example.pst;
+
+/**
+ * Type of the values of a column, as inferred for a {@link ColumnSchema}
+ */
+public enum ColumnType {
+    LONG,
+    DOUBLE,
+    DATE,
+    STRING,
+    /**
+     * Values of different types, or no values at all in the sample
+     */
+    MIXED
+}
@@ -0,0 +1,157 @@
+package com.example.pst;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A simple self describing columnar layout for converted rows. All numbers are big endian.
+ * <pre>
+ * file      = "PSTC" version:int columns:int name* rowGroup* 0:int
+ * name      = length:int utf8Bytes
+ * rowGroup  = rows:int chunk*                    one chunk per column, rows &gt; 0
+ * chunk     = encoding:byte present:bitmap values
+ * bitmap    = (rows + 7) / 8 bytes, bit i % 8 of byte i / 8 is set if row i has a value
+ * values    = INT64: rows * long | FLOAT64: rows * double | DATE32: rows * int days since 1970-01-01
+ *           | STRING: size:int (length:int utf8Bytes)* rows * int dictionary index
+ * </pre>
+ * Missing values are written as 0. The encoding is chosen per chunk from the values of the column in the row group:
+ * longs, doubles, dates or strings. Longs and doubles mixed are written as doubles if the longs are exact doubles,
+ * any other mix as the strings the json output would hold.
+ */
+public final class ColumnarFormat {
+
+    public static final int version = 1;
+    public static final byte int64 = 0;
+    public static final byte float64 = 1;
+    public static final byte date32 = 2;
+    public static final byte string = 3;
+
+    private static final byte[] magic = {'P', 'S', 'T', 'C'};
+
+    private ColumnarFormat() {
+    }
+
+    /**
+     * @param columns - Names of the columns
+     * @return - Bytes starting a file
+     */
+    public static byte[] header(List<String> columns) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.write(magic);
+            out.writeInt(version);
+            out.writeInt(columns.size());
+            for (String column : columns)
+                writeString(out, column);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return - Bytes ending a file
+     */
+    public static byte[] trailer() {
+        return new byte[4];
+    }
+
+    static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(utf8.length);
+        out.write(utf8);
+    }
+
+    /**
+     * Read a whole file into rows, for checking and small files. Values are Long, Double, LocalDate or String,
+     * missing values are left out of a row like they are left out of a json line
+     * @param input - File content
+     * @return - Rows in file order, each mapping column names to values in column order
+     * @throws IOException - Thrown if the input cannot be read or is not in this format
+     */
+    public static List<Map<String, Object>> read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        byte[] start = new byte[magic.length];
+        in.readFully(start);
+        if (!Arrays.equals(start, magic))
+            throw new IOException("Not a columnar file");
+        if (in.readInt() != version)
+            throw new IOException("Unsupported columnar version");
+
+        List<String> columns = new ArrayList<>();
+        for (int i = in.readInt(); i > 0; i--)
+            columns.add(readString(in));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int count = in.readInt(); count > 0; count = in.readInt()) {
+            List<Map<String, Object>> group = new ArrayList<>();
+            for (int row = 0; row < count; row++)
+                group.add(new LinkedHashMap<>());
+            for (String column : columns)
+                readChunk(in, column, group);
+            rows.addAll(group);
+        }
+        return rows;
+    }
+
+    private static void readChunk(DataInputStream in, String column, List<Map<String, Object>> group)
+            throws IOException {
+        byte encoding = in.readByte();
+        byte[] present = new byte[(group.size() + 7) / 8];
+        in.readFully(present);
+
+        List<String> dictionary = Collections.emptyList();
+        if (encoding == string) {
+            dictionary = new ArrayList<>();
+            for (int i = in.readInt(); i > 0; i--)
+                dictionary.add(readString(in));
+        }
+
+        for (int row = 0; row < group.size(); row++) {
+            boolean isPresent = (present[row >>> 3] & 1 << (row & 7)) != 0;
+            Object value;
+            switch (encoding) {
+                case int64:
+                    value = in.readLong();
+                    break;
+                case float64:
+                    value = in.readDouble();
+                    break;
+                case date32:
+                    value = LocalDate.ofEpochDay(in.readInt());
+                    break;
+                case string:
+                    int index = in.readInt();
+                    value = isPresent ? dictionary.get(index) : null;
+                    break;
+                default:
+                    throw new IOException("Unknown encoding " + encoding);
+            }
+            if (isPresent)
+                group.get(row).put(column, value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            throw new EOFException("Invalid string length " + length);
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+}
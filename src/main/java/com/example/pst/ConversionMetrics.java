@@ -0,0 +1,365 @@
+package com.example.pst;
+
+import com.google.gson.GsonBuilder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of one conversion: rows, bytes, time per stage and the types of the cells of every column.
+ * Counters are LongAdders, and the workers count into a {@link Recorder} of their own which is added to them
+ * once per region or batch, so threads do not contend while converting lines.
+ * Stage times and cell types are only counted if the conversion is timed, as reading the clock costs more than
+ * converting a cell and the types cost a step per cell.
+ * Instances are thread safe.
+ */
+public final class ConversionMetrics implements ConversionMetricsMXBean {
+
+    /**
+     * Stages of converting a line, timed separately
+     */
+    public enum Stage {
+        /**
+         * Reading and cutting the input into regions or batches of lines
+         */
+        READ,
+        /**
+         * Splitting a line into cells
+         */
+        SPLIT,
+        /**
+         * Cleaning cells and recognizing their values
+         */
+        PARSE,
+        /**
+         * Writing rows as json or row groups
+         */
+        SERIALIZE,
+        /**
+         * Handing converted units to the output
+         */
+        WRITE
+    }
+
+    //Cell types of the histogram by RowBuffer kind, strings of both kinds counted together
+    private static final String[] typeNames = {"null", "long", "double", "date", "string"};
+    private static final int[] typeOfKind = {0, 1, 2, 3, 4, 4};
+
+    private static final Stage[] stages = Stage.values();
+
+    private final boolean timed;
+    private final LongAdder rowsConverted = new LongAdder();
+    private final LongAdder rowsRejected = new LongAdder();
+    private final LongAdder rowsFiltered = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder[] stageNanos = new LongAdder[stages.length];
+    private volatile ThreadLocal<Recorder> recorders = ThreadLocal.withInitial(Recorder::new);
+    private volatile List<String> columns = Collections.emptyList();
+    private volatile LongAdder[] columnTypes = new LongAdder[0];
+
+    /**
+     * @param timed - Whether the time of every stage is taken
+     */
+    public ConversionMetrics(boolean timed) {
+        this.timed = timed;
+        for (int i = 0; i < stageNanos.length; i++)
+            stageNanos[i] = new LongAdder();
+    }
+
+    /**
+     * Path of the report of a conversion: the output path with .metrics.json appended
+     * @param output - Output file of the conversion
+     * @return - Report file next to the output
+     */
+    public static Path reportPathFor(Path output) {
+        return Paths.get(output + ".metrics.json");
+    }
+
+    public boolean isTimed() {
+        return timed;
+    }
+
+    /**
+     * Name the columns of the type histogram, before any recorder is taken. Recorders taken later count the cell
+     * types of these columns if the conversion is timed
+     * @param fields - Fields of the header in column order
+     */
+    public void setColumns(List<String> fields) {
+        LongAdder[] types = new LongAdder[fields.size() * typeNames.length];
+        for (int i = 0; i < types.length; i++)
+            types[i] = new LongAdder();
+        this.columnTypes = types;
+        this.columns = fields;
+        int recorded = timed ? types.length : 0;
+        this.recorders = ThreadLocal.withInitial(() -> new Recorder(recorded));
+    }
+
+    /**
+     * @return - Recorder of the calling thread
+     */
+    public Recorder recorder() {
+        return recorders.get();
+    }
+
+    /**
+     * Take the time of a stage for every element of an iterator
+     * @param stage - Stage the time is counted for
+     * @param iterator - Elements, read on one thread
+     * @return - Iterator over the same elements
+     */
+    public <T> Iterator<T> timed(Stage stage, Iterator<T> iterator) {
+        if (!timed)
+            return iterator;
+        LongAdder nanos = stageNanos[stage.ordinal()];
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                long started = System.nanoTime();
+                boolean hasNext = iterator.hasNext();
+                nanos.add(System.nanoTime() - started);
+                return hasNext;
+            }
+
+            @Override
+            public T next() {
+                long started = System.nanoTime();
+                T next = iterator.next();
+                nanos.add(System.nanoTime() - started);
+                return next;
+            }
+        };
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    @Override
+    public long getRowsRead() {
+        return rowsConverted.sum() + rowsRejected.sum() + rowsFiltered.sum();
+    }
+
+    @Override
+    public long getRowsConverted() {
+        return rowsConverted.sum();
+    }
+
+    @Override
+    public long getRowsRejected() {
+        return rowsRejected.sum();
+    }
+
+    @Override
+    public long getRowsFiltered() {
+        return rowsFiltered.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * @param stage - Stage of the conversion
+     * @return - Time spent in the stage by all threads together, 0 if the conversion is not timed
+     */
+    public long getStageNanos(Stage stage) {
+        return stageNanos[stage.ordinal()].sum();
+    }
+
+    @Override
+    public Map<String, Long> getStageNanos() {
+        Map<String, Long> nanos = new LinkedHashMap<>();
+        for (Stage stage : stages)
+            nanos.put(stage.name().toLowerCase(Locale.ROOT), getStageNanos(stage));
+        return nanos;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getColumnTypes() {
+        List<String> fields = columns;
+        LongAdder[] types = columnTypes;
+        Map<String, Map<String, Long>> histogram = new LinkedHashMap<>();
+        for (int column = 0; column < fields.size(); column++) {
+            Map<String, Long> counts = new LinkedHashMap<>();
+            for (int type = 0; type < typeNames.length; type++)
+                counts.put(typeNames[type], types[column * typeNames.length + type].sum());
+            //Like in the json text, a repeated field name keeps the counts of its last column
+            histogram.put(fields.get(column), counts);
+        }
+        return histogram;
+    }
+
+    /**
+     * Register as an MXBean of the platform MBean server
+     * @param output - Output file of the conversion, naming the bean
+     * @return - Name the bean is registered with
+     * @throws IllegalStateException - Thrown if a conversion to the same output is registered already
+     */
+    public ObjectName register(Path output) {
+        try {
+            ObjectName name = new ObjectName("com.example.pst:type=Conversion,output="
+                    + ObjectName.quote(output.toAbsolutePath().normalize().toString()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register the metrics of " + output, e);
+        }
+    }
+
+    /**
+     * @param name - Name returned by {@link #register(Path)}
+     */
+    public static void unregister(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not unregister " + name, e);
+        }
+    }
+
+    /**
+     * Write the counters as a json object
+     * @param report - Outcome of the conversion
+     * @param path - File to write
+     * @throws IOException - Thrown if the file cannot be written
+     */
+    public void writeReport(ConversionReport report, Path path) throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("input", String.valueOf(report.getInput()));
+        json.put("output", String.valueOf(report.getOutput()));
+        json.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(report.getElapsedNanos()));
+        json.put("rowsRead", getRowsRead());
+        json.put("rowsConverted", getRowsConverted());
+        json.put("rowsRejected", getRowsRejected());
+        json.put("rowsFiltered", getRowsFiltered());
+        json.put("bytesIn", getBytesIn());
+        json.put("bytesOut", getBytesOut());
+        json.put("timed", timed);
+        json.put("stageNanos", getStageNanos());
+        json.put("columnTypes", getColumnTypes());
+        Files.write(path, new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(json)
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Counts of one thread, added to the counters of the conversion by {@link #flush()}.
+     * An instance must only be used by the thread it belongs to.
+     */
+    public final class Recorder {
+        private final long[] nanos = new long[stages.length];
+        private final long[] types;
+        private long converted;
+        private long rejected;
+        private long filtered;
+
+        private Recorder() {
+            this(0);
+        }
+
+        private Recorder(int types) {
+            this.types = new long[types];
+        }
+
+        /**
+         * @return - Current time if the conversion is timed, 0 otherwise
+         */
+        public long start() {
+            return timed ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Count the time since a start or an earlier lap for a stage
+         * @param stage - Stage which ends now
+         * @param started - Value of {@link #start()} or of the earlier lap
+         * @return - Current time if the conversion is timed, 0 otherwise
+         */
+        public long lap(Stage stage, long started) {
+            if (!timed)
+                return 0;
+            long now = System.nanoTime();
+            nanos[stage.ordinal()] += now - started;
+            return now;
+        }
+
+        /**
+         * Count a converted row and the types of its cells. Only worth calling if the conversion is timed, see
+         * {@link ConversionMetrics#isTimed()}, as the types are not counted otherwise
+         * @param row - Converted row with a cell per field
+         */
+        public void converted(RowBuffer row) {
+            converted++;
+            int columns = Math.min(row.size(), types.length / typeNames.length);
+            for (int column = 0; column < columns; column++)
+                types[column * typeNames.length + typeOfKind[row.kind(column)]]++;
+        }
+
+        /**
+         * Count a row without its cell types
+         */
+        public void converted() {
+            converted++;
+        }
+
+        /**
+         * Count a line which could not be converted
+         */
+        public void rejected() {
+            rejected++;
+        }
+
+        /**
+         * Count a line which was converted but left out by a filter
+         */
+        public void filtered() {
+            filtered++;
+        }
+
+        /**
+         * Add the counts of this thread to the counters of the conversion and start counting from 0
+         */
+        public void flush() {
+            rowsConverted.add(converted);
+            rowsRejected.add(rejected);
+            rowsFiltered.add(filtered);
+            converted = 0;
+            rejected = 0;
+            filtered = 0;
+            for (int i = 0; i < nanos.length; i++) {
+                if (nanos[i] != 0)
+                    stageNanos[i].add(nanos[i]);
+                nanos[i] = 0;
+            }
+            LongAdder[] counters = columnTypes;
+            for (int i = 0; i < types.length && i < counters.length; i++) {
+                if (types[i] != 0)
+                    counters[i].add(types[i]);
+                types[i] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.pst;
+
+import java.util.Map;
+
+/**
+ * Counters of a running conversion, registered with the platform MBean server while the conversion runs
+ * if {@link ConversionOptions#isJmx()} is set
+ */
+public interface ConversionMetricsMXBean {
+
+    /**
+     * @return - Number of lines after the header read so far
+     */
+    long getRowsRead();
+
+    /**
+     * @return - Number of lines converted so far
+     */
+    long getRowsConverted();
+
+    /**
+     * @return - Number of lines which could not be converted, written to the rejects file
+     */
+    long getRowsRejected();
+
+    /**
+     * @return - Number of lines left out because they do not match the filters
+     */
+    long getRowsFiltered();
+
+    /**
+     * @return - Number of input bytes handed to the converter so far
+     */
+    long getBytesIn();
+
+    /**
+     * @return - Number of bytes handed to the output so far, before compression
+     */
+    long getBytesOut();
+
+    /**
+     * @return - Time spent in each stage by all threads together, by lower case stage name. Only counted if the
+     * conversion is timed
+     */
+    Map<String, Long> getStageNanos();
+
+    /**
+     * @return - Number of cells of every type by field name, and of cells without value as null
+     */
+    Map<String, Map<String, Long>> getColumnTypes();
+}
@@ -0,0 +1,352 @@
+package com.example.pst;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tuning options for converting a file
+ */
+public class ConversionOptions implements Cloneable {
+
+    public static final int defaultBatchSize = 1000;
+    public static final long defaultCheckpointInterval = 64 << 20;
+    public static final String defaultOutputPattern = "{name}.jsonl";
+
+    private int workers = 1;
+    private int batchSize = defaultBatchSize;
+    private boolean memoryMapped = true;
+    private int regionSize = MappedFileReader.defaultRegionSize;
+    private int schemaSampleSize = ColumnSchema.defaultSampleSize;
+    private int sniffSize = DialectSniffer.defaultSampleSize;
+    private int maxRecordSize = RecordReader.defaultMaxRecordSize;
+    private int flushSize = AsyncFileOutputStream.defaultFlushSize;
+    private boolean fsync;
+    private String outputFile = Main.outputFilename;
+    private OutputFormat outputFormat = OutputFormat.JSONL;
+    private boolean resume;
+    private boolean tail;
+    private long checkpointInterval = defaultCheckpointInterval;
+    private String outputDirectory = ".";
+    private String outputPattern = defaultOutputPattern;
+    private int parallelFiles = Runtime.getRuntime().availableProcessors();
+    private boolean metricsReport;
+    private boolean jmx;
+    private String shardColumn;
+    private int shards = 1;
+    private boolean shardOrdered;
+    private List<String> columns;
+    private List<RowFilter> filters = Collections.emptyList();
+
+    /**
+     * @return - Number of converter threads, 1 converts sequentially on the calling thread
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("Workers must be at least 1");
+        this.workers = workers;
+    }
+
+    /**
+     * @return - Number of lines handed to a worker at once when reading a line stream
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1)
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return - Whether plain input files are read through memory mapped regions instead of a line stream
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * @return - Preferred size in bytes of a memory mapped region handed to a worker at once
+     */
+    public int getRegionSize() {
+        return regionSize;
+    }
+
+    public void setRegionSize(int regionSize) {
+        if (regionSize < 1)
+            throw new IllegalArgumentException("Region size must be at least 1");
+        this.regionSize = regionSize;
+    }
+
+    /**
+     * @return - Number of rows sampled to infer the column types, 0 tries every type for every cell
+     */
+    public int getSchemaSampleSize() {
+        return schemaSampleSize;
+    }
+
+    public void setSchemaSampleSize(int schemaSampleSize) {
+        if (schemaSampleSize < 0)
+            throw new IllegalArgumentException("Sample size must not be negative");
+        this.schemaSampleSize = schemaSampleSize;
+    }
+
+    /**
+     * @return - Number of bytes at the start of the file the delimiter, quoting and header are sniffed from
+     */
+    public int getSniffSize() {
+        return sniffSize;
+    }
+
+    public void setSniffSize(int sniffSize) {
+        if (sniffSize < 1)
+            throw new IllegalArgumentException("Sniff size must be at least 1");
+        this.sniffSize = sniffSize;
+    }
+
+    /**
+     * @return - Size in characters, or bytes of memory mapped input, after which a quoted field still open is taken
+     * as a stray quote instead of a field holding line breaks
+     */
+    public int getMaxRecordSize() {
+        return maxRecordSize;
+    }
+
+    public void setMaxRecordSize(int maxRecordSize) {
+        if (maxRecordSize < 1)
+            throw new IllegalArgumentException("Maximum record size must be at least 1");
+        this.maxRecordSize = maxRecordSize;
+    }
+
+    /**
+     * @return - Size in bytes of each of the two output buffers, a full buffer is written while the other one fills
+     */
+    public int getFlushSize() {
+        return flushSize;
+    }
+
+    public void setFlushSize(int flushSize) {
+        if (flushSize < 1)
+            throw new IllegalArgumentException("Flush size must be at least 1");
+        this.flushSize = flushSize;
+    }
+
+    /**
+     * @return - Whether the output file is forced to the storage device before the conversion returns
+     */
+    public boolean isFsync() {
+        return fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    /**
+     * @return - Path of the output file, written as gzip if it ends with .gz
+     */
+    public String getOutputFile() {
+        return outputFile;
+    }
+
+    public void setOutputFile(String outputFile) {
+        if (outputFile == null || outputFile.isEmpty())
+            throw new IllegalArgumentException("Output file must not be empty");
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * @return - Layout of the output file
+     */
+    public OutputFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    public void setOutputFormat(OutputFormat outputFormat) {
+        if (outputFormat == null)
+            throw new IllegalArgumentException("Output format must not be empty");
+        this.outputFormat = outputFormat;
+    }
+
+    /**
+     * @return - Whether progress is saved in a checkpoint file next to the output, and a conversion with a
+     * checkpoint continues from it instead of starting over
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    /**
+     * @return - Whether only complete lines are converted, so a resumed conversion picks up the lines appended
+     * to the input since the last run. Implies resume
+     */
+    public boolean isTail() {
+        return tail;
+    }
+
+    public void setTail(boolean tail) {
+        this.tail = tail;
+    }
+
+    /**
+     * @return - Number of input bytes converted between two checkpoints
+     */
+    public long getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    public void setCheckpointInterval(long checkpointInterval) {
+        if (checkpointInterval < 1)
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1");
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * @return - Directory the outputs of a batch of files are written to
+     */
+    public String getOutputDirectory() {
+        return outputDirectory;
+    }
+
+    public void setOutputDirectory(String outputDirectory) {
+        if (outputDirectory == null || outputDirectory.isEmpty())
+            throw new IllegalArgumentException("Output directory must not be empty");
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * @return - Name of the output of each file of a batch. {name} stands for the input file name without its
+     * extension and without .gz, {file} for the whole input file name
+     */
+    public String getOutputPattern() {
+        return outputPattern;
+    }
+
+    public void setOutputPattern(String outputPattern) {
+        if (outputPattern == null || (!outputPattern.contains("{name}") && !outputPattern.contains("{file}")))
+            throw new IllegalArgumentException("Output pattern must contain {name} or {file}");
+        this.outputPattern = outputPattern;
+    }
+
+    /**
+     * @return - Number of files of a batch converted at the same time
+     */
+    public int getParallelFiles() {
+        return parallelFiles;
+    }
+
+    public void setParallelFiles(int parallelFiles) {
+        if (parallelFiles < 1)
+            throw new IllegalArgumentException("Parallel files must be at least 1");
+        this.parallelFiles = parallelFiles;
+    }
+
+    /**
+     * @return - Whether the counters of the conversion are written as json next to the output, named like the
+     * output with .metrics.json appended. Times the stages of the conversion
+     */
+    public boolean isMetricsReport() {
+        return metricsReport;
+    }
+
+    public void setMetricsReport(boolean metricsReport) {
+        this.metricsReport = metricsReport;
+    }
+
+    /**
+     * @return - Whether the counters of the conversion are registered as an MXBean while it runs. Times the stages
+     * of the conversion
+     */
+    public boolean isJmx() {
+        return jmx;
+    }
+
+    public void setJmx(boolean jmx) {
+        this.jmx = jmx;
+    }
+
+    /**
+     * @return - Name of the column whose hash picks the shard file of a row, null if the output is not sharded
+     */
+    public String getShardColumn() {
+        return shardColumn;
+    }
+
+    public void setShardColumn(String shardColumn) {
+        if (shardColumn != null && shardColumn.isEmpty())
+            throw new IllegalArgumentException("Shard column must not be empty");
+        this.shardColumn = shardColumn;
+    }
+
+    /**
+     * @return - Number of shard files the output is split into when a shard column is set
+     */
+    public int getShards() {
+        return shards;
+    }
+
+    public void setShards(int shards) {
+        if (shards < 1)
+            throw new IllegalArgumentException("Shards must be at least 1");
+        this.shards = shards;
+    }
+
+    /**
+     * @return - Whether the rows of each shard are written in input order. Otherwise workers write their rows as
+     * soon as they are converted, so a shard may hold the rows of different units out of order
+     */
+    public boolean isShardOrdered() {
+        return shardOrdered;
+    }
+
+    public void setShardOrdered(boolean shardOrdered) {
+        this.shardOrdered = shardOrdered;
+    }
+
+    /**
+     * @return - Names of the columns written, null for all. Other columns are not parsed
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public void setColumns(List<String> columns) {
+        this.columns = columns == null ? null : Collections.unmodifiableList(new ArrayList<>(columns));
+    }
+
+    /**
+     * @return - Filters every written row matches, rows which do not match are counted as filtered
+     */
+    public List<RowFilter> getFilters() {
+        return filters;
+    }
+
+    public void setFilters(List<RowFilter> filters) {
+        this.filters = Collections.unmodifiableList(new ArrayList<>(filters));
+    }
+
+    /**
+     * @return - Options with the same values, changing them does not change these
+     */
+    public ConversionOptions copy() {
+        try {
+            return (ConversionOptions) clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.pst;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of converting one file: how many rows were converted or skipped, how many bytes were read and written
+ * and how long it took. A failed conversion carries its error instead of counts.
+ * Instances are immutable.
+ */
+public final class ConversionReport {
+
+    private final Path input;
+    private final Path output;
+    private final long rows;
+    private final long skippedRows;
+    private final long inputBytes;
+    private final long outputBytes;
+    private final long elapsedNanos;
+    private final Throwable failure;
+
+    /**
+     * @param input - Converted file
+     * @param output - File the json lines were written to
+     * @param rows - Number of json lines written
+     * @param skippedRows - Number of lines which could not be converted
+     * @param inputBytes - Number of input bytes converted
+     * @param outputBytes - Number of bytes written to the output
+     * @param elapsedNanos - Time the conversion took
+     */
+    public ConversionReport(Path input, Path output, long rows, long skippedRows, long inputBytes, long outputBytes,
+                            long elapsedNanos) {
+        this(input, output, rows, skippedRows, inputBytes, outputBytes, elapsedNanos, null);
+    }
+
+    private ConversionReport(Path input, Path output, long rows, long skippedRows, long inputBytes, long outputBytes,
+                             long elapsedNanos, Throwable failure) {
+        this.input = input;
+        this.output = output;
+        this.rows = rows;
+        this.skippedRows = skippedRows;
+        this.inputBytes = inputBytes;
+        this.outputBytes = outputBytes;
+        this.elapsedNanos = elapsedNanos;
+        this.failure = failure;
+    }
+
+    /**
+     * @param input - File which could not be converted
+     * @param output - File the json lines were to be written to
+     * @param failure - Error which stopped the conversion
+     * @param elapsedNanos - Time until the conversion failed
+     * @return - Report of the failed conversion
+     */
+    public static ConversionReport failed(Path input, Path output, Throwable failure, long elapsedNanos) {
+        return new ConversionReport(input, output, 0, 0, 0, 0, elapsedNanos, failure);
+    }
+
+    public Path getInput() {
+        return input;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    /**
+     * @return - Number of json lines written
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return - Number of lines which could not be converted and were left out
+     */
+    public long getSkippedRows() {
+        return skippedRows;
+    }
+
+    /**
+     * @return - Number of input bytes converted, compressed bytes for gzip input
+     */
+    public long getInputBytes() {
+        return inputBytes;
+    }
+
+    /**
+     * @return - Number of bytes written to the output, compressed bytes for gzip output
+     */
+    public long getOutputBytes() {
+        return outputBytes;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @return - Error which stopped the conversion, null if it succeeded
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public boolean isSuccessful() {
+        return failure == null;
+    }
+
+    @Override
+    public String toString() {
+        String status = failure == null ? "ok" : "failed: " + failure;
+        return input + " -> " + output + ": " + rows + " rows, " + skippedRows + " skipped, " + inputBytes
+                + " bytes in, " + outputBytes + " bytes out, " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos)
+                + " ms, " + status;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.pst;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 
 /**
@@ -14,7 +15,55 @@ public interface Converter {
      */
     Person convert(String input);
 
+    /**
+     * Converts a line of text to the fields of a Person, set as the cells of a reused row in the order of
+     * {@link JsonLineConverter#personFields}
+     * @param input - text to convert
+     * @param row - Row with a cell per Person field, cleared before use
+     */
+    default void convert(String input, RowBuffer row){
+        Person person = convert(input);
+        row.clear();
+        row.setText(0, person.getFirstName());
+        row.setText(1, person.getMiddleName());
+        row.setText(2, person.getLastName());
+        row.setText(3, person.getGender());
+        row.setDate(4, person.getDateOfBirth());
+        if (person.getSalary() != null)
+            row.setLong(5, person.getSalary());
+    }
+
     default String intelligentConvert(String input){
         return input;
     };
+
+    /**
+     * Converts a line of text to json text, appended to a buffer
+     * @param input - text to convert
+     * @param out - buffer to append the json text to
+     * @return - false if the line could not be converted, nothing is appended then
+     */
+    default boolean intelligentConvert(String input, StringBuilder out){
+        String json = intelligentConvert(input);
+        if (json == null)
+            return false;
+        out.append(json);
+        return true;
+    }
+
+    /**
+     * Converts a line of UTF-8 input to UTF-8 json text, appended to a buffer
+     * @param input - Buffer holding the line
+     * @param start - Offset of the first byte of the line
+     * @param end - Offset after the last byte of the line
+     * @param out - buffer to append the json text to
+     * @return - false if the line could not be converted, nothing is appended then
+     */
+    default boolean intelligentConvert(ByteBuffer input, int start, int end, Utf8Builder out){
+        String json = intelligentConvert(Utf8Builder.decode(input, start, end));
+        if (json == null)
+            return false;
+        out.appendUtf8(json);
+        return true;
+    }
 }
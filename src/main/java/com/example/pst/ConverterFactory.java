@@ -0,0 +1,157 @@
+package com.example.pst;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hands out converters for files, so converting many small files does not rebuild the same converter for each.
+ * Converters are cached by dialect and header, the least recently used one is dropped when the cache is full.
+ * Converters are immutable and thread safe, so a cached one can convert several files at the same time.
+ * Instances are thread safe.
+ */
+public final class ConverterFactory {
+
+    public static final int defaultCapacity = 256;
+
+    private static final DateTimeFormatter outputDateFormatter = DateTimeFormatter.ofPattern(Main.outputDatePattern);
+
+    private final Gson gson;
+    private final Map<Key, JsonLineConverter> cache;
+
+    /**
+     * Create a factory writing dates as {@link Main#outputDatePattern}
+     * @param capacity - Maximum number of cached converters
+     */
+    public ConverterFactory(int capacity) {
+        this(new GsonBuilder().registerTypeAdapter(LocalDate.class, localDateSerializer()).create(), capacity);
+    }
+
+    /**
+     * @param gson - Gson object to be used to write to json
+     * @param capacity - Maximum number of cached converters
+     */
+    public ConverterFactory(Gson gson, int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        this.gson = gson;
+        this.cache = new LinkedHashMap<Key, JsonLineConverter>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, JsonLineConverter> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return - Gson object the converters write json with
+     */
+    public Gson getGson() {
+        return gson;
+    }
+
+    /**
+     * @param delimeter - Delimiter in the regex form of {@link Main#supportedDelimeters}
+     * @return - Converter to Person objects
+     */
+    public JsonLineConverter converter(String delimeter) {
+        return converter(Dialect.of(delimeter));
+    }
+
+    /**
+     * @param dialect - Delimiter and quoting of the input file
+     * @return - Converter to Person objects
+     */
+    public JsonLineConverter converter(Dialect dialect) {
+        return cached(new Key(dialect, null));
+    }
+
+    /**
+     * @param delimeter - Delimiter in the regex form of {@link Main#supportedDelimeters}
+     * @param heading - First line of the input file, naming the fields
+     * @return - Converter without column types, use {@link IntelligentJsonLineConverter#inferSchema(Iterable)}
+     * to specialize it for a file
+     */
+    public IntelligentJsonLineConverter intelligentConverter(String delimeter, String heading) {
+        return intelligentConverter(Dialect.of(delimeter), heading);
+    }
+
+    /**
+     * @param dialect - Delimiter and quoting of the input file
+     * @param heading - Line naming the fields, see {@link Dialect#headingOf(String)}
+     * @return - Converter without column types, use {@link IntelligentJsonLineConverter#inferSchema(Iterable)}
+     * to specialize it for a file
+     */
+    public IntelligentJsonLineConverter intelligentConverter(Dialect dialect, String heading) {
+        return (IntelligentJsonLineConverter) cached(new Key(dialect, Objects.requireNonNull(heading)));
+    }
+
+    /**
+     * @return - Number of cached converters
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Look up a converter, building it outside of the lock if it is missing. If two threads build the same
+     * converter at once, both get the one cached first
+     */
+    private JsonLineConverter cached(Key key) {
+        synchronized (cache) {
+            JsonLineConverter converter = cache.get(key);
+            if (converter != null)
+                return converter;
+        }
+
+        JsonLineConverter built = key.heading == null ? new JsonLineConverter(key.dialect)
+                : new IntelligentJsonLineConverter(key.dialect, key.heading, gson);
+        synchronized (cache) {
+            JsonLineConverter converter = cache.putIfAbsent(key, built);
+            return converter == null ? built : converter;
+        }
+    }
+
+    /**
+     * Construct serializer to be used to write to json
+     * @return Serializer for LocalDate
+     */
+    private static JsonSerializer<LocalDate> localDateSerializer() {
+        return (date, type, context) -> new JsonPrimitive(date.format(outputDateFormatter));
+    }
+
+    /**
+     * Dialect and header of the files a converter is for, the header is null for Person converters
+     */
+    private static final class Key {
+        private final Dialect dialect;
+        private final String heading;
+
+        private Key(Dialect dialect, String heading) {
+            this.dialect = Objects.requireNonNull(dialect);
+            this.heading = heading;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key))
+                return false;
+            Key key = (Key) other;
+            return dialect.equals(key.dialect) && Objects.equals(heading, key.heading);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * dialect.hashCode() + Objects.hashCode(heading);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.pst;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * How the lines of a delimiter separated file are written: the delimiter, the quote character, how a quote is
+ * escaped inside a quoted field, how lines end and whether the first line names the fields.
+ * Usually found by {@link DialectSniffer}. Instances are immutable.
+ */
+public final class Dialect {
+
+    /**
+     * How a quote character is written inside a quoted field
+     */
+    public enum Escape {
+        /**
+         * The quote is doubled, as in "5"" tall"
+         */
+        DOUBLED,
+        /**
+         * The quote follows a backslash, as in "5\" tall"
+         */
+        BACKSLASH
+    }
+
+    /**
+     * Line terminator found in the file. Lines are read the same way whichever it is, it is recorded
+     * so mixed feeds can be told apart
+     */
+    public enum LineTerminator {
+        LF("\n"), CRLF("\r\n"), CR("\r");
+
+        private final String text;
+
+        LineTerminator(String text) {
+            this.text = text;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    //Characters which need a backslash in the regex form of a delimiter
+    private static final String regexMetaCharacters = "\\^$.|?*+()[]{}";
+
+    private final char delimiter;
+    private final char quote;
+    private final Escape escape;
+    private final LineTerminator lineTerminator;
+    private final boolean header;
+
+    /**
+     * @param delimiter - Character separating the fields
+     * @param quote - Character quoting fields which hold the delimiter
+     * @param escape - How a quote is written inside a quoted field
+     * @param lineTerminator - How lines end
+     * @param header - Whether the first line names the fields
+     */
+    public Dialect(char delimiter, char quote, Escape escape, LineTerminator lineTerminator, boolean header) {
+        if (delimiter == quote)
+            throw new IllegalArgumentException("Quote can not be used as delimiter");
+        if (delimiter == '\n' || delimiter == '\r' || quote == '\n' || quote == '\r')
+            throw new IllegalArgumentException("Line terminators can not be used as delimiter or quote");
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.escape = Objects.requireNonNull(escape);
+        this.lineTerminator = Objects.requireNonNull(lineTerminator);
+        this.header = header;
+    }
+
+    /**
+     * The dialect the converters assumed before sniffing: double quotes escaped by doubling, a header line
+     * @param delimeter - Delimiter in the regex form of {@link Main#supportedDelimeters}
+     * @return - Dialect of the delimiter
+     */
+    public static Dialect of(String delimeter) {
+        return new Dialect(LineTokenizer.forDelimeter(delimeter).getDelimiter(), '"', Escape.DOUBLED,
+                LineTerminator.LF, true);
+    }
+
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    /**
+     * @return - Delimiter in the regex form of {@link Main#supportedDelimeters}, escaped with a backslash
+     * if it is a regex meta character
+     */
+    public String getDelimeter() {
+        return regexMetaCharacters.indexOf(delimiter) >= 0 ? "\\" + delimiter : String.valueOf(delimiter);
+    }
+
+    public char getQuote() {
+        return quote;
+    }
+
+    public Escape getEscape() {
+        return escape;
+    }
+
+    public LineTerminator getLineTerminator() {
+        return lineTerminator;
+    }
+
+    /**
+     * @return - Whether the first line names the fields
+     */
+    public boolean hasHeader() {
+        return header;
+    }
+
+    /**
+     * @return - Tokenizer for lines of this dialect
+     */
+    public LineTokenizer tokenizer() {
+        return new LineTokenizer(delimiter, quote, escape == Escape.BACKSLASH);
+    }
+
+    /**
+     * Header of a file: the first line if it names the fields, names column1 to columnN joined by the delimiter
+     * otherwise, with N the number of fields of the first line
+     * @param firstLine - First line of the file
+     * @return - Line naming the fields
+     */
+    public String headingOf(String firstLine) {
+        if (header)
+            return firstLine;
+        int count = tokenizer().tokenize(firstLine, new FieldOffsets());
+        StringBuilder heading = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            if (i > 1)
+                heading.append(delimiter);
+            heading.append("column").append(i);
+        }
+        return heading.toString();
+    }
+
+    /**
+     * @return - Text read back by {@link #parse(String)}
+     */
+    public String format() {
+        return String.format(Locale.ROOT, "%d %d %s %s %b", (int) delimiter, (int) quote, escape, lineTerminator,
+                header);
+    }
+
+    /**
+     * Read a dialect written by {@link #format()}
+     * @param text - Formatted dialect
+     * @return - Dialect
+     * @throws IllegalArgumentException - Thrown if the text is not a formatted dialect
+     */
+    public static Dialect parse(String text) {
+        String[] parts = text.trim().split(" ");
+        if (parts.length != 5)
+            throw new IllegalArgumentException("Invalid dialect " + text);
+        return new Dialect(character(parts[0]), character(parts[1]), Escape.valueOf(parts[2]),
+                LineTerminator.valueOf(parts[3]), Boolean.parseBoolean(parts[4]));
+    }
+
+    private static char character(String code) {
+        int value = Integer.parseInt(code);
+        if (value < 0 || value > Character.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid character " + code);
+        return (char) value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Dialect))
+            return false;
+        Dialect dialect = (Dialect) other;
+        return delimiter == dialect.delimiter && quote == dialect.quote && escape == dialect.escape
+                && lineTerminator == dialect.lineTerminator && header == dialect.header;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(delimiter, quote, escape, lineTerminator, header);
+    }
+
+    @Override
+    public String toString() {
+        return "delimiter " + printable(delimiter) + ", quote " + printable(quote) + ", " + escape + " escapes, "
+                + lineTerminator + " lines, " + (header ? "header" : "no header");
+    }
+
+    private static String printable(char c) {
+        return c == '\t' ? "\\t" : String.valueOf(c);
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.pst;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the dialect of a delimiter separated file from a block of its first bytes, so a file of an unknown
+ * vendor can be converted without checking it by hand first.
+ * The delimiter is the candidate which splits the most lines of the block into the same number of fields,
+ * the quote is the candidate found most often next to field boundaries and the first line is taken as a
+ * header unless the types of its cells look like those of the lines below it.
+ */
+public final class DialectSniffer {
+
+    public static final int defaultSampleSize = 64 << 10;
+
+    //Candidates in order of preference, a tie goes to the earlier one like it did with Main#supportedDelimeters
+    private static final char[] delimiters = {',', '|', '\t', ';'};
+    private static final char[] quotes = {'"', '\''};
+    private static final int maxLines = 1000;
+
+    //Cell types compared between the first line and the lines below it
+    private static final int emptyCell = 0;
+    private static final int longCell = 1;
+    private static final int doubleCell = 2;
+    private static final int dateCell = 3;
+    private static final int stringCell = 4;
+
+    private static final ValueParsers.DateShape[] dateShapes = {ValueParsers.DateShape.compile("yyyy-MM-dd"),
+            ValueParsers.DateShape.compile("yyyy/MM/dd"), ValueParsers.DateShape.compile("dd-MM-yyyy")};
+
+    private DialectSniffer() {
+    }
+
+    /**
+     * Find the dialect of a file from its first bytes
+     * @param head - First bytes of the file, UTF-8 encoded
+     * @param complete - Whether the bytes are the whole file, otherwise the last line may be cut and is ignored
+     * @return - Dialect of the file
+     * @throws IllegalArgumentException - Thrown if no candidate delimiter splits the lines
+     */
+    public static Dialect sniff(ByteBuffer head, boolean complete) {
+        ByteBuffer block = head.duplicate();
+        Dialect.LineTerminator terminator = lineTerminatorOf(block);
+        if (!complete) {
+            int end = block.limit();
+            while (end > block.position() && block.get(end - 1) != '\n' && block.get(end - 1) != '\r')
+                end--;
+            //A first line longer than the block is sniffed as far as it goes
+            if (end > block.position())
+                ((Buffer) block).limit(end);
+        }
+
+        //Malformed bytes are replaced, they fail the conversion later where the lines are read for real
+        String text = StandardCharsets.UTF_8.decode(block).toString();
+        List<String> lines = lines(text);
+        if (lines.isEmpty())
+            throw new IllegalArgumentException("Delimiter not supported");
+
+        //Quoting is found on the physical lines, the rest on the records they form with it
+        char quote = quoteOf(lines);
+        boolean backslashEscapes = count(lines, '\\', quote) > count(lines, quote, quote);
+        Dialect.Escape escape = backslashEscapes ? Dialect.Escape.BACKSLASH : Dialect.Escape.DOUBLED;
+        List<String> records = records(text, new Dialect(',', quote, escape, terminator, true));
+        LineTokenizer tokenizer = delimiterOf(records, quote, backslashEscapes);
+        return new Dialect(tokenizer.getDelimiter(), quote, escape, terminator, hasHeader(records, tokenizer));
+    }
+
+    /**
+     * Split text into records with the quoting of a dialect, without empty records
+     * @return - Up to the first {@link #maxLines} records which are not empty
+     */
+    private static List<String> records(String text, Dialect quoting) {
+        List<String> records = new ArrayList<>();
+        try (RecordReader reader = new RecordReader(new StringReader(text), quoting, text.length() + 1)) {
+            for (String record = reader.readRecord(); record != null && records.size() < maxLines;
+                 record = reader.readRecord()) {
+                if (!record.isEmpty())
+                    records.add(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return records;
+    }
+
+    /**
+     * Split text into lines like {@link java.io.BufferedReader#readLine()}, without empty lines
+     * @return - Up to the first {@link #maxLines} lines which are not empty
+     */
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= text.length() && lines.size() < maxLines; i++) {
+            char c = i < text.length() ? text.charAt(i) : '\n';
+            if (c != '\n' && c != '\r')
+                continue;
+            if (i > start)
+                lines.add(text.substring(start, i));
+            if (c == '\r' && i + 1 < text.length() && text.charAt(i + 1) == '\n')
+                i++;
+            start = i + 1;
+        }
+        return lines;
+    }
+
+    /**
+     * @return - Most frequent line terminator of the block, \n if there is none
+     */
+    private static Dialect.LineTerminator lineTerminatorOf(ByteBuffer block) {
+        int lf = 0;
+        int crlf = 0;
+        int cr = 0;
+        for (int i = block.position(); i < block.limit(); i++) {
+            byte b = block.get(i);
+            if (b == '\n') {
+                lf++;
+            } else if (b == '\r') {
+                if (i + 1 < block.limit() && block.get(i + 1) == '\n') {
+                    crlf++;
+                    i++;
+                } else {
+                    cr++;
+                }
+            }
+        }
+        if (crlf > lf && crlf >= cr)
+            return Dialect.LineTerminator.CRLF;
+        return cr > lf && cr > crlf ? Dialect.LineTerminator.CR : Dialect.LineTerminator.LF;
+    }
+
+    /**
+     * @return - Candidate quote found most often at the start or end of a field, a double quote if none is
+     */
+    private static char quoteOf(List<String> lines) {
+        char best = quotes[0];
+        int bestCount = 0;
+        for (char quote : quotes) {
+            int count = 0;
+            for (String line : lines) {
+                for (int i = 0; i < line.length(); i++) {
+                    if (line.charAt(i) == quote && (isFieldBoundary(line, i - 1) || isFieldBoundary(line, i + 1)))
+                        count++;
+                }
+            }
+            if (count > bestCount) {
+                best = quote;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    private static boolean isFieldBoundary(String line, int at) {
+        if (at < 0 || at >= line.length())
+            return true;
+        char c = line.charAt(at);
+        for (char delimiter : delimiters) {
+            if (c == delimiter)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return - Number of times a character is directly followed by another one
+     */
+    private static int count(List<String> lines, char first, char second) {
+        int count = 0;
+        for (String line : lines) {
+            for (int i = 0; i + 1 < line.length(); i++) {
+                if (line.charAt(i) == first && line.charAt(i + 1) == second) {
+                    count++;
+                    i++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Score each candidate by the share of lines having the most common number of fields, ties go to the
+     * candidate giving more fields and then to the earlier one
+     * @return - Tokenizer of the best candidate
+     * @throws IllegalArgumentException - Thrown if no candidate splits the lines
+     */
+    private static LineTokenizer delimiterOf(List<String> lines, char quote, boolean backslashEscapes) {
+        FieldOffsets offsets = new FieldOffsets();
+        LineTokenizer best = null;
+        int bestLines = 0;
+        int bestFields = 0;
+        for (char delimiter : delimiters) {
+            LineTokenizer tokenizer = new LineTokenizer(delimiter, quote, backslashEscapes);
+            Map<Integer, Integer> linesByFields = new HashMap<>();
+            for (String line : lines)
+                linesByFields.merge(tokenizer.tokenize(line, offsets), 1, Integer::sum);
+
+            int fields = 0;
+            int consistent = 0;
+            for (Map.Entry<Integer, Integer> entry : linesByFields.entrySet()) {
+                if (entry.getValue() > consistent || (entry.getValue() == consistent && entry.getKey() > fields)) {
+                    fields = entry.getKey();
+                    consistent = entry.getValue();
+                }
+            }
+            if (fields < 2)
+                continue;
+            if (consistent > bestLines || (consistent == bestLines && fields > bestFields)) {
+                best = tokenizer;
+                bestLines = consistent;
+                bestFields = fields;
+            }
+        }
+        if (best == null)
+            throw new IllegalArgumentException("Delimiter not supported");
+        return best;
+    }
+
+    /**
+     * Vote per column whether the first line is a header: a column whose cells below the first line all have
+     * one type votes for a header if the first cell has another type, and against it otherwise. Strings vote
+     * the same way by their length if they all have one length. Without votes against, the first line is
+     * taken as a header, as it was before sniffing
+     */
+    private static boolean hasHeader(List<String> lines, LineTokenizer tokenizer) {
+        FieldOffsets offsets = new FieldOffsets();
+        String first = lines.get(0);
+        int columns = tokenizer.tokenize(first, offsets);
+        int[] headerTypes = new int[columns];
+        int[] headerLengths = new int[columns];
+        for (int column = 0; column < columns; column++) {
+            String cell = cell(first, offsets, column, tokenizer.getQuote());
+            headerTypes[column] = typeOf(cell);
+            headerLengths[column] = cell.length();
+        }
+
+        int[] types = new int[columns];
+        int[] lengths = new int[columns];
+        for (int line = 1; line < lines.size(); line++) {
+            String text = lines.get(line);
+            if (tokenizer.tokenize(text, offsets) != columns)
+                continue;
+            for (int column = 0; column < columns; column++) {
+                String cell = cell(text, offsets, column, tokenizer.getQuote());
+                int type = typeOf(cell);
+                if (type == emptyCell || types[column] < 0)
+                    continue;
+                if (types[column] == emptyCell) {
+                    types[column] = type;
+                    lengths[column] = cell.length();
+                } else if (types[column] != type) {
+                    types[column] = -1;
+                } else if (lengths[column] != cell.length()) {
+                    lengths[column] = -1;
+                }
+            }
+        }
+
+        int votes = 0;
+        for (int column = 0; column < columns; column++) {
+            if (types[column] <= emptyCell || headerTypes[column] == emptyCell)
+                continue;
+            if (types[column] != stringCell)
+                votes += headerTypes[column] != types[column] ? 1 : -1;
+            else if (lengths[column] >= 0 && headerTypes[column] == stringCell)
+                votes += headerLengths[column] != lengths[column] ? 1 : -1;
+        }
+        return votes >= 0;
+    }
+
+    /**
+     * @return - Field without surrounding white space and quotes
+     */
+    private static String cell(String line, FieldOffsets offsets, int index, char quote) {
+        String cell = offsets.field(line, index).trim();
+        if (cell.length() >= 2 && cell.charAt(0) == quote && cell.charAt(cell.length() - 1) == quote)
+            cell = cell.substring(1, cell.length() - 1).trim();
+        return cell;
+    }
+
+    private static int typeOf(String cell) {
+        if (cell.isEmpty())
+            return emptyCell;
+        if (ValueParsers.isLong(cell))
+            return longCell;
+        if (ValueParsers.isDouble(cell))
+            return doubleCell;
+        for (ValueParsers.DateShape shape : dateShapes) {
+            if (shape.parse(cell) >= 0)
+                return dateCell;
+        }
+        return stringCell;
+    }
+}
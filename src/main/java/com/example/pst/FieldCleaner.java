@@ -0,0 +1,186 @@
+package com.example.pst;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cleans fields exactly like removing every match of the regex ^"|\||"$|,$ and calling String.trim() on the rest,
+ * but on index ranges of the line instead of new strings: a leading quote, a trailing quote or comma and every
+ * pipe are removed, then white space around the rest.
+ * Like the regex $, the trailing quote or comma may also stand before a final line terminator.
+ * Ranges are packed into a long as start &lt;&lt; 32 | end.
+ */
+public final class FieldCleaner {
+
+    /**
+     * Returned for a field whose cleaned text is not a range of it: a pipe is removed from inside, or a quote
+     * or comma before a final line terminator
+     */
+    public static final long notContiguous = -1;
+
+    private FieldCleaner() {
+    }
+
+    /**
+     * @param range - Range returned by a range method
+     * @return - Offset of the first character of the cleaned text
+     */
+    public static int start(long range) {
+        return (int) (range >>> 32);
+    }
+
+    /**
+     * @param range - Range returned by a range method
+     * @return - Offset after the last character of the cleaned text
+     */
+    public static int end(long range) {
+        return (int) range;
+    }
+
+    /**
+     * Clean a field without copying it
+     * @param text - Text holding the field
+     * @param start - Offset of the first character of the field
+     * @param end - Offset after the last character of the field
+     * @return - Range of the cleaned text, empty if nothing is left, or {@link #notContiguous}
+     */
+    public static long range(CharSequence text, int start, int end) {
+        int terminator = finalTerminatorLength(text, start, end);
+        if (terminator > 0 && end - terminator > start && isQuoteOrComma(text.charAt(end - terminator - 1)))
+            return notContiguous;
+
+        int from = start;
+        int to = end;
+        if (from < to && text.charAt(from) == '"')
+            from++;
+        if (from < to && isQuoteOrComma(text.charAt(to - 1)))
+            to--;
+        while (from < to && isTrimmed(text.charAt(from)))
+            from++;
+        while (from < to && isTrimmed(text.charAt(to - 1)))
+            to--;
+
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '|')
+                return notContiguous;
+        }
+        return (long) from << 32 | to;
+    }
+
+    /**
+     * Clean a field of UTF-8 input without copying it. Bytes of multi byte characters are never ASCII,
+     * so the same characters are found as in the decoded text
+     * @param input - Buffer holding the field
+     * @param start - Offset of the first byte of the field
+     * @param end - Offset after the last byte of the field
+     * @return - Range of the cleaned bytes, empty if nothing is left, or {@link #notContiguous}
+     */
+    public static long range(ByteBuffer input, int start, int end) {
+        int terminator = finalTerminatorLength(input, start, end);
+        if (terminator > 0 && end - terminator > start
+                && (input.get(end - terminator - 1) == '"' || input.get(end - terminator - 1) == ','))
+            return notContiguous;
+
+        int from = start;
+        int to = end;
+        if (from < to && input.get(from) == '"')
+            from++;
+        if (from < to && (input.get(to - 1) == '"' || input.get(to - 1) == ','))
+            to--;
+        while (from < to && isTrimmed(input.get(from)))
+            from++;
+        while (from < to && isTrimmed(input.get(to - 1)))
+            to--;
+
+        for (int i = from; i < to; i++) {
+            if (input.get(i) == '|')
+                return notContiguous;
+        }
+        return (long) from << 32 | to;
+    }
+
+    /**
+     * Clean a field into a string
+     * @param text - Text holding the field
+     * @param start - Offset of the first character of the field
+     * @param end - Offset after the last character of the field
+     * @return - Cleaned text, null if nothing is left. No string is created if the field needs no cleaning
+     */
+    public static String clean(CharSequence text, int start, int end) {
+        long range = range(text, start, end);
+        if (range != notContiguous) {
+            int from = start(range);
+            int to = end(range);
+            return from == to ? null : text.subSequence(from, to).toString();
+        }
+
+        //Remove characters one by one, like the regex, then trim
+        char[] kept = new char[end - start];
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            boolean removed = (i == start && c == '"') || c == '|'
+                    || (isQuoteOrComma(c) && isEndOfInput(text, i + 1, end));
+            if (!removed)
+                kept[count++] = c;
+        }
+
+        int from = 0;
+        int to = count;
+        while (from < to && kept[from] <= ' ')
+            from++;
+        while (from < to && kept[to - 1] <= ' ')
+            to--;
+        return from == to ? null : new String(kept, from, to - from);
+    }
+
+    /**
+     * Check whether the regex $ matches at an offset: the end, or before a final line terminator
+     */
+    private static boolean isEndOfInput(CharSequence text, int at, int end) {
+        return at == end || finalTerminatorLength(text, at, end) == end - at;
+    }
+
+    /**
+     * @return - Length of the line terminator ending the text, 0 if there is none
+     */
+    private static int finalTerminatorLength(CharSequence text, int start, int end) {
+        if (end - start >= 2 && text.charAt(end - 2) == '\r' && text.charAt(end - 1) == '\n')
+            return 2;
+        if (end == start)
+            return 0;
+        char c = text.charAt(end - 1);
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029' ? 1 : 0;
+    }
+
+    /**
+     * @return - Length in bytes of the UTF-8 line terminator ending the input, 0 if there is none
+     */
+    private static int finalTerminatorLength(ByteBuffer input, int start, int end) {
+        int length = end - start;
+        if (length >= 2 && input.get(end - 2) == '\r' && input.get(end - 1) == '\n')
+            return 2;
+        if (length >= 1 && (input.get(end - 1) == '\n' || input.get(end - 1) == '\r'))
+            return 1;
+        if (length >= 2 && input.get(end - 2) == (byte) 0xC2 && input.get(end - 1) == (byte) 0x85)
+            return 2;
+        if (length >= 3 && input.get(end - 3) == (byte) 0xE2 && input.get(end - 2) == (byte) 0x80
+                && (input.get(end - 1) == (byte) 0xA8 || input.get(end - 1) == (byte) 0xA9))
+            return 3;
+        return 0;
+    }
+
+    private static boolean isQuoteOrComma(char c) {
+        return c == '"' || c == ',';
+    }
+
+    /**
+     * White space removed by String.trim() and pipes removed by the regex
+     */
+    private static boolean isTrimmed(char c) {
+        return c <= ' ' || c == '|';
+    }
+
+    private static boolean isTrimmed(byte b) {
+        return (b >= 0 && b <= ' ') || b == '|';
+    }
+}
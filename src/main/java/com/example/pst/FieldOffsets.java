@@ -0,0 +1,108 @@
+package com.example.pst;
+
+import java.util.Arrays;
+
+/**
+ * Field boundaries of a tokenized line, stored as offsets into the line instead of new strings.
+ * An instance is reused from line to line, so it must not be shared between threads.
+ */
+public final class FieldOffsets {
+
+    private static final int initialCapacity = 16;
+
+    //Delimiter positions seen while an even number of quotes precede them
+    private int[] evenDelimiters = new int[initialCapacity];
+    private int evenCount;
+
+    //Delimiter positions seen while an odd number of quotes precede them
+    private int[] oddDelimiters = new int[initialCapacity];
+    private int oddCount;
+
+    private int[] delimiters;
+    private int delimiterCount;
+    private int lineStart;
+    private int lineEnd;
+    private boolean ascii;
+
+    /**
+     * Prepare for tokenizing a new line
+     * @param start - Offset of the first character of the line
+     * @param end - Offset after the last character of the line
+     */
+    void reset(int start, int end) {
+        lineStart = start;
+        lineEnd = end;
+        evenCount = 0;
+        oddCount = 0;
+    }
+
+    void addEven(int position) {
+        if (evenCount == evenDelimiters.length)
+            evenDelimiters = Arrays.copyOf(evenDelimiters, evenCount << 1);
+        evenDelimiters[evenCount++] = position;
+    }
+
+    void addOdd(int position) {
+        if (oddCount == oddDelimiters.length)
+            oddDelimiters = Arrays.copyOf(oddDelimiters, oddCount << 1);
+        oddDelimiters[oddCount++] = position;
+    }
+
+    /**
+     * Select the delimiters which split the line, based on the parity of all quotes in the line
+     * @param oddQuotes - Whether the line contains an odd number of quotes
+     * @param ascii - Whether the line contains only ASCII
+     */
+    void finish(boolean oddQuotes, boolean ascii) {
+        delimiters = oddQuotes ? oddDelimiters : evenDelimiters;
+        delimiterCount = oddQuotes ? oddCount : evenCount;
+        this.ascii = ascii;
+    }
+
+    /**
+     * @return - Whether the tokenized bytes are all ASCII, always true for character input
+     */
+    public boolean isAscii() {
+        return ascii;
+    }
+
+    /**
+     * @return - Number of fields in the line
+     */
+    public int count() {
+        return delimiterCount + 1;
+    }
+
+    /**
+     * @param index - Field index
+     * @return - Offset of the first character of the field
+     */
+    public int start(int index) {
+        checkIndex(index);
+        return index == 0 ? lineStart : delimiters[index - 1] + 1;
+    }
+
+    /**
+     * @param index - Field index
+     * @return - Offset after the last character of the field
+     */
+    public int end(int index) {
+        checkIndex(index);
+        return index == delimiterCount ? lineEnd : delimiters[index];
+    }
+
+    /**
+     * Extract a field as string
+     * @param line - Line the offsets were computed for
+     * @param index - Field index
+     * @return - Text of the field
+     */
+    public String field(String line, int index) {
+        return line.substring(start(index), end(index));
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index > delimiterCount)
+            throw new IndexOutOfBoundsException("Field " + index + " of " + count());
+    }
+}
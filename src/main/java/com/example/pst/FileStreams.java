@@ -0,0 +1,144 @@
+package com.example.pst;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Opens input and output files, compressed with gzip or plain
+ */
+public final class FileStreams {
+
+    private static final int gzipBufferSize = 64 << 10;
+
+    private FileStreams() {
+    }
+
+    /**
+     * Check whether a file is gzip compressed, by its extension or its magic bytes
+     * @param path - File to check
+     * @return - Whether the file is gzip compressed
+     * @throws IOException - Thrown if the file cannot be read
+     */
+    public static boolean isGzip(Path path) throws IOException {
+        if (hasGzipExtension(path))
+            return true;
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /**
+     * Read the records of a stream opened by {@link #newInputStream(Path)}, joining the lines of quoted fields
+     * which hold line breaks
+     * @param in - UTF-8 text, closed with the returned stream. Malformed UTF-8 fails instead of
+     * being replaced
+     * @param dialect - Quote and escapes of the text
+     * @param maxRecordSize - Number of characters after which an open quote is taken as a stray one, longer records
+     * are left out
+     * @return - Records of the text, the stream must be closed
+     */
+    public static Stream<String> records(InputStream in, Dialect dialect, int maxRecordSize) {
+        return new RecordReader(new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()), dialect,
+                maxRecordSize).records();
+    }
+
+    /**
+     * Read the records of a stream opened by {@link #newInputStream(Path)}, handing records longer than the maximum
+     * record size piece by piece to a receiver instead of reading them
+     * @param in - UTF-8 text, closed with the returned stream. Malformed UTF-8 fails instead of
+     * being replaced
+     * @param dialect - Quote and escapes of the text
+     * @param maxRecordSize - Number of characters after which a record is oversized
+     * @param oversized - Receives the oversized records
+     * @return - Records of the text, the stream must be closed
+     */
+    public static Stream<String> records(InputStream in, Dialect dialect, int maxRecordSize,
+                                         RecordReader.OversizedRecords oversized) {
+        return new RecordReader(new InputStreamReader(in, StandardCharsets.UTF_8.newDecoder()), dialect,
+                maxRecordSize, oversized).records();
+    }
+
+    /**
+     * Open a file for reading once, decompressing gzip files on the fly. Whether the file is compressed is told by
+     * its extension or by the magic bytes read through the same stream
+     * @param path - File to read
+     * @return - Buffered stream of the plain bytes, supporting mark and reset
+     * @throws IOException - Thrown if the file cannot be opened
+     */
+    public static InputStream newInputStream(Path path) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(path), gzipBufferSize);
+        try {
+            in.mark(2);
+            boolean gzip = hasGzipExtension(path) || (in.read() == 0x1f && in.read() == 0x8b);
+            in.reset();
+            if (!gzip)
+                return in;
+            return new BufferedInputStream(new GZIPInputStream(in, gzipBufferSize), gzipBufferSize);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the first bytes of a stream without consuming them
+     * @param in - Stream supporting mark and reset, as opened by {@link #newInputStream(Path)}
+     * @param size - Number of bytes wanted
+     * @return - The bytes, fewer than wanted only if the stream ends before
+     * @throws IOException - Thrown if the stream cannot be read
+     */
+    public static ByteBuffer peek(InputStream in, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        in.mark(size);
+        int length = 0;
+        while (length < size) {
+            int read = in.read(bytes, length, size - length);
+            if (read < 0)
+                break;
+            length += read;
+        }
+        in.reset();
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    /**
+     * Open the output file. Files named *.gz are written as gzip members compressed in parallel
+     * @param path - File to create or truncate
+     * @param options - Output buffer size and whether the file is forced to the device when closed
+     * @return - Stream writing the file on a background thread
+     * @throws IOException - Thrown if the file cannot be opened
+     */
+    public static OutputStream newOutputStream(Path path, ConversionOptions options) throws IOException {
+        return compressed(path, new AsyncFileOutputStream(path, options.getFlushSize(), options.isFsync()));
+    }
+
+    /**
+     * Compress the output written to a file if it is named *.gz. Flushing the returned stream ends a gzip member,
+     * so a file cut at a flushed length is still valid gzip
+     * @param path - File written by the stream
+     * @param file - Stream writing the file
+     * @return - Stream compressing into the file stream, or the file stream itself
+     */
+    public static OutputStream compressed(Path path, OutputStream file) {
+        if (!hasGzipExtension(path))
+            return file;
+        return new ParallelGzipOutputStream(file, ParallelGzipOutputStream.defaultBlockSize,
+                Runtime.getRuntime().availableProcessors(), Deflater.DEFAULT_COMPRESSION);
+    }
+
+    static boolean hasGzipExtension(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+}
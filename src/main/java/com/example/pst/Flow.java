@@ -0,0 +1,78 @@
+package com.example.pst;
+
+/**
+ * The interfaces of java.util.concurrent.Flow, which is only there from Java 9 on while this project builds for
+ * Java 8. The methods and their contracts are the same, so moving to the JDK interfaces only changes the imports.
+ * A {@link Publisher} sends items to a {@link Subscriber} only as far as the subscriber asked for them through
+ * its {@link Subscription}, so a slow subscriber holds back the publisher.
+ */
+public final class Flow {
+
+    private Flow() {
+    }
+
+    /**
+     * Source of items, sent to each subscriber as far as it asked for them
+     * @param <T> - Type of the items
+     */
+    @FunctionalInterface
+    public interface Publisher<T> {
+        /**
+         * Add a subscriber, which receives {@link Subscriber#onSubscribe(Subscription)} first
+         * @param subscriber - Subscriber receiving the items
+         */
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    /**
+     * Receiver of items. Its methods are called one at a time, never concurrently
+     * @param <T> - Type of the items
+     */
+    public interface Subscriber<T> {
+        /**
+         * Called before any other method, no items are sent before the subscription is asked for some
+         * @param subscription - Subscription asking for items or cancelling
+         */
+        void onSubscribe(Subscription subscription);
+
+        /**
+         * @param item - Next item, only sent as far as asked for
+         */
+        void onNext(T item);
+
+        /**
+         * Called when the publisher fails, no more methods are called after it
+         * @param throwable - Cause of the failure
+         */
+        void onError(Throwable throwable);
+
+        /**
+         * Called after the last item, no more methods are called after it
+         */
+        void onComplete();
+    }
+
+    /**
+     * Link between a publisher and one subscriber
+     */
+    public interface Subscription {
+        /**
+         * Ask for more items, adding to the number asked for before
+         * @param n - Number of items, the subscriber receives an IllegalArgumentException if it is not positive
+         */
+        void request(long n);
+
+        /**
+         * Stop sending items, items already on their way may still arrive
+         */
+        void cancel();
+    }
+
+    /**
+     * A subscriber which publishes items of its own
+     * @param <T> - Type of the items received
+     * @param <R> - Type of the items published
+     */
+    public interface Processor<T, R> extends Subscriber<T>, Publisher<R> {
+    }
+}
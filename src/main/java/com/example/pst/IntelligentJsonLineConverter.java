@@ -2,54 +2,604 @@ package com.example.pst;
 
 import com.google.gson.Gson;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 /**
- * An implementation of Converter which can convert any arbitrary dta
+ * An implementation of Converter which can convert any arbitrary dta.
+ * Instances are thread safe and can be shared between pipeline workers
  * Created by Setu on 3/3/22
  */
 public class IntelligentJsonLineConverter extends JsonLineConverter{
 
+    //Kinds of cell values besides the index of a date format
+    private static final int longValue = -1;
+    private static final int doubleValue = -2;
+    private static final int stringValue = -3;
+    private static final int unmatched = -4;
+
+    //Never timed, so it can be shared by all threads
+    private static final ConversionMetrics.Recorder untimed = new ConversionMetrics(false).recorder();
+
     private final List<String> fields;
-    private final String splitter;
     private final Gson gson;
+    private final JsonRowEncoder encoder;
+    private final ColumnSchema schema;
+    private final int[] filterColumns;
+    private final RowFilter[][] filtersOf;
+    private final boolean[] filtered;
+    private final ThreadLocal<StringBuilder> jsonBuffer = ThreadLocal.withInitial(StringBuilder::new);
+    private final ThreadLocal<CellScratch> cellScratch = ThreadLocal.withInitial(CellScratch::new);
+    private final ThreadLocal<RowBuffer> rowBuffer = ThreadLocal.withInitial(this::newRow);
+    private final ThreadLocal<ValueCache[]> valueCaches = ThreadLocal.withInitial(this::newValueCaches);
 
     public IntelligentJsonLineConverter(String delimeter, String heading, Gson gson) {
-        super(delimeter);
+        this(Dialect.of(delimeter), heading, gson);
+    }
+
+    /**
+     * @param dialect - Delimiter and quoting of the lines to convert
+     * @param heading - Line naming the fields, split at every delimiter
+     * @param gson - Gson object whose escaping and null handling the json follows
+     */
+    public IntelligentJsonLineConverter(Dialect dialect, String heading, Gson gson) {
+        super(dialect);
         this.fields = getFieldNames(heading, delimeter);
-        splitter = delimeter + splitterPostfix;
         this.gson = gson;
+        this.encoder = new JsonRowEncoder(fields, gson.htmlSafe(), gson.serializeNulls());
+        this.schema = null;
+        this.filterColumns = new int[0];
+        this.filtersOf = new RowFilter[0][];
+        this.filtered = new boolean[fields.size()];
+    }
+
+    private IntelligentJsonLineConverter(IntelligentJsonLineConverter converter, ColumnSchema schema) {
+        this(converter, schema, converter.encoder, converter.filterColumns, converter.filtersOf);
+    }
+
+    private IntelligentJsonLineConverter(IntelligentJsonLineConverter converter, ColumnSchema schema,
+                                         JsonRowEncoder encoder, int[] filterColumns, RowFilter[][] filtersOf) {
+        super(converter.dialect);
+        this.fields = converter.fields;
+        this.gson = converter.gson;
+        this.encoder = encoder;
+        this.schema = schema;
+        this.filterColumns = filterColumns;
+        this.filtersOf = filtersOf;
+        this.filtered = new boolean[fields.size()];
+        for (int column : filterColumns)
+            filtered[column] = true;
+    }
+
+    /**
+     * Sample rows to fix the type of every column. The returned converter tries the parser of the column type first
+     * and falls back to trying every type for cells which do not match, so the output stays the same
+     * @param sampleLines - First lines of the file after the header
+     * @return - Converter specialized for the sampled column types
+     */
+    public IntelligentJsonLineConverter inferSchema(Iterable<String> sampleLines) {
+        ColumnSchema.Inference inference = new ColumnSchema.Inference(fields.size());
+        for (String line : sampleLines) {
+            FieldOffsets attributes = split(line);
+            if (attributes.count() != fields.size())
+                continue;
+
+            for (int i = 0; i < fields.size(); i++) {
+                String text = trim(attributes.field(line, i));
+                if (text == null)
+                    continue;
+
+                Object value = processText(text);
+                if (value instanceof Long)
+                    inference.observe(i, ColumnType.LONG, -1);
+                else if (value instanceof Double)
+                    inference.observe(i, ColumnType.DOUBLE, -1);
+                else if (value instanceof LocalDate)
+                    inference.observe(i, ColumnType.DATE, datePatternOf(text));
+                else
+                    inference.observe(i, ColumnType.STRING, -1);
+            }
+        }
+        return new IntelligentJsonLineConverter(this, inference.toSchema());
+    }
+
+    /**
+     * Use column types inferred earlier, for example by a run that is resumed
+     * @param schema - Column types, one per field of the header
+     * @return - Converter specialized for the column types
+     */
+    public IntelligentJsonLineConverter withSchema(ColumnSchema schema) {
+        if (schema.size() != fields.size())
+            throw new IllegalArgumentException("Schema has " + schema.size() + " columns, header has " + fields.size());
+        for (int i = 0; i < schema.size(); i++) {
+            if (schema.datePattern(i) >= dateFormatters.size())
+                throw new IllegalArgumentException("Unknown date format " + schema.datePattern(i));
+        }
+        return new IntelligentJsonLineConverter(this, schema);
     }
 
     /**
-     * Converts a line of text to Person object
+     * Convert only some of the columns, and only the rows matching filters. Columns which are neither selected nor
+     * filtered on are only split, never cleaned, parsed or written. Filtered columns are converted first, so a row
+     * which does not match stops there and is returned filtered out, see {@link RowBuffer#isFilteredOut()}
+     * @param columns - Names of the columns written, in header order whatever their order here, null for all
+     * @param filters - Filters every written row matches, on written columns or others
+     * @return - Converter of the selected columns and rows, keeping the column types of this one
+     * @throws IllegalArgumentException - Thrown if a column is not in the header
+     */
+    public IntelligentJsonLineConverter select(Collection<String> columns, List<RowFilter> filters) {
+        for (String column : columns == null ? Collections.<String>emptyList() : columns) {
+            if (!fields.contains(column))
+                throw new IllegalArgumentException("Column " + column + " is not in the header");
+        }
+
+        //Like in the json text, a repeated field name stands for its last column
+        Map<Integer, List<RowFilter>> byColumn = new LinkedHashMap<>();
+        for (RowFilter filter : filters) {
+            int column = fields.lastIndexOf(filter.getColumn());
+            if (column < 0)
+                throw new IllegalArgumentException("Column " + filter.getColumn() + " is not in the header");
+            byColumn.computeIfAbsent(column, key -> new ArrayList<>()).add(filter);
+        }
+        int[] filterColumns = new int[byColumn.size()];
+        RowFilter[][] filtersOf = new RowFilter[byColumn.size()][];
+        int next = 0;
+        for (Map.Entry<Integer, List<RowFilter>> entry : byColumn.entrySet()) {
+            filterColumns[next] = entry.getKey();
+            filtersOf[next++] = entry.getValue().toArray(new RowFilter[0]);
+        }
+        JsonRowEncoder selected = columns == null ? encoder : encoder.select(columns);
+        return new IntelligentJsonLineConverter(this, schema, selected, filterColumns, filtersOf);
+    }
+
+    /**
+     * @return - Inferred column types, null if no schema was inferred
+     */
+    public ColumnSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Converts a line of text to json text
      * @param input - text to convert
-     * @return - Person object
+     * @return - json text, null if the line could not be parsed, empty if the row is filtered out
      */
     @Override
     public String intelligentConvert(String input) {
-        String[] attributes = input.split(splitter, -1);
+        StringBuilder json = jsonBuffer.get();
+        json.setLength(0);
+        return intelligentConvert(input, json) ? json.toString() : null;
+    }
 
-        if(attributes.length != fields.size()){
-            System.out.printf("Could not parse line %s%n", input);
-            return null;
+    /**
+     * Converts a line of text to json text, written straight into a buffer in header order
+     * @param input - text to convert
+     * @param out - buffer to append the json text to
+     * @return - false if the line could not be parsed, nothing is appended then or if the row is filtered out
+     */
+    @Override
+    public boolean intelligentConvert(String input, StringBuilder out) {
+        RowBuffer row = rowBuffer.get();
+        if (!intelligentConvert(input, row))
+            return false;
+        if (!row.isFilteredOut())
+            encoder.appendRow(row, out);
+        return true;
+    }
+
+    /**
+     * Converts a line of UTF-8 input to json, written straight into a byte buffer in header order
+     * @param input - Buffer holding the line
+     * @param start - Offset of the first byte of the line
+     * @param end - Offset after the last byte of the line
+     * @param out - buffer to append the json text to
+     * @return - false if the line could not be parsed, nothing is appended then or if the row is filtered out
+     */
+    @Override
+    public boolean intelligentConvert(ByteBuffer input, int start, int end, Utf8Builder out) {
+        RowBuffer row = rowBuffer.get();
+        if (!intelligentConvert(input, start, end, row))
+            return false;
+        if (!row.isFilteredOut())
+            encoder.appendRow(row, out);
+        return true;
+    }
+
+    /**
+     * Converts a line of text to typed cells in header order. Strings which only lose their ends when cleaned
+     * point into the line, only other strings are created
+     * @param input - text to convert
+     * @param row - Row with a cell per field of the header, cleared before use
+     * @return - false if the line could not be parsed
+     */
+    public boolean intelligentConvert(String input, RowBuffer row) {
+        return intelligentConvert(input, row, untimed);
+    }
+
+    /**
+     * Converts a line of text to typed cells in header order, timing the split and parse stages
+     * @param input - text to convert
+     * @param row - Row with a cell per field of the header, cleared before use
+     * @param recorder - Recorder of the calling thread
+     * @return - false if the line could not be parsed
+     */
+    public boolean intelligentConvert(String input, RowBuffer row, ConversionMetrics.Recorder recorder) {
+        long started = recorder.start();
+        FieldOffsets attributes = split(input);
+        started = recorder.lap(ConversionMetrics.Stage.SPLIT, started);
+
+        if(attributes.count() != fields.size())
+            return false;
+
+        CellScratch scratch = cellScratch.get();
+        ValueCache[] caches = valueCaches.get();
+        row.clear();
+        for (int f = 0; f < filterColumns.length; f++) {
+            int column = filterColumns[f];
+            if (!setCell(column, input, attributes, row, scratch, caches[column]))
+                return false;
+            if (!matches(f, row)) {
+                recorder.lap(ConversionMetrics.Stage.PARSE, started);
+                return true;
+            }
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            if (!encoder.isLeftOut(i) && !filtered[i] && !setCell(i, input, attributes, row, scratch, caches[i]))
+                return false;
+        }
+        recorder.lap(ConversionMetrics.Stage.PARSE, started);
+        return true;
+    }
+
+    /**
+     * Converts a line of UTF-8 input to typed cells in header order.
+     * Cells are cleaned and recognized on the input bytes and strings point into the input,
+     * only cells which are not ASCII and may be numbers, or which need more than cutting off their ends, are decoded
+     * @param input - Buffer holding the line
+     * @param start - Offset of the first byte of the line
+     * @param end - Offset after the last byte of the line
+     * @param row - Row with a cell per field of the header, cleared before use
+     * @return - false if the line could not be parsed
+     */
+    public boolean intelligentConvert(ByteBuffer input, int start, int end, RowBuffer row) {
+        return intelligentConvert(input, start, end, row, untimed);
+    }
+
+    /**
+     * Converts a line of UTF-8 input to typed cells in header order, timing the split and parse stages
+     * @param input - Buffer holding the line
+     * @param start - Offset of the first byte of the line
+     * @param end - Offset after the last byte of the line
+     * @param row - Row with a cell per field of the header, cleared before use
+     * @param recorder - Recorder of the calling thread
+     * @return - false if the line could not be parsed
+     */
+    public boolean intelligentConvert(ByteBuffer input, int start, int end, RowBuffer row,
+                                      ConversionMetrics.Recorder recorder) {
+        long started = recorder.start();
+        FieldOffsets attributes = split(input, start, end);
+        if (!attributes.isAscii())
+            Utf8Builder.validate(input, start, end);
+        started = recorder.lap(ConversionMetrics.Stage.SPLIT, started);
+
+        if(attributes.count() != fields.size())
+            return false;
+
+        CellScratch scratch = cellScratch.get();
+        ValueCache[] caches = valueCaches.get();
+        row.clear();
+        for (int f = 0; f < filterColumns.length; f++) {
+            int column = filterColumns[f];
+            if (!setCell(column, input, attributes.start(column), attributes.end(column), attributes.isAscii(), row,
+                    scratch, caches[column]))
+                return false;
+            if (!matches(f, row)) {
+                recorder.lap(ConversionMetrics.Stage.PARSE, started);
+                return true;
+            }
         }
+        for (int i = 0; i < fields.size(); i++) {
+            if (!encoder.isLeftOut(i) && !filtered[i] && !setCell(i, input, attributes.start(i), attributes.end(i),
+                    attributes.isAscii(), row, scratch, caches[i]))
+                return false;
+        }
+        recorder.lap(ConversionMetrics.Stage.PARSE, started);
+        return true;
+    }
 
-        Map<String, Object> values = new HashMap<>();
-        IntStream.range(0, fields.size()).forEach(i -> {
-            String text = trim(attributes[i]);
-            Object value = processText(text);
-            values.put(fields.get(i), value);
-        });
+    /**
+     * @return - Names of the columns of a {@link ColumnBatch}: the selected fields of the header, a repeated name
+     * only for its last column, like in the json text
+     */
+    public List<String> getColumnNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (!encoder.isLeftOut(i))
+                names.add(fields.get(i));
+        }
+        return names;
+    }
+
+    /**
+     * Converts a line of text to typed cells, added as a row to a columnar batch
+     * @param input - text to convert
+     * @param batch - Batch with the columns of {@link #getColumnNames()}
+     * @return - false if the line could not be parsed, nothing is added then or if the row is filtered out
+     */
+    public boolean intelligentConvert(String input, ColumnBatch batch) {
+        RowBuffer row = rowBuffer.get();
+        if (!intelligentConvert(input, row))
+            return false;
+        if (!row.isFilteredOut())
+            addRow(row, batch);
+        return true;
+    }
 
-        return gson.toJson(values);
+    /**
+     * Converts a line of UTF-8 input to typed cells, added as a row to a columnar batch
+     * @param input - Buffer holding the line
+     * @param start - Offset of the first byte of the line
+     * @param end - Offset after the last byte of the line
+     * @param batch - Batch with the columns of {@link #getColumnNames()}
+     * @return - false if the line could not be parsed, nothing is added then or if the row is filtered out
+     */
+    public boolean intelligentConvert(ByteBuffer input, int start, int end, ColumnBatch batch) {
+        RowBuffer row = rowBuffer.get();
+        if (!intelligentConvert(input, start, end, row))
+            return false;
+        if (!row.isFilteredOut())
+            addRow(row, batch);
+        return true;
+    }
+
+    /**
+     * @return - Fields of the header in column order, the columns of a {@link RowBuffer}
+     */
+    public List<String> getFields() {
+        return Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * @return - Row with a cell per field of the header
+     */
+    public RowBuffer newRow(){
+        return new RowBuffer(fields.size());
+    }
+
+    /**
+     * @return - Encoder writing the rows of this converter as json
+     */
+    public JsonRowEncoder getEncoder() {
+        return encoder;
+    }
+
+    /**
+     * Add a converted row to a columnar batch
+     * @param row - Row converted by this converter
+     * @param batch - Batch with the columns of {@link #getColumnNames()}
+     */
+    public void addRow(RowBuffer row, ColumnBatch batch){
+        for (int i = 0; i < fields.size(); i++) {
+            if (!encoder.isLeftOut(i))
+                batch.addCell(row, i);
+        }
+        batch.endRow();
+    }
+
+    /**
+     * Test the filters of a filtered column, marking the row filtered out if one does not match
+     * @param filter - Index of the filtered column in {@link #filterColumns}
+     * @param row - Row holding the converted cell
+     * @return - Whether the row matches the filters of the column
+     */
+    private boolean matches(int filter, RowBuffer row){
+        for (RowFilter rowFilter : filtersOf[filter]) {
+            if (!rowFilter.test(row, filterColumns[filter])) {
+                row.setFilteredOut(true);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean setCell(int column, String input, FieldOffsets attributes, RowBuffer row, CellScratch scratch,
+                            ValueCache cache){
+        long range = FieldCleaner.range(input, attributes.start(column), attributes.end(column));
+        if (range == FieldCleaner.notContiguous)
+            return setCell(column, trim(input, attributes, column), row);
+
+        int from = FieldCleaner.start(range);
+        int to = FieldCleaner.end(range);
+        if (from == to)
+            return true;
+        ValueCache.Entry cached = cache.get(input, from, to);
+        if (cached != null) {
+            cached.set(column, row);
+            return true;
+        }
+        CharSlice text = scratch.chars.set(input, from, to);
+        int kind = valueKind(column, text);
+        if (kind == stringValue)
+            row.setText(column, input, from, to);
+        else if (!setValue(column, kind, text, row))
+            return false;
+        remember(cache, text, column, row, scratch);
+        return true;
+    }
+
+    private boolean setCell(int column, ByteBuffer input, int start, int end, boolean ascii, RowBuffer row,
+                            CellScratch scratch, ValueCache cache){
+        long range = FieldCleaner.range(input, start, end);
+        if (range == FieldCleaner.notContiguous) {
+            //Left to the regex
+            return setCell(column, trim(Utf8Builder.decode(input, start, end)), row);
+        }
+
+        int from = FieldCleaner.start(range);
+        int to = FieldCleaner.end(range);
+        if (from == to)
+            return true;
+        if (ascii || Utf8Builder.isAscii(input, from, to)) {
+            ValueCache.Entry cached = cache.get(input, from, to);
+            if (cached != null) {
+                cached.set(column, row);
+                return true;
+            }
+            AsciiSlice text = scratch.text.set(input, from, to);
+            int kind = valueKind(column, text);
+            if (kind == stringValue)
+                row.setUtf8(column, input, from, to);
+            else if (!setValue(column, kind, text, row))
+                return false;
+            remember(cache, text, column, row, scratch);
+        } else if (!mayBeTyped(input, from, to)) {
+            row.setUtf8(column, input, from, to);
+        } else {
+            //Digits outside of ASCII are numbers too
+            return setCell(column, Utf8Builder.decode(input, from, to), row);
+        }
+        return true;
+    }
+
+    /**
+     * Remember a converted cell with its json text, unless the cache of its column is turned off
+     * @param cache - Cache of the column
+     * @param text - Cleaned text of the cell
+     * @param column - Column index of the cell
+     * @param row - Row holding the converted cell
+     * @param scratch - Buffers of the calling thread
+     */
+    private void remember(ValueCache cache, CharSequence text, int column, RowBuffer row, CellScratch scratch){
+        if (!cache.isEnabled() || text.length() > ValueCache.maxKeyLength)
+            return;
+        StringBuilder json = scratch.json;
+        json.setLength(0);
+        encoder.appendValue(row, column, json);
+        cache.put(text.toString(), row, column, json.toString());
+    }
+
+    /**
+     * @return - A value cache per field of the header
+     */
+    private ValueCache[] newValueCaches(){
+        ValueCache[] caches = new ValueCache[fields.size()];
+        for (int i = 0; i < caches.length; i++)
+            caches[i] = new ValueCache(ValueCache.defaultCapacity);
+        return caches;
+    }
+
+    /**
+     * Set a cleaned cell as the type it has in the json text
+     * @param column - Column index of the text
+     * @param text - Cleaned text, null if nothing is left
+     * @param row - Row receiving the cell
+     * @return - false if the cell cannot be written as json, see {@link #setValue(int, int, CharSequence, RowBuffer)}
+     */
+    private boolean setCell(int column, String text, RowBuffer row){
+        if (text == null)
+            return true;
+        int kind = valueKind(column, text);
+        if (kind == stringValue) {
+            row.setText(column, text);
+            return true;
+        }
+        return setValue(column, kind, text, row);
+    }
+
+    /**
+     * Find how a cell is written. With a schema the parser of the column type is tried first,
+     * for cells which do not match or without schema every type is tried: long, double, date and string
+     * @param column - Column index of the text
+     * @param text - text to be processed, not empty
+     * @return - {@link #longValue}, {@link #doubleValue}, {@link #stringValue} or the index of the date format
+     */
+    private int valueKind(int column, CharSequence text){
+        if (schema != null) {
+            int kind = typedValueKind(column, text);
+            if (kind != unmatched)
+                return kind;
+        }
+
+        //1. Parse as long
+        if (ValueParsers.isLong(text))
+            return longValue;
+
+        //2. Parse as double
+        if (ValueParsers.isDouble(text))
+            return doubleValue;
+
+        //3. Parse as date
+        for (int format = 0; format < dateFormatters.size(); format++) {
+            if (isDate(text, format))
+                return format;
+        }
+
+        //If it is not a date, then it is a string
+        return stringValue;
+    }
+
+    /**
+     * Try the parser of the column type
+     * @return - Kind of the value, {@link #unmatched} if the text does not match the column type
+     */
+    private int typedValueKind(int column, CharSequence text){
+        switch (schema.type(column)) {
+            case LONG:
+                return ValueParsers.isLong(text) ? longValue : unmatched;
+            case DOUBLE:
+                //A value which parses as long is written as long
+                return !ValueParsers.isLong(text) && ValueParsers.isDouble(text) ? doubleValue : unmatched;
+            case DATE:
+                //Supported date formats never parse the same text, so only the sampled one is tried
+                return isDate(text, schema.datePattern(column)) ? schema.datePattern(column) : unmatched;
+            case STRING:
+                return mayBeTyped(text) ? unmatched : stringValue;
+            default:
+                return unmatched;
+        }
+    }
+
+    private boolean isDate(CharSequence text, int format){
+        int date = parsePackedDate(text, format);
+        return date >= 0
+                || (date == ValueParsers.unknownDate && parseDate(text.toString(), dateFormatters.get(format)) != null);
+    }
+
+    /**
+     * Set a cell of a known kind other than string
+     * @param column - Column index of the text
+     * @param kind - Kind of the value as found by {@link #valueKind(int, CharSequence)}
+     * @param text - text to be processed, not empty
+     * @param row - Row receiving the cell
+     * @return - false if the value has no json number, NaN or infinite, so the line is rejected
+     */
+    private boolean setValue(int column, int kind, CharSequence text, RowBuffer row){
+        switch (kind) {
+            case longValue:
+                row.setLong(column, ValueParsers.parseLong(text));
+                break;
+            case doubleValue:
+                double value = ValueParsers.parseDouble(text);
+                if (Double.isNaN(value) || Double.isInfinite(value))
+                    return false;
+                row.setDouble(column, value);
+                break;
+            default:
+                int date = parsePackedDate(text, kind);
+                if (date >= 0)
+                    row.setDate(column, (int) ValueParsers.epochDay(date));
+                else
+                    row.setDate(column, parseDate(text.toString(), dateFormatters.get(kind)));  //Signed years
+        }
+        return true;
     }
 
     /**
@@ -62,27 +612,75 @@ public class IntelligentJsonLineConverter extends JsonLineConverter{
             return null;
 
         //1. Parse as long
-        try{
-            return Long.parseLong(text);
-        }catch (NumberFormatException nfe){}
+        if (ValueParsers.isLong(text))
+            return ValueParsers.parseLong(text);
 
         //2. Parse as double
-        try{
+        if (ValueParsers.isDouble(text))
             return Double.parseDouble(text);
-        }catch (NumberFormatException nfe){}
 
-        //3. Parse as double
-        LocalDate date = dateFormatters.stream()
-                .map(formatter -> parseDate(text, formatter))
-                .filter(Objects::nonNull)
-                .findAny()
-                .orElse(null);
+        //3. Parse as date
+        for (int format = 0; format < dateFormatters.size(); format++) {
+            LocalDate date = parseDate(text, format);
+            if (date != null)
+                return date;
+        }
 
         //If date is null, then return string
-        return date == null ? text : date;
+        return text;
+    }
+
+    private int datePatternOf(String text){
+        for (int format = 0; format < dateFormatters.size(); format++) {
+            if (parseDate(text, format) != null)
+                return format;
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether the text could be a number or a date. Numbers start with a digit, a point, NaN or Infinity
+     * after an optional sign, dates with a digit or the sign of a long year
+     */
+    private static boolean mayBeTyped(CharSequence text){
+        char c = text.charAt(0);
+        if ((c == '-' || c == '+') && text.length() > 1)
+            c = text.charAt(1);
+        return c == '.' || c == 'N' || c == 'I' || Character.digit(c, 10) >= 0;
+    }
+
+    /**
+     * {@link #mayBeTyped(CharSequence)} for a range of valid UTF-8, decoding only the character it looks at
+     */
+    private static boolean mayBeTyped(ByteBuffer input, int from, int to){
+        int i = from;
+        byte b = input.get(i);
+        if ((b == '-' || b == '+') && to - from > 1)
+            b = input.get(++i);
+        if (b >= 0)
+            return b == '.' || b == 'N' || b == 'I' || (b >= '0' && b <= '9');
+
+        //Digits outside of ASCII are in the basic multilingual plane, encoded in two or three bytes
+        char c;
+        if ((b & 0xE0) == 0xC0)
+            c = (char) ((b & 0x1F) << 6 | input.get(i + 1) & 0x3F);
+        else if ((b & 0xF0) == 0xE0)
+            c = (char) ((b & 0x0F) << 12 | (input.get(i + 1) & 0x3F) << 6 | input.get(i + 2) & 0x3F);
+        else
+            return false;
+        return Character.digit(c, 10) >= 0;
     }
 
     private List<String> getFieldNames(String heading, String seperator){
         return Arrays.stream(heading.split(seperator)).map(String::trim).collect(Collectors.toList());
     }
+
+    /**
+     * Buffers reused by a thread from cell to cell
+     */
+    private static final class CellScratch {
+        private final AsciiSlice text = new AsciiSlice();
+        private final CharSlice chars = new CharSlice();
+        private final StringBuilder json = new StringBuilder();
+    }
 }
@@ -1,11 +1,12 @@
 package com.example.pst;
 
+import java.nio.ByteBuffer;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -15,16 +16,45 @@ import java.util.stream.Collectors;
 public class JsonLineConverter implements Converter{
 
     protected final String delimeter;
+    protected final Dialect dialect;
+    protected final LineTokenizer tokenizer;
     protected final List<DateTimeFormatter> dateFormatters;
+    protected final List<ValueParsers.DateShape> dateShapes;
+    private final ThreadLocal<FieldOffsets> fieldOffsets = ThreadLocal.withInitial(FieldOffsets::new);
     private static final String[] supportedDateFormats = {"yyyy-MM-dd", "yyyy/MM/dd", "dd-MM-yyyy"};
-    protected static final String splitterPostfix = "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
-    private static final String regexToClean = "^\"|\\||\"$|,$";
+    /**
+     * Json names of the Person fields, in the order Gson writes them
+     */
+    public static final List<String> personFields = Collections.unmodifiableList(Arrays.asList(
+            "firstName", "middleName", "lastName", "gender", "dateOfBirth", "salary"));
+
+    //Formatters and shapes are immutable, so every converter shares them
+    private static final List<DateTimeFormatter> sharedDateFormatters = Collections.unmodifiableList(
+            Arrays.stream(supportedDateFormats).map(DateTimeFormatter::ofPattern).collect(Collectors.toList()));
+    private static final List<ValueParsers.DateShape> sharedDateShapes = Collections.unmodifiableList(
+            Arrays.stream(supportedDateFormats).map(ValueParsers.DateShape::compile).collect(Collectors.toList()));
 
     public JsonLineConverter(String delimeter) {
-        this.delimeter = delimeter;
-        dateFormatters = Arrays.stream(supportedDateFormats)
-                .map(DateTimeFormatter::ofPattern)
-                .collect(Collectors.toList());
+        this(Dialect.of(delimeter));
+    }
+
+    /**
+     * @param dialect - Delimiter and quoting of the lines to convert. Fields are cleaned of double quotes
+     * whichever quote the dialect uses, see FieldCleaner
+     */
+    public JsonLineConverter(Dialect dialect) {
+        this.delimeter = dialect.getDelimeter();
+        this.dialect = dialect;
+        this.tokenizer = dialect.tokenizer();
+        this.dateFormatters = sharedDateFormatters;
+        this.dateShapes = sharedDateShapes;
+    }
+
+    /**
+     * @return - Delimiter and quoting of the lines the converter is for
+     */
+    public Dialect getDialect() {
+        return dialect;
     }
 
     /**
@@ -34,32 +64,77 @@ public class JsonLineConverter implements Converter{
      */
     @Override
     public Person convert( String input) {
-        String splitter = delimeter + splitterPostfix;
-        String[] attributes = input.split(splitter, -1);
+        FieldOffsets attributes = split(input);
 
         Person person = new Person();
-        person.setFirstName(trim(attributes[0]));
-        person.setMiddleName(trim(attributes[1]));
-        person.setLastName(trim(attributes[2]));
-        person.setGender(trim(attributes[3]));
-        person.setDateOfBirth(getDateOfBirth(attributes[4]));
-        person.setSalary(Integer.parseInt(attributes[5]));
+        person.setFirstName(trim(input, attributes, 0));
+        person.setMiddleName(trim(input, attributes, 1));
+        person.setLastName(trim(input, attributes, 2));
+        person.setGender(trim(input, attributes, 3));
+        person.setDateOfBirth(getDateOfBirth(attributes.field(input, 4)));
+        person.setSalary(Integer.parseInt(attributes.field(input, 5)));
         return person;
     }
 
+    /**
+     * Converts a line of text to the fields of a Person without creating it
+     * @param input - text to convert
+     * @param row - Row with a cell per Person field, cleared before use
+     */
+    @Override
+    public void convert(String input, RowBuffer row) {
+        FieldOffsets attributes = split(input);
+
+        row.clear();
+        for (int i = 0; i < 4; i++)
+            row.setText(i, trim(input, attributes, i));
+        row.setDate(4, getDateOfBirth(attributes.field(input, 4)));
+        row.setLong(5, Integer.parseInt(attributes.field(input, 5)));
+    }
+
+    /**
+     * Split a line into fields, honouring quoted delimiters
+     * @param input - Line to split
+     * @return - Field boundaries, owned by the calling thread and valid until its next split
+     */
+    protected FieldOffsets split(String input) {
+        FieldOffsets offsets = fieldOffsets.get();
+        tokenizer.tokenize(input, offsets);
+        return offsets;
+    }
+
+    /**
+     * Split a line of UTF-8 input into fields, honouring quoted delimiters
+     * @param input - Buffer holding the line
+     * @param start - Offset of the first byte of the line
+     * @param end - Offset after the last byte of the line
+     * @return - Field boundaries as byte offsets, owned by the calling thread and valid until its next split
+     */
+    protected FieldOffsets split(ByteBuffer input, int start, int end) {
+        FieldOffsets offsets = fieldOffsets.get();
+        tokenizer.tokenize(input, start, end, offsets);
+        return offsets;
+    }
+
     /**
      * Cleans the data
      * @param data - Text to clean
      * @return - Cleaned text
      */
     protected String trim(String data){
-        //Trim double quotes
-        data = data.replaceAll(regexToClean, "");
-
-        //Trim white space
-        data = data.trim();
+        //Trim double quotes and white space, see FieldCleaner
+        return FieldCleaner.clean(data, 0, data.length());
+    }
 
-        return data.isEmpty() ? null : data;
+    /**
+     * Cleans a field of a line, creating at most one string
+     * @param line - Line the offsets were computed for
+     * @param attributes - Field boundaries
+     * @param index - Field index
+     * @return - Cleaned text
+     */
+    protected String trim(String line, FieldOffsets attributes, int index){
+        return FieldCleaner.clean(line, attributes.start(index), attributes.end(index));
     }
 
     /**
@@ -68,11 +143,37 @@ public class JsonLineConverter implements Converter{
      * @return - Parsed date
      */
     private LocalDate getDateOfBirth(String dateStr){
-        return dateFormatters.stream()
-                .map(formatter -> parseDate(dateStr, formatter))
-                .filter(Objects::nonNull)
-                .findAny()
-                .orElse(null);
+        for (int format = 0; format < dateFormatters.size(); format++) {
+            LocalDate date = parseDate(dateStr, format);
+            if (date != null)
+                return date;
+        }
+        return null;
+    }
+
+    /**
+     * Parse date with one of the supported formats. The text is checked by hand first,
+     * the date time formatter is only used for signed years
+     * @param dateStr - String to parse
+     * @param format - Index of the supported format
+     * @return - Parsed date, null if the text is not a date of the format
+     */
+    protected LocalDate parseDate(String dateStr, int format){
+        int date = parsePackedDate(dateStr, format);
+        if (date >= 0)
+            return LocalDate.of(ValueParsers.year(date), ValueParsers.month(date), ValueParsers.day(date));
+        return date == ValueParsers.unknownDate ? parseDate(dateStr, dateFormatters.get(format)) : null;
+    }
+
+    /**
+     * Parse date with one of the supported formats by hand
+     * @param dateStr - String to parse
+     * @param format - Index of the supported format
+     * @return - Date as yyyyMMdd number, {@link ValueParsers#noDate} or {@link ValueParsers#unknownDate}
+     */
+    protected int parsePackedDate(CharSequence dateStr, int format){
+        ValueParsers.DateShape shape = dateShapes.get(format);
+        return shape == null ? ValueParsers.unknownDate : shape.parse(dateStr);
     }
 
     /**
@@ -0,0 +1,332 @@
+package com.example.pst;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts a stream of delimiter separated UTF-8 input to json lines, for embedding the converter in a service
+ * which receives its input in pieces, like from a socket. Chunks of input bytes come in from an upstream
+ * publisher and chunks of UTF-8 json lines go out to one subscriber, each followed by a line separator.
+ * Chunks may end anywhere, also inside a quoted field or a character: the bytes after the last complete record
+ * are kept and joined with the next chunk. The first record is the header if the dialect has one.
+ * One input chunk is asked for at a time and only while the subscriber has asked for output, so a slow
+ * subscriber holds back the source: at most one chunk of input, one chunk of output and the bytes of an
+ * unfinished record are held. Records longer than the maximum record size are rejected, an unfinished one is
+ * dropped as soon as it is too long and the bytes up to its line terminator are skipped as they come in.
+ * Chunks are converted on the given executor, one at a time. Records which cannot be parsed are counted as
+ * rejected in the metrics and left out.
+ * Instances convert one stream and are thread safe.
+ */
+public final class JsonLineProcessor implements Flow.Processor<ByteBuffer, ByteBuffer> {
+
+    private static final byte[] lineSeparatorBytes = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final Dialect dialect;
+    private final ConverterFactory converters;
+    private final int maxRecordSize;
+    private final Executor executor;
+    private final ConversionMetrics metrics = new ConversionMetrics(false);
+    private final Queue<ByteBuffer> inputs = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private volatile Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super ByteBuffer> downstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable error;
+    private volatile boolean cancelled;
+
+    //Only used by the drain loop, which never runs concurrently
+    private IntelligentJsonLineConverter converter;
+    private RowBuffer row;
+    private ByteBuffer pending = ByteBuffer.allocate(0);
+    private ByteBuffer ready;
+    private boolean awaitingInput;
+    private boolean skippingOversized;
+    private boolean flushed;
+    private boolean terminated;
+
+    /**
+     * Convert on the thread signalling the processor
+     * @param dialect - Dialect of the input
+     * @param converters - Hands out the converter for the header of the input
+     */
+    public JsonLineProcessor(Dialect dialect, ConverterFactory converters) {
+        this(dialect, converters, RecordReader.defaultMaxRecordSize, Runnable::run);
+    }
+
+    /**
+     * @param dialect - Dialect of the input
+     * @param converters - Hands out the converter for the header of the input
+     * @param maxRecordSize - Number of bytes after which an open quote is taken as a stray one, and after which
+     * other records are rejected
+     * @param executor - Runs the conversion of the chunks
+     */
+    public JsonLineProcessor(Dialect dialect, ConverterFactory converters, int maxRecordSize, Executor executor) {
+        if (maxRecordSize < 1)
+            throw new IllegalArgumentException("Maximum record size must be at least 1");
+        this.dialect = dialect;
+        this.converters = converters;
+        this.maxRecordSize = maxRecordSize;
+        this.executor = executor;
+    }
+
+    /**
+     * @return - Counts of the converted and rejected records and of the bytes in and out
+     */
+    public ConversionMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (upstream != null) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        if (cancelled)
+            subscription.cancel();
+        else
+            drain();
+    }
+
+    @Override
+    public void onNext(ByteBuffer chunk) {
+        inputs.add(chunk);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    /**
+     * Add the subscriber of the json lines, only one is allowed
+     * @param subscriber - Receives chunks of UTF-8 json lines
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Only one subscriber is allowed"));
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    fail(new IllegalArgumentException("Number of requested chunks must be positive"));
+                    return;
+                }
+                demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                Flow.Subscription subscription = upstream;
+                if (subscription != null)
+                    subscription.cancel();
+                drain();
+            }
+        });
+        downstream = subscriber;
+        drain();
+    }
+
+    /**
+     * Stop the upstream and pass a failure to the subscriber
+     */
+    private void fail(Throwable throwable) {
+        Flow.Subscription subscription = upstream;
+        if (subscription != null)
+            subscription.cancel();
+        onError(throwable);
+    }
+
+    /**
+     * Run the drain loop on the executor, unless it is running already. A signal arriving while it runs makes
+     * it loop once more
+     */
+    private void drain() {
+        if (wip.getAndIncrement() == 0)
+            executor.execute(this::drainLoop);
+    }
+
+    private void drainLoop() {
+        int missed = 1;
+        while (true) {
+            if (!terminated && downstream != null) {
+                try {
+                    emit();
+                } catch (RuntimeException e) {
+                    terminated = true;
+                    if (upstream != null)
+                        upstream.cancel();
+                    downstream.onError(e);
+                }
+            }
+            if (terminated || cancelled) {
+                inputs.clear();
+                ready = null;
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+                return;
+        }
+    }
+
+    /**
+     * Send converted chunks as far as asked for, converting the next input chunk once the last one is sent
+     */
+    private void emit() {
+        while (!cancelled) {
+            if (error != null) {
+                terminated = true;
+                downstream.onError(error);
+                return;
+            }
+            if (ready != null) {
+                if (demand.get() == 0)
+                    return;
+                demand.decrementAndGet();
+                ByteBuffer chunk = ready;
+                ready = null;
+                downstream.onNext(chunk);
+                continue;
+            }
+            ByteBuffer chunk = inputs.poll();
+            if (chunk != null) {
+                awaitingInput = false;
+                ready = convert(chunk, false);
+                continue;
+            }
+            if (upstreamDone) {
+                if (!flushed) {
+                    flushed = true;
+                    ready = convert(ByteBuffer.allocate(0), true);
+                    continue;
+                }
+                terminated = true;
+                downstream.onComplete();
+                return;
+            }
+            Flow.Subscription subscription = upstream;
+            if (subscription != null && !awaitingInput && demand.get() > 0) {
+                awaitingInput = true;
+                subscription.request(1);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Convert the complete records of the unfinished bytes followed by a chunk, keeping the bytes after them
+     * @param chunk - Next input bytes
+     * @param last - Whether no input follows
+     * @return - UTF-8 json lines, null if no record was converted
+     */
+    private ByteBuffer convert(ByteBuffer chunk, boolean last) {
+        metrics.addBytesIn(chunk.remaining());
+        if (pending.remaining() < chunk.remaining()) {
+            int length = pending.position();
+            pending = ByteBuffer.wrap(Arrays.copyOf(pending.array(), length + chunk.remaining()));
+            ((Buffer) pending).position(length);
+        }
+        pending.put(chunk.duplicate());
+
+        ConversionMetrics.Recorder recorder = metrics.recorder();
+        Utf8Builder jsonLines = new Utf8Builder(0);
+        int limit = pending.position();
+        int start = 0;
+        while (start < limit) {
+            int end = skippingOversized ? lineEnd(start, limit, last)
+                    : RecordReader.recordEnd(pending, start, limit, dialect, maxRecordSize, last);
+            if (end < 0) {
+                //An oversized record is dropped as soon as it is too long instead of being kept until its end
+                if (!skippingOversized && limit - start > maxRecordSize) {
+                    recorder.rejected();
+                    skippingOversized = true;
+                }
+                if (skippingOversized)
+                    start = limit;
+                break;
+            }
+            //A \r at the end may be the first half of a \r\n
+            if (!last && end == limit - 1 && pending.get(end) == '\r')
+                break;
+            if (skippingOversized)
+                skippingOversized = false;
+            else if (end - start > maxRecordSize)
+                recorder.rejected();
+            else
+                convertRecord(start, end, jsonLines, recorder);
+            start = RecordReader.nextRecord(pending, end, limit);
+        }
+        recorder.flush();
+
+        System.arraycopy(pending.array(), start, pending.array(), 0, limit - start);
+        ((Buffer) pending).position(limit - start);
+        if (jsonLines.length() == 0)
+            return null;
+        metrics.addBytesOut(jsonLines.length());
+        return jsonLines.toByteBuffer();
+    }
+
+    /**
+     * @return - Offset of the first line terminator of the buffered bytes, the limit if none follows, -1 if more
+     * input may follow
+     */
+    private int lineEnd(int start, int limit, boolean last) {
+        for (int i = start; i < limit; i++) {
+            byte b = pending.get(i);
+            if (b == '\n' || b == '\r')
+                return i;
+        }
+        return last ? limit : -1;
+    }
+
+    private void convertRecord(int start, int end, Utf8Builder jsonLines, ConversionMetrics.Recorder recorder) {
+        if (converter == null) {
+            String first = Utf8Builder.decode(pending, start, end);
+            converter = converters.intelligentConverter(dialect, dialect.headingOf(first));
+            row = converter.newRow();
+            if (dialect.hasHeader())
+                return;
+        }
+        if (converter.intelligentConvert(pending, start, end, row, recorder)) {
+            recorder.converted();
+            converter.getEncoder().appendRow(row, jsonLines);
+            jsonLines.append(lineSeparatorBytes);
+        } else {
+            recorder.rejected();
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package com.example.pst;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writes rows as json objects straight into a character buffer or a UTF-8 byte buffer, in header order.
+ * Field names are escaped once when the encoder is created. Strings are escaped the same way as
+ * Gson's compact writer does, so the output only differs from serializing a map with Gson in the key order.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class JsonRowEncoder {
+
+    private static final String[] replacements = new String[128];
+    private static final String[] htmlSafeReplacements;
+
+    static {
+        for (int i = 0; i < 0x20; i++)
+            replacements[i] = String.format("\\u%04x", i);
+        replacements['"'] = "\\\"";
+        replacements['\\'] = "\\\\";
+        replacements['\t'] = "\\t";
+        replacements['\b'] = "\\b";
+        replacements['\n'] = "\\n";
+        replacements['\r'] = "\\r";
+        replacements['\f'] = "\\f";
+        htmlSafeReplacements = replacements.clone();
+        htmlSafeReplacements['<'] = "\\u003c";
+        htmlSafeReplacements['>'] = "\\u003e";
+        htmlSafeReplacements['&'] = "\\u0026";
+        htmlSafeReplacements['='] = "\\u003d";
+        htmlSafeReplacements['\''] = "\\u0027";
+    }
+
+    private static final byte[][] byteReplacements = toBytes(replacements);
+    private static final byte[][] htmlSafeByteReplacements = toBytes(htmlSafeReplacements);
+    private static final byte[] lineSeparatorEscape = "\\u2028".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] paragraphSeparatorEscape = "\\u2029".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] nullBytes = "null".getBytes(StandardCharsets.US_ASCII);
+
+    //Formats dates the same way as the LocalDate serializer of the ConverterFactory
+    static final DateTimeFormatter outputDateFormatter = DateTimeFormatter.ofPattern(Main.outputDatePattern);
+    private static final long firstFourDigitDay = LocalDate.of(1, 1, 1).toEpochDay();
+    private static final long lastFourDigitDay = LocalDate.of(9999, 12, 31).toEpochDay();
+
+    private final List<String> fields;
+    private final char[][] names;
+    private final byte[][] nameBytes;
+    private final boolean[] overridden;
+    private final boolean[] leftOut;
+    private final String[] escapes;
+    private final byte[][] byteEscapes;
+    private final boolean serializeNulls;
+
+    /**
+     * @param fields - Field names in header order
+     * @param htmlSafe - Whether html sensitive characters are escaped, as Gson does by default
+     * @param serializeNulls - Whether empty values are written as null instead of being left out
+     */
+    public JsonRowEncoder(List<String> fields, boolean htmlSafe, boolean serializeNulls) {
+        this.escapes = htmlSafe ? htmlSafeReplacements : replacements;
+        this.byteEscapes = htmlSafe ? htmlSafeByteReplacements : byteReplacements;
+        this.serializeNulls = serializeNulls;
+        this.fields = fields;
+        this.names = new char[fields.size()][];
+        this.nameBytes = new byte[fields.size()][];
+        this.overridden = new boolean[fields.size()];
+
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < fields.size(); i++) {
+            name.setLength(0);
+            appendString(fields.get(i), name);
+            name.append(':');
+            names[i] = name.toString().toCharArray();
+            nameBytes[i] = name.toString().getBytes(StandardCharsets.UTF_8);
+
+            //Like a map, a repeated field name keeps the value of its last column
+            overridden[i] = fields.subList(i + 1, fields.size()).contains(fields.get(i));
+        }
+        this.leftOut = overridden;
+    }
+
+    private JsonRowEncoder(JsonRowEncoder encoder, Collection<String> selected) {
+        this.escapes = encoder.escapes;
+        this.byteEscapes = encoder.byteEscapes;
+        this.serializeNulls = encoder.serializeNulls;
+        this.fields = encoder.fields;
+        this.names = encoder.names;
+        this.nameBytes = encoder.nameBytes;
+        this.overridden = encoder.overridden;
+        this.leftOut = new boolean[fields.size()];
+        for (int i = 0; i < leftOut.length; i++)
+            leftOut[i] = overridden[i] || !selected.contains(fields.get(i));
+    }
+
+    /**
+     * @param selected - Names of the fields to write, still in header order
+     * @return - Encoder leaving out the other fields, also as null
+     */
+    public JsonRowEncoder select(Collection<String> selected) {
+        return new JsonRowEncoder(this, selected);
+    }
+
+    /**
+     * @param column - Column index
+     * @return - Whether the column is left out because a later column has the same name
+     */
+    public boolean isOverridden(int column) {
+        return overridden[column];
+    }
+
+    /**
+     * @param column - Column index
+     * @return - Whether the column is left out of the rows, because it is overridden or not selected
+     */
+    public boolean isLeftOut(int column) {
+        return leftOut[column];
+    }
+
+    /**
+     * Start a row
+     * @param out - Buffer to write to
+     */
+    public void beginRow(StringBuilder out) {
+        out.append('{');
+    }
+
+    /**
+     * Write the name of a field, preceded by a separator if it is not the first field of the row
+     * @param column - Column index
+     * @param out - Buffer to write to
+     */
+    public void appendName(int column, StringBuilder out) {
+        if (out.charAt(out.length() - 1) != '{')
+            out.append(',');
+        out.append(names[column]);
+    }
+
+    /**
+     * Write a field without value
+     * @param column - Column index
+     * @param out - Buffer to write to
+     */
+    public void appendNull(int column, StringBuilder out) {
+        if (serializeNulls) {
+            appendName(column, out);
+            out.append("null");
+        }
+    }
+
+    /**
+     * End a row
+     * @param out - Buffer to write to
+     */
+    public void endRow(StringBuilder out) {
+        out.append('}');
+    }
+
+    /**
+     * Start a row
+     * @param out - Buffer to write to
+     */
+    public void beginRow(Utf8Builder out) {
+        out.append('{');
+    }
+
+    /**
+     * Write the name of a field, preceded by a separator if it is not the first field of the row
+     * @param column - Column index
+     * @param out - Buffer to write to
+     */
+    public void appendName(int column, Utf8Builder out) {
+        if (out.lastByte() != '{')
+            out.append(',');
+        out.append(nameBytes[column]);
+    }
+
+    /**
+     * Write a field without value
+     * @param column - Column index
+     * @param out - Buffer to write to
+     */
+    public void appendNull(int column, Utf8Builder out) {
+        if (serializeNulls) {
+            appendName(column, out);
+            out.append(nullBytes);
+        }
+    }
+
+    /**
+     * End a row
+     * @param out - Buffer to write to
+     */
+    public void endRow(Utf8Builder out) {
+        out.append('}');
+    }
+
+    /**
+     * Write a row as a json object, cells of overridden or not selected columns are left out
+     * @param row - Row with a cell per field
+     * @param out - Buffer to write to
+     */
+    public void appendRow(RowBuffer row, StringBuilder out) {
+        beginRow(out);
+        for (int i = 0; i < names.length; i++) {
+            if (leftOut[i])
+                continue;
+            byte kind = row.kind(i);
+            if (kind == 0) {
+                appendNull(i, out);
+                continue;
+            }
+            appendName(i, out);
+            String json = row.getJson(i);
+            if (json != null)
+                out.append(json);
+            else
+                appendValue(row, i, out);
+        }
+        endRow(out);
+    }
+
+    /**
+     * Write the value of a cell
+     * @param row - Row holding the cell
+     * @param column - Column index of a cell which is not null
+     * @param out - Buffer to write to
+     */
+    public void appendValue(RowBuffer row, int column, StringBuilder out) {
+        switch (row.kind(column)) {
+            case RowBuffer.longCell:
+                out.append(row.getLong(column));
+                break;
+            case RowBuffer.doubleCell:
+                out.append(row.getDouble(column));
+                break;
+            case RowBuffer.dateCell:
+                appendDate(row.getEpochDay(column), out);
+                break;
+            case RowBuffer.textCell:
+                appendString(row.getText(column), row.getStart(column), row.getEnd(column), out);
+                break;
+            default:
+                appendString(row.getString(column), out);
+        }
+    }
+
+    /**
+     * Write a row as a UTF-8 json object, cells of overridden or not selected columns are left out
+     * @param row - Row with a cell per field
+     * @param out - Buffer to write to
+     */
+    public void appendRow(RowBuffer row, Utf8Builder out) {
+        beginRow(out);
+        for (int i = 0; i < names.length; i++) {
+            if (leftOut[i])
+                continue;
+            byte kind = row.kind(i);
+            if (kind == 0) {
+                appendNull(i, out);
+                continue;
+            }
+            appendName(i, out);
+            byte[] json = row.getJsonUtf8(i);
+            if (json != null)
+                out.append(json);
+            else
+                appendValue(row, i, out);
+        }
+        endRow(out);
+    }
+
+    /**
+     * Write the value of a cell as UTF-8
+     * @param row - Row holding the cell
+     * @param column - Column index of a cell which is not null
+     * @param out - Buffer to write to
+     */
+    public void appendValue(RowBuffer row, int column, Utf8Builder out) {
+        switch (row.kind(column)) {
+            case RowBuffer.longCell:
+                out.append(row.getLong(column));
+                break;
+            case RowBuffer.doubleCell:
+                out.append(row.getDouble(column));
+                break;
+            case RowBuffer.dateCell:
+                appendDate(row.getEpochDay(column), out);
+                break;
+            case RowBuffer.textCell:
+                appendString(row.getText(column), row.getStart(column), row.getEnd(column), out);
+                break;
+            default:
+                appendString(row.getSource(column), row.getStart(column), row.getEnd(column), out);
+        }
+    }
+
+    /**
+     * Write a string value as a quoted and escaped json string
+     * @param value - Value to write
+     * @param out - Buffer to write to
+     */
+    public void appendString(CharSequence value, StringBuilder out) {
+        appendString(value, 0, value.length(), out);
+    }
+
+    /**
+     * Write a range of a text as a quoted and escaped json string
+     * @param value - Text holding the value
+     * @param from - Offset of the first character
+     * @param to - Offset after the last character
+     * @param out - Buffer to write to
+     */
+    public void appendString(CharSequence value, int from, int to, StringBuilder out) {
+        out.append('"');
+        int last = from;
+        for (int i = from; i < to; i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c < 128) {
+                replacement = escapes[c];
+                if (replacement == null)
+                    continue;
+            } else if (c == '\u2028') {
+                replacement = "\\u2028";
+            } else if (c == '\u2029') {
+                replacement = "\\u2029";
+            } else {
+                continue;
+            }
+            out.append(value, last, i).append(replacement);
+            last = i + 1;
+        }
+        out.append(value, last, to).append('"');
+    }
+
+    /**
+     * Write a range of UTF-8 input as a quoted and escaped json string. Runs of bytes which need no escaping
+     * are copied from the input as they are
+     * @param source - Buffer holding valid UTF-8
+     * @param from - Offset of the first byte
+     * @param to - Offset after the last byte
+     * @param out - Buffer to write to
+     */
+    public void appendString(ByteBuffer source, int from, int to, Utf8Builder out) {
+        out.append('"');
+        int last = from;
+        for (int i = from; i < to; i++) {
+            byte b = source.get(i);
+            byte[] replacement;
+            int width = 1;
+            if (b >= 0) {
+                replacement = byteEscapes[b];
+                if (replacement == null)
+                    continue;
+            } else if (b == (byte) 0xE2 && i + 2 < to && source.get(i + 1) == (byte) 0x80
+                    && (source.get(i + 2) == (byte) 0xA8 || source.get(i + 2) == (byte) 0xA9)) {
+                //U+2028 and U+2029
+                replacement = source.get(i + 2) == (byte) 0xA8 ? lineSeparatorEscape : paragraphSeparatorEscape;
+                width = 3;
+            } else {
+                continue;
+            }
+            out.append(source, last, i).append(replacement);
+            i += width - 1;
+            last = i + 1;
+        }
+        out.append(source, last, to).append('"');
+    }
+
+    /**
+     * Write a string value as a quoted and escaped json string
+     * @param value - Value to write
+     * @param out - Buffer to write to
+     */
+    public void appendString(CharSequence value, Utf8Builder out) {
+        appendString(value, 0, value.length(), out);
+    }
+
+    /**
+     * Write a range of a text as a quoted and escaped json string
+     * @param value - Text holding the value
+     * @param from - Offset of the first character
+     * @param to - Offset after the last character
+     * @param out - Buffer to write to
+     */
+    public void appendString(CharSequence value, int from, int to, Utf8Builder out) {
+        StringBuilder escaped = new StringBuilder(to - from + 2);
+        appendString(value, from, to, escaped);
+        out.appendUtf8(escaped);
+    }
+
+    /**
+     * Write a date as a quoted {@link Main#outputDatePattern} string
+     * @param date - Date between the years 1 and 9999
+     * @param out - Buffer to write to
+     */
+    public static void appendDate(LocalDate date, StringBuilder out) {
+        appendDate(date.getYear(), date.getMonthValue(), date.getDayOfMonth(), out);
+    }
+
+    /**
+     * Write a date as a quoted {@link Main#outputDatePattern} string
+     * @param year - Year between 1 and 9999
+     * @param month - Month of year
+     * @param day - Day of month
+     * @param out - Buffer to write to
+     */
+    public static void appendDate(int year, int month, int day, StringBuilder out) {
+        out.append('"')
+                .append((char) ('0' + year / 1000))
+                .append((char) ('0' + year / 100 % 10))
+                .append((char) ('0' + year / 10 % 10))
+                .append((char) ('0' + year % 10))
+                .append('-')
+                .append((char) ('0' + month / 10))
+                .append((char) ('0' + month % 10))
+                .append('-')
+                .append((char) ('0' + day / 10))
+                .append((char) ('0' + day % 10))
+                .append('"');
+    }
+
+    /**
+     * Write a date as a quoted {@link Main#outputDatePattern} string
+     * @param year - Year between 1 and 9999
+     * @param month - Month of year
+     * @param day - Day of month
+     * @param out - Buffer to write to
+     */
+    public static void appendDate(int year, int month, int day, Utf8Builder out) {
+        out.append('"')
+                .append((byte) ('0' + year / 1000))
+                .append((byte) ('0' + year / 100 % 10))
+                .append((byte) ('0' + year / 10 % 10))
+                .append((byte) ('0' + year % 10))
+                .append('-')
+                .append((byte) ('0' + month / 10))
+                .append((byte) ('0' + month % 10))
+                .append('-')
+                .append((byte) ('0' + day / 10))
+                .append((byte) ('0' + day % 10))
+                .append('"');
+    }
+
+    /**
+     * Write a date as a quoted {@link Main#outputDatePattern} string, years beyond four digits with their sign
+     * @param epochDay - Days since 1970-01-01
+     * @param out - Buffer to write to
+     */
+    public void appendDate(int epochDay, StringBuilder out) {
+        if (epochDay < firstFourDigitDay || epochDay > lastFourDigitDay) {
+            appendString(LocalDate.ofEpochDay(epochDay).format(outputDateFormatter), out);
+            return;
+        }
+        int date = ValueParsers.packedDate(epochDay);
+        appendDate(ValueParsers.year(date), ValueParsers.month(date), ValueParsers.day(date), out);
+    }
+
+    /**
+     * Write a date as a quoted {@link Main#outputDatePattern} string, years beyond four digits with their sign
+     * @param epochDay - Days since 1970-01-01
+     * @param out - Buffer to write to
+     */
+    public void appendDate(int epochDay, Utf8Builder out) {
+        if (epochDay < firstFourDigitDay || epochDay > lastFourDigitDay) {
+            appendString(LocalDate.ofEpochDay(epochDay).format(outputDateFormatter), out);
+            return;
+        }
+        int date = ValueParsers.packedDate(epochDay);
+        appendDate(ValueParsers.year(date), ValueParsers.month(date), ValueParsers.day(date), out);
+    }
+
+    /**
+     * @param date - Date to check
+     * @return - Whether the date can be written by {@link #appendDate(LocalDate, StringBuilder)}
+     */
+    public static boolean isFourDigitYear(LocalDate date) {
+        return date.getYear() >= 1 && date.getYear() <= 9999;
+    }
+
+    private static byte[][] toBytes(String[] strings) {
+        byte[][] bytes = new byte[strings.length][];
+        for (int i = 0; i < strings.length; i++) {
+            if (strings[i] != null)
+                bytes[i] = strings[i].getBytes(StandardCharsets.US_ASCII);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.pst;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single pass, quote aware tokenizer for delimiter separated lines.
+ * It gives the same fields as splitting with the delimiter followed by the lookahead
+ * {@code (?=(?:[^"]*"[^"]*")*[^"]*$)}: a delimiter splits the line only if an even number
+ * of quotes follows it. Each character is read once; delimiters are collected by the parity of
+ * the quotes preceding them and the matching set is chosen once the total is known.
+ * Escaped quotes ("") toggle the parity twice, exactly as the regex counts them.
+ * Dialects which escape quotes with a backslash instead skip the character after every backslash.
+ * Bytes are scanned 8 at a time with {@link Swar} unless backslashes escape: the quote parity before each
+ * delimiter of a word is the prefix XOR of its quote mask, flipped by the quotes of the earlier words.
+ * Instances are immutable and can be shared between threads.
+ */
+public final class LineTokenizer {
+
+    private final char delimiter;
+    private final char quote;
+    private final boolean backslashEscapes;
+
+    public LineTokenizer(char delimiter) {
+        this(delimiter, '"', false);
+    }
+
+    /**
+     * @param delimiter - Character separating the fields
+     * @param quote - Character quoting fields which hold the delimiter
+     * @param backslashEscapes - Whether a backslash escapes the next character, instead of quotes being doubled
+     */
+    public LineTokenizer(char delimiter, char quote, boolean backslashEscapes) {
+        if (delimiter == quote)
+            throw new IllegalArgumentException("Quote can not be used as delimiter");
+        if (backslashEscapes && (delimiter == '\\' || quote == '\\'))
+            throw new IllegalArgumentException("Backslash can not be used as delimiter or quote");
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.backslashEscapes = backslashEscapes;
+    }
+
+    /**
+     * Construct a tokenizer from a delimiter in the regex form used by {@link Main#supportedDelimeters}
+     * @param delimeter - Single character, optionally escaped with a backslash
+     * @return - Tokenizer for the delimiter
+     */
+    public static LineTokenizer forDelimeter(String delimeter) {
+        if (delimeter.length() == 1)
+            return new LineTokenizer(delimeter.charAt(0));
+        if (delimeter.length() == 2 && delimeter.charAt(0) == '\\')
+            return new LineTokenizer(delimeter.charAt(1));
+        throw new IllegalArgumentException("Delimiter not supported: " + delimeter);
+    }
+
+    public char getDelimiter() {
+        return delimiter;
+    }
+
+    public char getQuote() {
+        return quote;
+    }
+
+    /**
+     * Tokenize a whole line
+     * @param line - Line to tokenize
+     * @param offsets - Receives the field boundaries
+     * @return - Number of fields
+     */
+    public int tokenize(CharSequence line, FieldOffsets offsets) {
+        return tokenize(line, 0, line.length(), offsets);
+    }
+
+    /**
+     * Tokenize a part of a character sequence
+     * @param text - Text containing the line
+     * @param start - Offset of the first character of the line
+     * @param end - Offset after the last character of the line
+     * @param offsets - Receives the field boundaries
+     * @return - Number of fields
+     */
+    public int tokenize(CharSequence text, int start, int end, FieldOffsets offsets) {
+        offsets.reset(start, end);
+        boolean oddQuotes = false;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && backslashEscapes) {
+                i++;
+            } else if (c == quote) {
+                oddQuotes = !oddQuotes;
+            } else if (c == delimiter) {
+                if (oddQuotes)
+                    offsets.addOdd(i);
+                else
+                    offsets.addEven(i);
+            }
+        }
+        offsets.finish(oddQuotes, true);
+        return offsets.count();
+    }
+
+    /**
+     * Tokenize a part of a byte buffer holding UTF-8 text. Bytes of multi byte characters are never
+     * ASCII, so the delimiters and quotes found are the same as in the decoded text
+     * @param bytes - Buffer containing the line
+     * @param start - Offset of the first byte of the line
+     * @param end - Offset after the last byte of the line
+     * @param offsets - Receives the field boundaries as byte offsets, and whether the line is ASCII
+     * @return - Number of fields
+     */
+    public int tokenize(ByteBuffer bytes, int start, int end, FieldOffsets offsets) {
+        if (delimiter >= 0x80 || quote >= 0x80)
+            throw new UnsupportedOperationException("Byte input needs an ASCII delimiter and quote");
+        offsets.reset(start, end);
+        byte delimiterByte = (byte) delimiter;
+        byte quoteByte = (byte) quote;
+        boolean oddQuotes = false;
+        int seen = 0;
+        int i = start;
+        if (!backslashEscapes) {
+            long delimiters = Swar.broadcast(delimiterByte);
+            long quotes = Swar.broadcast(quoteByte);
+            boolean bigEndian = Swar.isBigEndian(bytes);
+            long nonAscii = 0;
+            for (; i <= end - Swar.wordSize; i += Swar.wordSize) {
+                long word = Swar.word(bytes, i, bigEndian);
+                nonAscii |= Swar.nonAscii(word);
+                long found = Swar.matches(word, delimiters);
+                long quoted = Swar.matches(word, quotes);
+                if (found != 0) {
+                    long odd = Swar.prefixXor(quoted) ^ Swar.parity(oddQuotes);
+                    addDelimiters(offsets, i, found & odd, true);
+                    addDelimiters(offsets, i, found & ~odd, false);
+                }
+                oddQuotes ^= Swar.isOdd(quoted);
+            }
+            seen = nonAscii == 0 ? 0 : -1;
+        }
+        for (; i < end; i++) {
+            byte b = bytes.get(i);
+            seen |= b;
+            if (b == '\\' && backslashEscapes) {
+                //The continuation bytes of an escaped multi byte character are still seen
+                i++;
+            } else if (b == quoteByte) {
+                oddQuotes = !oddQuotes;
+            } else if (b == delimiterByte) {
+                if (oddQuotes)
+                    offsets.addOdd(i);
+                else
+                    offsets.addEven(i);
+            }
+        }
+        offsets.finish(oddQuotes, seen >= 0);
+        return offsets.count();
+    }
+
+    /**
+     * Add the delimiters marked in the mask of a word, in order
+     */
+    private static void addDelimiters(FieldOffsets offsets, int wordStart, long mask, boolean odd) {
+        for (; mask != 0; mask &= mask - 1) {
+            if (odd)
+                offsets.addOdd(wordStart + Swar.firstIndex(mask));
+            else
+                offsets.addEven(wordStart + Swar.firstIndex(mask));
+        }
+    }
+}
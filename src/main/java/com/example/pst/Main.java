@@ -1,19 +1,30 @@
 package com.example.pst;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.JsonPrimitive;
-import com.google.gson.JsonSerializer;
 
-import java.io.BufferedWriter;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * Created by Setu on 2/28/22
@@ -24,18 +35,150 @@ public class Main {
     private static final int totalFields = 6;
     public static final String outputDatePattern = "yyyy-MM-dd";
     public static final String outputFilename = "output.jsonl";
+    private static final String lineSeparator = System.lineSeparator();
+    private static final byte[] lineSeparatorBytes = lineSeparator.getBytes(StandardCharsets.UTF_8);
+
+    private final ConverterFactory converters;
+
+    public Main() {
+        this(new ConverterFactory(ConverterFactory.defaultCapacity));
+    }
+
+    /**
+     * @param converters - Converters shared by the files this instance converts
+     */
+    public Main(ConverterFactory converters) {
+        this.converters = converters;
+    }
 
     public static void main(String[] args) throws IOException {
 
-        if (args.length != 1) {
-            System.out.println("Exactly 1 argument(input file) is required");
+        List<String> inputs = new ArrayList<>();
+        boolean batch = false;
+        ConversionOptions options = new ConversionOptions();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--workers":
+                        options.setWorkers(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--batch-size":
+                        options.setBatchSize(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--region-size":
+                        options.setRegionSize(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--sample-rows":
+                        options.setSchemaSampleSize(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--sniff-size":
+                        options.setSniffSize(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--max-record-size":
+                        options.setMaxRecordSize(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--no-mmap":
+                        options.setMemoryMapped(false);
+                        break;
+                    case "--flush-size":
+                        options.setFlushSize(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--fsync":
+                        options.setFsync(true);
+                        break;
+                    case "--output":
+                        options.setOutputFile(optionValue(args, ++i));
+                        break;
+                    case "--format":
+                        options.setOutputFormat(OutputFormat.valueOf(optionValue(args, ++i).toUpperCase(Locale.ROOT)));
+                        break;
+                    case "--resume":
+                        options.setResume(true);
+                        break;
+                    case "--tail":
+                        options.setTail(true);
+                        break;
+                    case "--checkpoint-interval":
+                        options.setCheckpointInterval(Long.parseLong(optionValue(args, ++i)));
+                        break;
+                    case "--output-dir":
+                        options.setOutputDirectory(optionValue(args, ++i));
+                        batch = true;
+                        break;
+                    case "--output-pattern":
+                        options.setOutputPattern(optionValue(args, ++i));
+                        batch = true;
+                        break;
+                    case "--parallel-files":
+                        options.setParallelFiles(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--metrics":
+                        options.setMetricsReport(true);
+                        break;
+                    case "--jmx":
+                        options.setJmx(true);
+                        break;
+                    case "--shard-by":
+                        options.setShardColumn(optionValue(args, ++i));
+                        break;
+                    case "--shards":
+                        options.setShards(Integer.parseInt(optionValue(args, ++i)));
+                        break;
+                    case "--shard-ordered":
+                        options.setShardOrdered(true);
+                        break;
+                    case "--columns":
+                        List<String> columns = new ArrayList<>();
+                        for (String column : optionValue(args, ++i).split(","))
+                            columns.add(column.trim());
+                        options.setColumns(columns);
+                        break;
+                    case "--where":
+                        List<RowFilter> filters = new ArrayList<>(options.getFilters());
+                        filters.add(RowFilter.parse(optionValue(args, ++i)));
+                        options.setFilters(filters);
+                        break;
+                    default:
+                        if (args[i].startsWith("--"))
+                            throw new IllegalArgumentException("Unknown argument " + args[i]);
+                        inputs.add(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
             System.exit(0);
         }
 
-        String inputFile = args[0];
+        if (inputs.isEmpty()) {
+            System.out.println("At least 1 input file is required");
+            System.exit(0);
+        }
 
         Main main = new Main();
-        main.convertFileWithIntelligence(inputFile);
+
+        //Several inputs, a directory, a glob or a list are converted as a batch, each to its own output
+        if (batch || inputs.size() > 1 || !Files.isRegularFile(Paths.get(inputs.get(0)))) {
+            List<ConversionReport> reports = new BatchConverter(main)
+                    .convert(BatchConverter.resolveInputs(inputs), options);
+            BatchConverter.printSummary(reports, System.out);
+            if (reports.stream().anyMatch(report -> !report.isSuccessful()))
+                System.exit(1);
+            return;
+        }
+
+        try {
+            main.convertFileWithIntelligence(inputs.get(0), options);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + ". Exiting");
+            System.exit(0);
+        }
+    }
+
+    private static String optionValue(String[] args, int index) {
+        if (index >= args.length)
+            throw new IllegalArgumentException("Missing value for " + args[index - 1]);
+        return args[index];
     }
 
     /**
@@ -44,105 +187,810 @@ public class Main {
      * @throws IOException - Throws exception in case file not found or cannot be read/write
      */
     public void convertFile(String inputFile) throws IOException {
-        //Construct gson object to be used to write to json
-        Gson gson = new GsonBuilder()
-                .registerTypeAdapter(LocalDate.class, getLocalDateSerializer())
-                .create();
+        convertFile(inputFile, new ConversionOptions());
+    }
 
+    /**
+     * Convert an input text file, plain or gzip compressed, into JSONL file
+     * @param inputFile - File name along with path to convert
+     * @param options - Output file and buffering options
+     * @throws IOException - Throws exception in case file not found or cannot be read/write
+     */
+    public void convertFile(String inputFile, ConversionOptions options) throws IOException {
         Path path = Paths.get(inputFile);
 
-        //Get the first line to be used to determine delemeter
-        String heading = Files.lines(path).findFirst().get();
-
-        //Get appropriate delimiter based on heading line
-        Optional<String> delimiter = getDelimeter(heading);
-        if (!delimiter.isPresent()) {
-            System.out.println("Delimiter not supported. Exiting");
-            System.exit(0);
-        }
-
-        //Construct converter to be used to convert
-        Converter converter = new JsonLineConverter(delimiter.get());
+        //The file is opened once, the dialect is sniffed from its first bytes before the lines are read
+        try (InputStream in = FileStreams.newInputStream(path)) {
+            Dialect dialect = sniff(in, options);
 
-        //Get writer to write json lines
-        BufferedWriter bw = Files.newBufferedWriter(Paths.get(outputFilename));
+            //Get converter to be used to convert, shared with earlier files of the same dialect
+            Converter converter = converters.converter(dialect);
+            Gson gson = converters.getGson();
+            JsonRowEncoder encoder = new JsonRowEncoder(JsonLineConverter.personFields, gson.htmlSafe(),
+                    gson.serializeNulls());
 
-        Files.lines(path)   //Stream of lines
-                .skip(1)    //Skip the first one as its header text
-                .map(converter::convert)    //Convert to Person object
-                .forEach(person -> {        //For each person write it to file
-                    try {
-                        bw.write(gson.toJson(person));
-                        bw.newLine();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
-                });
+            //The output is truncated, a checkpoint of an earlier run no longer matches it
+            Files.deleteIfExists(Checkpoint.pathFor(Paths.get(options.getOutputFile())));
 
-        bw.close(); //Close the output buffer
+            //Get writer to write json lines, write errors are thrown instead of skipping the line
+            try (Stream<String> lines = FileStreams.records(in, dialect, options.getMaxRecordSize());
+                 OutputStream output = FileStreams.newOutputStream(Paths.get(options.getOutputFile()), options);
+                 Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+                //Skip the first one if it is header text
+                Iterator<String> iterator = lines.skip(dialect.hasHeader() ? 1 : 0).iterator();
+                RowBuffer row = new RowBuffer(JsonLineConverter.personFields.size());
+                StringBuilder json = new StringBuilder();
+                while (iterator.hasNext()) {
+                    converter.convert(iterator.next(), row);   //Convert to the Person fields
+                    json.setLength(0);
+                    encoder.appendRow(row, json);
+                    writer.append(json).write(lineSeparator);
+                }
+            }
+        }
     }
 
     /**
      * Convert an input text file into JSONL file. Date types would be formatted as much as possible
      * @param inputFile - File name along with path to convert
+     * @return - Rows, bytes and time of the conversion
      * @throws IOException - Throws exception in case file not found or cannot be read/write
      */
-    public void convertFileWithIntelligence(String inputFile) throws IOException {
-        //Construct gson object to be used to write to json
-        Gson gson = new GsonBuilder()
-                .registerTypeAdapter(LocalDate.class, getLocalDateSerializer())
-                .create();
+    public ConversionReport convertFileWithIntelligence(String inputFile) throws IOException {
+        return convertFileWithIntelligence(inputFile, new ConversionOptions());
+    }
 
+    /**
+     * Convert an input text file into JSONL file. Date types would be formatted as much as possible.
+     * With more than one worker the input is converted in batches on a thread pool, the output keeps the input order.
+     * Gzip compressed input is decompressed while reading, output files named *.gz are written compressed
+     * @param inputFile - File name along with path to convert
+     * @param options - Input reading, output and parallelism options
+     * @return - Rows, bytes and time of the conversion
+     * @throws IOException - Throws exception in case file not found or cannot be read/write
+     * @throws IllegalArgumentException - Thrown if the delimiter is not supported or the input cannot be resumed
+     */
+    public ConversionReport convertFileWithIntelligence(String inputFile, ConversionOptions options)
+            throws IOException {
+        long started = System.nanoTime();
         Path path = Paths.get(inputFile);
+        Path output = Paths.get(options.getOutputFile());
+        boolean resumable = options.isResume() || options.isTail();
+        if (!resumable) {
+            Files.deleteIfExists(Checkpoint.pathFor(output));
+            Files.deleteIfExists(RejectsFile.pathFor(output));
+        }
+        if (resumable && options.getOutputFormat() == OutputFormat.COLUMNAR)
+            throw new IllegalArgumentException("Resuming is only supported for json lines output");
+        if (options.getShardColumn() != null && (resumable || options.getOutputFormat() == OutputFormat.COLUMNAR))
+            throw new IllegalArgumentException("Sharding is only supported for json lines output without resuming");
 
-        //Get the first line to be used to determine delemeter
-        String heading = Files.lines(path).findFirst().get();
+        //Lines which cannot be converted go to a file next to the output instead of the console
+        ConversionMetrics metrics = new ConversionMetrics(options.isMetricsReport() || options.isJmx());
+        ObjectName bean = options.isJmx() ? metrics.register(output) : null;
+        Progress progress;
+        try (RejectsFile rejects = new RejectsFile(RejectsFile.pathFor(output))) {
+            progress = new Progress(metrics, rejects, options.getMaxRecordSize(), resumable);
+            convert(path, options, progress);
+        } finally {
+            if (bean != null)
+                ConversionMetrics.unregister(bean);
+        }
 
-        //Get appropriate delimiter based on heading line
-        Optional<String> delimiter = getDelimeter(heading);
-        if (!delimiter.isPresent()) {
-            System.out.println("Delimiter not supported. Exiting");
-            System.exit(0);
+        ConversionReport report = progress.toReport(path, output, started);
+        if (options.isMetricsReport())
+            metrics.writeReport(report, ConversionMetrics.reportPathFor(output));
+        return report;
+    }
+
+    /**
+     * Convert a file as described by {@link #convertFileWithIntelligence(String, ConversionOptions)}
+     * @param path - File to convert
+     * @param options - Input reading, output and parallelism options
+     * @param progress - Receives the counts of the conversion
+     * @throws IOException - Throws exception in case file not found or cannot be read/write
+     */
+    private void convert(Path path, ConversionOptions options, Progress progress) throws IOException {
+        Path output = Paths.get(options.getOutputFile());
+        boolean resumable = options.isResume() || options.isTail();
+        boolean columnar = options.getOutputFormat() == OutputFormat.COLUMNAR;
+
+        //Compressed input can only be read as a stream
+        if (options.isMemoryMapped() && !FileStreams.isGzip(path)) {
+            //The header is read once when opening, the rest is handed out as newline aligned regions
+            try (MappedFileReader reader = new MappedFileReader(path, options.getRegionSize())) {
+                ByteBuffer head = reader.head(options.getSniffSize());
+                Dialect dialect = DialectSniffer.sniff(head, head.remaining() == reader.size());
+                if (resumable) {
+                    convertResumable(reader, dialect, options, progress);
+                    return;
+                }
+
+                //Without a header the first line is converted too
+                Iterator<ByteBuffer> regions = reader.regions(dialect.hasHeader() ? reader.getBodyStart() : 0,
+                        reader.size(), dialect, options.getMaxRecordSize());
+                List<ByteBuffer> firstRegion = new ArrayList<>();
+                if (regions.hasNext())
+                    firstRegion.add(regions.next());
+
+                //Column types are sampled from the first region
+                IntelligentJsonLineConverter converter = createIntelligentConverter(dialect,
+                        dialect.headingOf(reader.getHeader()), sample(firstRegion, dialect, options), options);
+                progress.metrics.setColumns(converter.getFields());
+                progress.inputBytes = reader.size();
+                if (options.getShardColumn() != null) {
+                    convertSharded(concat(firstRegion, regions),
+                            (region, writer) -> forEachLine(region, converter, writer, progress),
+                            converter, options, progress);
+                    return;
+                }
+                ThreadLocal<ColumnBatch> columns = ThreadLocal.withInitial(
+                        () -> new ColumnBatch(converter.getColumnNames()));
+                convertInOrder(concat(firstRegion, regions),
+                        columnar ? region -> convertRegion(converter, region, columns.get(), progress)
+                                : region -> convertRegion(converter, region, progress),
+                        converter, options, progress);
+            }
+        } else {
+            //Lines of a stream have no byte offsets to seek to
+            if (resumable)
+                throw new IllegalArgumentException("Resuming needs a plain input file read through memory mapping");
+
+            //The file is opened once, the dialect is sniffed from its first bytes before the lines are read
+            try (InputStream in = FileStreams.newInputStream(path)) {
+                Dialect dialect = sniff(in, options);
+                Stream<String> lines = FileStreams.records(in, dialect, options.getMaxRecordSize(),
+                        progress::rejectOversized);
+                Iterator<String> iterator = lines.iterator();
+                String first = iterator.next();
+
+                //Column types are sampled from the first lines, without a header the first line is converted too
+                List<String> sample = new ArrayList<>();
+                if (!dialect.hasHeader())
+                    sample.add(first);
+                while (sample.size() < options.getSchemaSampleSize() && iterator.hasNext())
+                    sample.add(iterator.next());
+
+                IntelligentJsonLineConverter converter = createIntelligentConverter(dialect, dialect.headingOf(first),
+                        sample, options);
+                progress.metrics.setColumns(converter.getFields());
+                progress.inputBytes = Files.size(path);
+                Iterator<List<String>> batches = OrderedPipeline.batches(concat(sample, iterator),
+                        options.getBatchSize());
+                if (options.getShardColumn() != null) {
+                    convertSharded(batches, (batch, writer) -> forEachLine(batch, converter, writer, progress),
+                            converter, options, progress);
+                    return;
+                }
+                ThreadLocal<ColumnBatch> columns = ThreadLocal.withInitial(
+                        () -> new ColumnBatch(converter.getColumnNames()));
+                convertInOrder(batches,
+                        columnar ? batch -> convertBatch(converter, batch, columns.get(), progress)
+                                : batch -> convertBatch(converter, batch, progress),
+                        converter, options, progress);
+            }
+        }
+        progress.outputBytes = Files.size(output);
+    }
+
+    /**
+     * Convert the regions of a file which are not converted yet, saving a checkpoint every checkpoint interval.
+     * Without a checkpoint the output is truncated and the column types are sampled, with one the output is cut
+     * to the checkpointed length and conversion continues at the checkpointed input offset with the saved types
+     * @param reader - Input file
+     * @param options - Checkpoint interval, tail mode, output and parallelism options
+     * @param progress - Receives the counts of this run
+     * @throws IOException - Thrown if the input or checkpoint cannot be read, or if they do not belong together
+     */
+    private void convertResumable(MappedFileReader reader, Dialect sniffed, ConversionOptions options,
+                                  Progress progress) throws IOException {
+        Path output = Paths.get(options.getOutputFile());
+        Path checkpointPath = Checkpoint.pathFor(output);
+        Optional<Checkpoint> saved = Checkpoint.read(checkpointPath);
+
+        //A resumed conversion keeps the dialect it started with, older checkpoints did not record one
+        Dialect dialect = saved.map(Checkpoint::getDialect).orElse(sniffed);
+        String header = dialect.headingOf(reader.getHeader());
+
+        long from = dialect.hasHeader() ? reader.getBodyStart() : 0;
+        long outputOffset = 0;
+        long rejectsOffset = 0;
+        if (saved.isPresent()) {
+            Checkpoint checkpoint = saved.get();
+            if (!checkpoint.getHeader().equals(header))
+                throw new IOException("Input header does not match the checkpoint " + checkpointPath);
+            //Rows of another shape must not be appended to the output
+            if (!Objects.equals(checkpoint.getColumns(), options.getColumns())
+                    || !checkpoint.getFilters().equals(options.getFilters()))
+                throw new IOException("Selected columns and filters do not match the checkpoint " + checkpointPath);
+            if (checkpoint.getInputOffset() > reader.size())
+                throw new IOException("Input is shorter than the checkpoint " + checkpointPath
+                        + ", it was replaced or truncated");
+            from = checkpoint.getInputOffset();
+            outputOffset = checkpoint.getOutputOffset();
+            rejectsOffset = checkpoint.getRejectsOffset();
         }
+        //Lines rejected after the checkpoint are rejected again, older checkpoints did not record the length
+        if (rejectsOffset >= 0)
+            RejectsFile.truncate(progress.rejects.getPath(), rejectsOffset);
+
+        //In tail mode a last line without terminator may still be written to, it is left for the next run
+        long to = options.isTail() ? Math.max(from, reader.lastLineEnd()) : reader.size();
+        Iterator<ByteBuffer> regions = reader.regions(from, to, dialect, options.getMaxRecordSize());
+
+        //A resumed conversion keeps the column types it started with instead of sampling again
+        List<ByteBuffer> firstRegion = new ArrayList<>();
+        IntelligentJsonLineConverter converter;
+        if (saved.isPresent()) {
+            converter = createIntelligentConverter(dialect, header);
+            if (saved.get().getSchema() != null)
+                converter = converter.withSchema(saved.get().getSchema());
+            converter = select(converter, options);
+        } else {
+            if (regions.hasNext())
+                firstRegion.add(regions.next());
+            converter = createIntelligentConverter(dialect, header, sample(firstRegion, dialect, options), options);
+        }
+        ColumnSchema schema = converter.getSchema();
+        IntelligentJsonLineConverter regionConverter = converter;
+        progress.metrics.setColumns(converter.getFields());
+
+        //Regions are paired with the input offset they end at, so the sink knows how far the input is converted
+        Iterator<ByteBuffer> remaining = concat(firstRegion, regions);
+        long start = from;
+        Iterator<Chunk> chunks = new Iterator<Chunk>() {
+            private long position = start;
+
+            @Override
+            public boolean hasNext() {
+                return remaining.hasNext();
+            }
+
+            @Override
+            public Chunk next() {
+                ByteBuffer region = remaining.next();
+                position += region.remaining();
+                return new Chunk(region, position);
+            }
+        };
+
+        AsyncFileOutputStream file = new AsyncFileOutputStream(output, outputOffset,
+                options.getFlushSize(), options.isFsync());
+        //Rejected lines are written in input order by the sink, so their length at a checkpoint is known
+        long[] rejected = {Math.max(rejectsOffset, 0)};
+        try (OutputStream out = FileStreams.compressed(output, file)) {
+            long[] checkpointed = {from};
+            OrderedPipeline.Sink<Chunk> sink = jsonLines -> {
+                ByteBuffer bytes = jsonLines.bytes;
+                progress.metrics.addBytesOut(bytes.remaining());
+                out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+                for (ByteBuffer lines : jsonLines.rejected) {
+                    rejected[0] += lines.remaining();
+                    progress.rejects.write(lines);
+                }
+                if (jsonLines.inputEnd - checkpointed[0] >= options.getCheckpointInterval()) {
+                    //The output must hold everything the checkpoint claims before the checkpoint replaces the old one
+                    out.flush();
+                    if (options.isFsync())
+                        file.force();
+                    progress.rejects.flush(options.isFsync());
+                    new Checkpoint(header, dialect, schema, options.getColumns(), options.getFilters(),
+                            jsonLines.inputEnd, file.position(), rejected[0])
+                            .write(checkpointPath, options.isFsync());
+                    checkpointed[0] = jsonLines.inputEnd;
+                }
+            };
+            runInOrder(chunks,
+                    chunk -> new Chunk(convertRegion(regionConverter, chunk.bytes, progress), chunk.inputEnd,
+                            progress.takeRejected()),
+                    sink, options, progress);
+        }
+        progress.rejects.flush(options.isFsync());
+        new Checkpoint(header, dialect, schema, options.getColumns(), options.getFilters(), to, file.position(),
+                rejected[0]).write(checkpointPath, options.isFsync());
+        progress.inputBytes = to - from;
+        progress.outputBytes = file.position() - outputOffset;
+    }
+
+    /**
+     * Sniff the dialect of a file from the first bytes of its stream, which are read again with the lines
+     * @param in - Stream opened by {@link FileStreams#newInputStream(Path)}
+     * @param options - Number of bytes to sniff
+     * @return - Dialect of the file
+     * @throws IOException - Thrown if the file cannot be read
+     */
+    private static Dialect sniff(InputStream in, ConversionOptions options) throws IOException {
+        ByteBuffer head = FileStreams.peek(in, options.getSniffSize());
+        return DialectSniffer.sniff(head, head.remaining() < options.getSniffSize());
+    }
+
+    /**
+     * Construct the converter for a file
+     * @param dialect - Dialect of the input file
+     * @param heading - Line naming the fields
+     * @param sample - First lines after the header, used to infer the column types
+     * @param options - Number of lines to sample
+     * @return - Converter
+     */
+    private IntelligentJsonLineConverter createIntelligentConverter(Dialect dialect, String heading,
+                                                                    List<String> sample, ConversionOptions options) {
+        IntelligentJsonLineConverter converter = createIntelligentConverter(dialect, heading);
+        if (options.getSchemaSampleSize() != 0)
+            converter = converter.inferSchema(
+                    sample.subList(0, Math.min(sample.size(), options.getSchemaSampleSize())));
+        return select(converter, options);
+    }
+
+    /**
+     * Narrow a converter to the selected columns and filtered rows of the options, if any
+     * @param converter - Converter of every column and row
+     * @param options - Selected columns and filters
+     * @return - Converter
+     * @throws IllegalArgumentException - Thrown if a selected or filtered column is not in the header
+     */
+    private static IntelligentJsonLineConverter select(IntelligentJsonLineConverter converter,
+                                                       ConversionOptions options) {
+        if (options.getColumns() == null && options.getFilters().isEmpty())
+            return converter;
+        return converter.select(options.getColumns(), options.getFilters());
+    }
+
+    /**
+     * Get the converter for a file without column types, shared with earlier files of the same dialect and header
+     * @param dialect - Dialect of the input file
+     * @param heading - Line naming the fields
+     * @return - Converter
+     */
+    private IntelligentJsonLineConverter createIntelligentConverter(Dialect dialect, String heading) {
+        return converters.intelligentConverter(dialect, heading);
+    }
+
+    /**
+     * Decode the records sampled for the column types
+     * @param firstRegion - First region of the file, or nothing if the file has no lines after the header
+     * @param dialect - Quote and escapes of the file
+     * @param options - Number of records to sample
+     * @return - Sampled records
+     */
+    private static List<String> sample(List<ByteBuffer> firstRegion, Dialect dialect, ConversionOptions options) {
+        if (firstRegion.isEmpty())
+            return Collections.emptyList();
+        ByteBuffer records = firstRecords(firstRegion.get(0), options.getSchemaSampleSize(), dialect,
+                options.getMaxRecordSize());
+        return MappedFileReader.records(records, dialect, options.getMaxRecordSize());
+    }
+
+    /**
+     * Iterate over some elements followed by the rest of an iterator
+     * @param head - Elements to iterate first
+     * @param tail - Elements to iterate after the head
+     * @return - Iterator over both
+     */
+    private static <T> Iterator<T> concat(List<T> head, Iterator<T> tail) {
+        Iterator<T> first = head.iterator();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return first.hasNext() || tail.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return first.hasNext() ? first.next() : tail.next();
+            }
+        };
+    }
 
-        //Construct converter to be used to convert
-        Converter converter = new IntelligentJsonLineConverter(delimiter.get(), heading, gson);
+    /**
+     * Convert units of input and write the json lines or row groups in input order.
+     * With more than one worker a reader thread hands out the units, workers convert them and this thread writes them
+     * @param units - Units of input, batches of lines or regions of the file
+     * @param worker - Converts a unit to UTF-8 json lines, each followed by a line separator, or to a row group,
+     * in a heap buffer
+     * @param converter - Converter of the units, naming the columns of columnar output
+     * @param options - Number of workers, output file and format
+     * @param progress - Counts the bytes written
+     * @throws IOException - Throws exception in case the input cannot be read or the output cannot be written
+     */
+    private <T> void convertInOrder(Iterator<T> units, Function<T, ByteBuffer> worker,
+                                    IntelligentJsonLineConverter converter, ConversionOptions options,
+                                    Progress progress) throws IOException {
+        boolean columnar = options.getOutputFormat() == OutputFormat.COLUMNAR;
+
+        //Json lines are compressed and written on background threads while the next units are converted
+        try (OutputStream output = FileStreams.newOutputStream(Paths.get(options.getOutputFile()), options)) {
+            if (columnar)
+                output.write(ColumnarFormat.header(converter.getColumnNames()));
+            OrderedPipeline.Sink<ByteBuffer> sink = converted -> {
+                progress.metrics.addBytesOut(converted.remaining());
+                output.write(converted.array(), converted.arrayOffset() + converted.position(),
+                        converted.remaining());
+            };
+
+            runInOrder(units, worker, sink, options, progress);
+            if (columnar)
+                output.write(ColumnarFormat.trailer());
+        }
+    }
 
-        //Get writer to write json lines
-        BufferedWriter bw = Files.newBufferedWriter(Paths.get(outputFilename));
+    /**
+     * Convert units of input to json lines split over shard files by the hash of a column. Each unit is converted
+     * to json lines per shard. In ordered mode they are written in input order, otherwise the workers write them
+     * as soon as they are converted
+     * @param units - Units of input, batches of lines or regions of the file
+     * @param worker - Converts a unit, handing every converted row to a writer
+     * @param converter - Converter of the units, naming the columns
+     * @param options - Shard column, number of shards, ordering, number of workers and output file
+     * @param progress - Counts the bytes written
+     * @throws IOException - Throws exception in case the input cannot be read or the output cannot be written
+     * @throws IllegalArgumentException - Thrown if the shard column is not in the header
+     */
+    private <T> void convertSharded(Iterator<T> units, BiConsumer<T, RowWriter> worker,
+                                    IntelligentJsonLineConverter converter, ConversionOptions options,
+                                    Progress progress) throws IOException {
+        //Like in the json text, a repeated field name stands for its last column
+        int column = converter.getFields().lastIndexOf(options.getShardColumn());
+        if (column < 0)
+            throw new IllegalArgumentException("Shard column " + options.getShardColumn() + " is not in the header");
+        JsonRowEncoder encoder = converter.getEncoder();
+        if (encoder.isLeftOut(column))
+            throw new IllegalArgumentException("Shard column " + options.getShardColumn() + " is not selected");
+        int shards = options.getShards();
 
-        Files.lines(path)   //Stream of lines
-                .skip(1)    //Skip the first one as its header text
-                .map(converter::intelligentConvert)    //Convert to Person object
-                .forEach(jsonText -> {        //For each person write it to file
-                    try {
-                        bw.write(jsonText);
-                        bw.newLine();
-                    } catch (IOException e) {
-                        e.printStackTrace();
-                    }
+        Path outputPath = Paths.get(options.getOutputFile());
+        try (ShardedOutput output = new ShardedOutput(outputPath, shards, options)) {
+            OrderedPipeline.Sink<ByteBuffer[]> sink = jsonLines -> {
+                for (int shard = 0; shard < jsonLines.length; shard++) {
+                    progress.metrics.addBytesOut(jsonLines[shard].remaining());
+                    output.write(shard, jsonLines[shard]);
+                }
+            };
+            Function<T, ByteBuffer[]> shardedWorker = unit -> {
+                Utf8Builder[] builders = new Utf8Builder[shards];
+                for (int shard = 0; shard < shards; shard++)
+                    builders[shard] = new Utf8Builder();
+                worker.accept(unit, row -> {
+                    Utf8Builder jsonLines = builders[ShardedOutput.shardOf(row, column, shards)];
+                    encoder.appendRow(row, jsonLines);
+                    jsonLines.append(lineSeparatorBytes);
                 });
+                ByteBuffer[] converted = new ByteBuffer[shards];
+                for (int shard = 0; shard < shards; shard++)
+                    converted[shard] = builders[shard].toByteBuffer();
+                if (options.isShardOrdered())
+                    return converted;
+                try {
+                    sink.accept(converted);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return new ByteBuffer[0];
+            };
+            runInOrder(units, shardedWorker, sink, options, progress);
+        }
+        progress.outputBytes = ShardedOutput.totalSize(outputPath, shards);
+    }
+
+    /**
+     * Convert units of input and hand the results to a sink in input order, on a pipeline if there is more
+     * than one worker and on this thread otherwise
+     * @param units - Units of input
+     * @param worker - Converts a unit
+     * @param sink - Receives the converted units
+     * @param options - Number of workers
+     * @param progress - Times reading the units and handing them to the sink
+     * @throws IOException - Throws exception in case the input cannot be read or the output cannot be written
+     */
+    private static <T, R> void runInOrder(Iterator<T> units, Function<T, R> worker, OrderedPipeline.Sink<R> sink,
+                                          ConversionOptions options, Progress progress) throws IOException {
+        Iterator<T> timedUnits = progress.metrics.timed(ConversionMetrics.Stage.READ, units);
+        OrderedPipeline.Sink<R> timedSink = converted -> {
+            ConversionMetrics.Recorder recorder = progress.metrics.recorder();
+            long started = recorder.start();
+            sink.accept(converted);
+            recorder.lap(ConversionMetrics.Stage.WRITE, started);
+            recorder.flush();
+        };
+        if (options.getWorkers() > 1) {
+            new OrderedPipeline(options.getWorkers()).run(timedUnits, worker, timedSink);
+        } else {
+            while (timedUnits.hasNext())
+                timedSink.accept(worker.apply(timedUnits.next()));
+        }
+    }
+
+    /**
+     * Cut the first records off a region, so only they are decoded for sampling
+     * @param region - Records of the file
+     * @param count - Number of records
+     * @param dialect - Quote and escapes of the file
+     * @param maxRecordSize - Number of bytes after which an open quote is taken as a stray one
+     * @return - Slice of the region ending after the line terminator of the last record
+     */
+    private static ByteBuffer firstRecords(ByteBuffer region, int count, Dialect dialect, int maxRecordSize) {
+        ByteBuffer records = region.duplicate();
+        int end = records.position();
+        for (int found = 0; found < count && end < records.limit(); found++) {
+            int recordEnd = RecordReader.recordEnd(records, end, records.limit(), dialect, maxRecordSize);
+            end = RecordReader.nextRecord(records, recordEnd, records.limit());
+        }
+        ((Buffer) records).limit(end);
+        return records;
+    }
+
+    /**
+     * Convert a region of UTF-8 lines without decoding it, called concurrently by the pipeline workers
+     * @param converter - Thread safe converter
+     * @param region - Lines to convert
+     * @param progress - Counts the converted and rejected lines
+     * @return - UTF-8 json lines, each followed by a line separator. Lines which could not be parsed are rejected
+     */
+    private ByteBuffer convertRegion(IntelligentJsonLineConverter converter, ByteBuffer region, Progress progress) {
+        Utf8Builder jsonLines = new Utf8Builder(region.remaining() + (region.remaining() >> 1));
+        JsonRowEncoder encoder = converter.getEncoder();
+        forEachLine(region, converter, row -> {
+            encoder.appendRow(row, jsonLines);
+            jsonLines.append(lineSeparatorBytes);
+        }, progress);
+        return jsonLines.toByteBuffer();
+    }
+
+    /**
+     * Convert a region of UTF-8 lines to a row group, called concurrently by the pipeline workers
+     * @param converter - Thread safe converter
+     * @param region - Lines to convert
+     * @param columns - Batch of the calling thread, cleared before use
+     * @param progress - Counts the converted and rejected lines
+     * @return - Row group of the lines. Lines which could not be parsed are rejected
+     */
+    private ByteBuffer convertRegion(IntelligentJsonLineConverter converter, ByteBuffer region, ColumnBatch columns,
+                                     Progress progress) {
+        columns.clear();
+        forEachLine(region, converter, row -> converter.addRow(row, columns), progress);
+        return encode(columns, progress);
+    }
+
+    /**
+     * Convert each record of a region. Records end at \n, \r or \r\n outside of quotes, like the records read
+     * as text
+     * @param region - Records to convert
+     * @param converter - Converts one line to a row
+     * @param writer - Writes a converted row
+     * @param progress - Counts the converted, rejected and filtered lines, receives the rejected lines
+     */
+    private static void forEachLine(ByteBuffer region, IntelligentJsonLineConverter converter, RowWriter writer,
+                                    Progress progress) {
+        ConversionMetrics.Recorder recorder = progress.metrics.recorder();
+        boolean countTypes = progress.metrics.isTimed();
+        RowBuffer row = converter.newRow();
+        Utf8Builder rejected = new Utf8Builder(0);
+        Dialect dialect = converter.getDialect();
+        int limit = region.limit();
+        for (int start = region.position(); start < limit; ) {
+            int end = RecordReader.recordEnd(region, start, limit, dialect, progress.maxRecordSize);
+            if (end - start > progress.maxRecordSize) {
+                //Neither parsed nor copied with the rejected lines of the region
+                recorder.rejected();
+                progress.rejectOversized(region, start, end);
+            } else if (!converter.intelligentConvert(region, start, end, row, recorder)) {
+                recorder.rejected();
+                rejected.append(region, start, end).append(lineSeparatorBytes);
+            } else if (row.isFilteredOut()) {
+                recorder.filtered();
+            } else {
+                if (countTypes)
+                    recorder.converted(row);
+                else
+                    recorder.converted();
+                long started = recorder.start();
+                writer.write(row);
+                recorder.lap(ConversionMetrics.Stage.SERIALIZE, started);
+            }
+            start = RecordReader.nextRecord(region, end, limit);
+        }
+        progress.metrics.addBytesIn(region.remaining());
+        progress.endUnit(rejected);
+    }
+
+    /**
+     * Convert a batch of lines, called concurrently by the pipeline workers
+     * @param converter - Thread safe converter
+     * @param batch - Lines to convert
+     * @param progress - Counts the converted and rejected lines
+     * @return - UTF-8 json lines, each followed by a line separator. Lines which could not be parsed are rejected
+     */
+    private ByteBuffer convertBatch(IntelligentJsonLineConverter converter, List<String> batch, Progress progress) {
+        StringBuilder jsonLines = new StringBuilder();
+        JsonRowEncoder encoder = converter.getEncoder();
+        forEachLine(batch, converter, row -> {
+            encoder.appendRow(row, jsonLines);
+            jsonLines.append(lineSeparator);
+        }, progress);
+        return ByteBuffer.wrap(jsonLines.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Convert a batch of lines to a row group, called concurrently by the pipeline workers
+     * @param converter - Thread safe converter
+     * @param batch - Lines to convert
+     * @param columns - Batch of the calling thread, cleared before use
+     * @param progress - Counts the converted and rejected lines
+     * @return - Row group of the lines. Lines which could not be parsed are rejected
+     */
+    private ByteBuffer convertBatch(IntelligentJsonLineConverter converter, List<String> batch, ColumnBatch columns,
+                                    Progress progress) {
+        columns.clear();
+        forEachLine(batch, converter, row -> converter.addRow(row, columns), progress);
+        return encode(columns, progress);
+    }
+
+    /**
+     * Convert each line of a batch
+     * @param batch - Lines to convert
+     * @param converter - Converts one line to a row
+     * @param writer - Writes a converted row
+     * @param progress - Counts the converted, rejected and filtered lines, receives the rejected lines
+     */
+    private static void forEachLine(List<String> batch, IntelligentJsonLineConverter converter, RowWriter writer,
+                                    Progress progress) {
+        ConversionMetrics.Recorder recorder = progress.metrics.recorder();
+        boolean countTypes = progress.metrics.isTimed();
+        RowBuffer row = converter.newRow();
+        Utf8Builder rejected = new Utf8Builder(0);
+        long characters = 0;
+        for (String line : batch) {
+            characters += line.length() + lineSeparator.length();
+            if (!converter.intelligentConvert(line, row, recorder)) {
+                recorder.rejected();
+                rejected.appendUtf8(line).append(lineSeparatorBytes);
+            } else if (row.isFilteredOut()) {
+                recorder.filtered();
+            } else {
+                if (countTypes)
+                    recorder.converted(row);
+                else
+                    recorder.converted();
+                long started = recorder.start();
+                writer.write(row);
+                recorder.lap(ConversionMetrics.Stage.SERIALIZE, started);
+            }
+        }
+        progress.metrics.addBytesIn(characters);
+        progress.endUnit(rejected);
+    }
 
-        bw.close(); //Close the output buffer
+    /**
+     * Encode a row group, timed as serializing
+     */
+    private static ByteBuffer encode(ColumnBatch columns, Progress progress) {
+        ConversionMetrics.Recorder recorder = progress.metrics.recorder();
+        long started = recorder.start();
+        ByteBuffer rowGroup = columns.encode();
+        recorder.lap(ConversionMetrics.Stage.SERIALIZE, started);
+        return rowGroup;
     }
 
     /**
-     * Construct serializer to be used to write to json
-     * @return Serializer for LocalDate
+     * Bytes of a region of the input, or the json lines converted from it, with the input offset the region ends at
      */
-    private JsonSerializer<LocalDate> getLocalDateSerializer() {
-        return (date, type, context) ->
-                new JsonPrimitive(date.format(DateTimeFormatter.ofPattern(outputDatePattern)));
+    private static final class Chunk {
+        private final ByteBuffer bytes;
+        private final long inputEnd;
+        private final List<ByteBuffer> rejected;
+
+        private Chunk(ByteBuffer bytes, long inputEnd) {
+            this(bytes, inputEnd, Collections.emptyList());
+        }
+
+        private Chunk(ByteBuffer bytes, long inputEnd, List<ByteBuffer> rejected) {
+            this.bytes = bytes;
+            this.inputEnd = inputEnd;
+            this.rejected = rejected;
+        }
+    }
+
+    /**
+     * Counters, rejected lines and record size limit of a conversion, shared by its threads
+     */
+    private static final class Progress {
+        private final ConversionMetrics metrics;
+        private final RejectsFile rejects;
+        private final int maxRecordSize;
+        //Rejected lines of the unit each thread converts, held for the sink of a resumable conversion, null otherwise
+        private final ThreadLocal<List<ByteBuffer>> heldRejects;
+        private long inputBytes;
+        private long outputBytes;
+
+        /**
+         * @param metrics - Counters of the conversion
+         * @param rejects - File receiving the rejected lines
+         * @param maxRecordSize - Number of bytes after which a record is oversized
+         * @param holdRejects - Whether rejected lines are held per unit, see {@link #takeRejected()}, instead of
+         * written as soon as a unit is converted
+         */
+        private Progress(ConversionMetrics metrics, RejectsFile rejects, int maxRecordSize, boolean holdRejects) {
+            this.metrics = metrics;
+            this.rejects = rejects;
+            this.maxRecordSize = maxRecordSize;
+            this.heldRejects = holdRejects ? ThreadLocal.withInitial(ArrayList::new) : null;
+        }
+
+        /**
+         * @return - Rejected lines held for the unit the calling thread converted last, each followed by a line
+         * separator
+         */
+        private List<ByteBuffer> takeRejected() {
+            List<ByteBuffer> held = heldRejects.get();
+            heldRejects.remove();
+            return held;
+        }
+
+        /**
+         * Hand the rejected lines of a unit to the rejects file and add the counts of the calling thread
+         * @param rejected - Rejected lines, each followed by a line separator
+         */
+        private void endUnit(Utf8Builder rejected) {
+            metrics.recorder().flush();
+            if (heldRejects != null) {
+                if (rejected.length() > 0)
+                    heldRejects.get().add(rejected.toByteBuffer());
+                return;
+            }
+            try {
+                rejects.write(rejected);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Write a record longer than the maximum record size of a region to the rejects file
+         * @param region - Records of the input
+         * @param from - Offset of the first byte of the record
+         * @param to - Offset after the last byte of the record
+         */
+        private void rejectOversized(ByteBuffer region, int from, int to) {
+            if (heldRejects != null) {
+                ByteBuffer record = region.duplicate();
+                ((Buffer) record).limit(to).position(from);
+                heldRejects.get().add(record.slice());
+                heldRejects.get().add(ByteBuffer.wrap(lineSeparatorBytes));
+                return;
+            }
+            try {
+                rejects.writeLine(region, from, to);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Write the next piece of a record longer than the maximum record size read as text to the rejects file,
+         * counting it as rejected with its last piece
+         * @param part - Next piece of the record
+         * @param last - Whether the piece ends the record
+         * @throws IOException - Thrown if the rejects file cannot be written
+         */
+        private void rejectOversized(CharSequence part, boolean last) throws IOException {
+            metrics.addBytesIn(part.length() + (last ? lineSeparator.length() : 0));
+            rejects.writePart(part, last);
+            if (last) {
+                ConversionMetrics.Recorder recorder = metrics.recorder();
+                recorder.rejected();
+                recorder.flush();
+            }
+        }
+
+        private ConversionReport toReport(Path input, Path output, long started) {
+            return new ConversionReport(input, output, metrics.getRowsConverted(), metrics.getRowsRejected(),
+                    inputBytes, outputBytes, System.nanoTime() - started);
+        }
     }
 
     /**
-     * Determine delemeter to be used based on heading of the input file
-     * @param heading - First line of the input file
-     * @return - Delemeter
+     * Writes a converted row
      */
-    private Optional<String> getDelimeter(String heading) {
-        return Arrays.stream(supportedDelimeters)
-                .filter(delimeter -> heading.split(delimeter).length > 1)
-                .findAny();
+    private interface RowWriter {
+        void write(RowBuffer row);
     }
 }
@@ -0,0 +1,235 @@
+package com.example.pst;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a delimiter separated file through memory mapped regions.
+ * The header line is read once when the reader is opened, the rest of the file is handed out as
+ * byte slices which end at the end of a record, so regions can be converted independently.
+ */
+public class MappedFileReader implements Closeable {
+
+    public static final int defaultRegionSize = 4 << 20;
+
+    private static final int headerWindow = 64 << 10;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int regionSize;
+    private final String header;
+    private final long bodyStart;
+
+    /**
+     * Open a file and read its header line
+     * @param path - File to read
+     * @param regionSize - Preferred size of a region in bytes
+     * @throws IOException - Thrown if the file cannot be read or is empty
+     */
+    public MappedFileReader(Path path, int regionSize) throws IOException {
+        if (regionSize < 1)
+            throw new IllegalArgumentException("Region size must be at least 1");
+        this.regionSize = regionSize;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            if (size == 0)
+                throw new IOException("Input file is empty: " + path);
+
+            long headerEnd = findLineEnd(0);
+            this.header = decode(map(0, headerEnd)).toString();
+            this.bodyStart = skipLineTerminator(headerEnd);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return - First line of the file, without line terminator
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * @return - Byte offset of the first line after the header
+     */
+    public long getBodyStart() {
+        return bodyStart;
+    }
+
+    /**
+     * @return - Size of the file in bytes
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Map the start of the file, for sniffing its dialect
+     * @param bytes - Number of bytes wanted
+     * @return - First bytes of the file, all of them if the file is shorter
+     * @throws IOException - Thrown if the file cannot be mapped
+     */
+    public ByteBuffer head(int bytes) throws IOException {
+        return map(0, Math.min(size, bytes));
+    }
+
+    /**
+     * Hand out part of a file of a known dialect as regions
+     * @param from - Byte offset of the first region, must be the start of a record
+     * @param to - Byte offset after the last region, the end of a record or of the file
+     * @param dialect - Quote and escapes of the file, which line terminators inside quotes do not cut
+     * @param maxRecordSize - Number of bytes after which an open quote is taken as a stray one, like
+     * {@link RecordReader#recordEnd}, so regions end at the same records whatever their size
+     * @return - Regions in file order, each ending after a record or at the given end
+     */
+    public Iterator<ByteBuffer> regions(long from, long to, Dialect dialect, int maxRecordSize) {
+        if (from < 0 || to > size || from > to)
+            throw new IllegalArgumentException("Invalid range " + from + " to " + to + " of " + size + " bytes");
+        return new Iterator<ByteBuffer>() {
+            private long position = from;
+
+            @Override
+            public boolean hasNext() {
+                return position < to;
+            }
+
+            @Override
+            public ByteBuffer next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    ByteBuffer region = nextRegion(position, to, dialect, maxRecordSize);
+                    position += region.remaining();
+                    return region;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Find the end of the last complete line, for reading a file which is still being appended to.
+     * A final \r is not taken as complete, as it may be the first half of a \r\n
+     * @return - Byte offset after the last line terminator, the start of the body if there is none
+     * @throws IOException - Thrown if the file cannot be read
+     */
+    public long lastLineEnd() throws IOException {
+        for (long windowEnd = size; windowEnd > bodyStart; windowEnd -= headerWindow) {
+            long windowStart = Math.max(bodyStart, windowEnd - headerWindow);
+            ByteBuffer window = map(windowStart, windowEnd);
+            for (int i = window.limit() - 1; i >= 0; i--) {
+                byte b = window.get(i);
+                if (b == '\n' || (b == '\r' && windowStart + i + 1 < size))
+                    return windowStart + i + 1;
+            }
+        }
+        return bodyStart;
+    }
+
+    /**
+     * Decode a region and split it into records, joining the lines of quoted fields which hold line breaks
+     * @param region - UTF-8 encoded records
+     * @param dialect - Quote and escapes of the records
+     * @param maxRecordSize - Number of characters after which an open quote is taken as a stray one
+     * @return - Records without their final line terminators
+     */
+    public static List<String> records(ByteBuffer region, Dialect dialect, int maxRecordSize) {
+        try (RecordReader reader = new RecordReader(new StringReader(decode(region.duplicate()).toString()),
+                dialect, maxRecordSize)) {
+            List<String> records = new ArrayList<>();
+            for (String record = reader.readRecord(); record != null; record = reader.readRecord())
+                records.add(record);
+            return records;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Map the next region. The records from its start are stepped through until one ends past the region size,
+     * the region is cut after it. The window looked at is one record of the maximum size past the region size,
+     * grown only for an oversized record, which the converter rejects like the stream path does
+     */
+    private ByteBuffer nextRegion(long start, long end, Dialect dialect, int maxRecordSize) throws IOException {
+        long remaining = end - start;
+        if (remaining <= regionSize)
+            return map(start, end);
+
+        //The record may end in a \r\n, and a \r at the end of the window may be the first half of one
+        int window = (int) Math.min(remaining, Math.min(Integer.MAX_VALUE, (long) regionSize + maxRecordSize + 2));
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, window);
+        int cut = 0;
+        while (cut < regionSize) {
+            boolean atEnd = window == remaining;
+            int recordEnd = RecordReader.recordEnd(mapped, cut, window, dialect, maxRecordSize, atEnd);
+            if (recordEnd < 0 || (!atEnd && recordEnd == window - 1 && mapped.get(recordEnd) == '\r')) {
+                if (window == Integer.MAX_VALUE)
+                    throw new IOException("No record end within " + window + " bytes from offset " + start);
+                window = (int) Math.min(remaining, Math.min(Integer.MAX_VALUE, (long) window << 1));
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, window);
+                continue;
+            }
+            cut = RecordReader.nextRecord(mapped, recordEnd, window);
+        }
+
+        ByteBuffer region = mapped.duplicate();
+        ((Buffer) region).limit(cut);
+        return region.slice();
+    }
+
+    /**
+     * Find the end of the line starting at an offset
+     * @return - Offset of the line terminator, or the file size if there is none
+     */
+    private long findLineEnd(long from) throws IOException {
+        for (long windowStart = from; windowStart < size; windowStart += headerWindow) {
+            ByteBuffer window = map(windowStart, Math.min(size, windowStart + headerWindow));
+            for (int i = 0; i < window.limit(); i++) {
+                byte b = window.get(i);
+                if (b == '\n' || b == '\r')
+                    return windowStart + i;
+            }
+        }
+        return size;
+    }
+
+    private long skipLineTerminator(long position) throws IOException {
+        if (position >= size)
+            return size;
+        ByteBuffer terminator = map(position, Math.min(size, position + 2));
+        boolean crlf = terminator.get(0) == '\r' && terminator.limit() > 1 && terminator.get(1) == '\n';
+        return position + (crlf ? 2 : 1);
+    }
+
+    private ByteBuffer map(long from, long to) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+    }
+
+    private static CharBuffer decode(ByteBuffer bytes) throws CharacterCodingException {
+        return StandardCharsets.UTF_8.newDecoder().decode(bytes);
+    }
+}
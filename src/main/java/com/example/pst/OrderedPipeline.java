@@ -0,0 +1,164 @@
+package com.example.pst;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Converts units of work on a pool of workers while keeping the results in input order.
+ * A reader thread pulls units from the source and submits them to the workers, the calling
+ * thread hands the results to the sink in the order the units were read.
+ * At most two units per worker are in flight, so a slow sink throttles the reader.
+ */
+public class OrderedPipeline {
+
+    /**
+     * Receives converted results, in input order, on the calling thread
+     */
+    public interface Sink<R> {
+        void accept(R result) throws IOException;
+    }
+
+    private static final AtomicInteger pipelineCount = new AtomicInteger();
+
+    private final int workers;
+
+    public OrderedPipeline(int workers) {
+        if (workers < 1)
+            throw new IllegalArgumentException("Workers must be at least 1");
+        this.workers = workers;
+    }
+
+    /**
+     * Convert every unit of the source and write the results in order
+     * @param source - Units to convert, iterated on the reader thread
+     * @param worker - Conversion of one unit, called concurrently from the worker threads
+     * @param sink - Receives the results in the order of the source
+     * @throws IOException - Thrown if reading, converting or writing fails
+     */
+    public <T, R> void run(Iterator<T> source, Function<T, R> worker, Sink<R> sink) throws IOException {
+        int id = pipelineCount.incrementAndGet();
+        AtomicInteger workerCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "pst-" + id + "-worker-" + workerCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        BlockingQueue<Future<R>> pending = new ArrayBlockingQueue<>(workers * 2);
+        CompletableFuture<R> end = new CompletableFuture<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+
+        Thread reader = new Thread(() -> {
+            try {
+                while (!cancelled.get() && source.hasNext()) {
+                    T unit = source.next();
+                    enqueue(pending, executor.submit(() -> worker.apply(unit)), cancelled);
+                }
+            } catch (RuntimeException | Error e) {
+                CompletableFuture<R> failure = new CompletableFuture<>();
+                failure.completeExceptionally(e);
+                enqueue(pending, failure, cancelled);
+            } finally {
+                enqueue(pending, end, cancelled);
+            }
+        }, "pst-" + id + "-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            for (Future<R> result = take(pending); result != end; result = take(pending))
+                sink.accept(await(result));
+        } finally {
+            cancelled.set(true);
+            executor.shutdownNow();
+            join(reader);
+        }
+    }
+
+    /**
+     * Group the elements of an iterator into lists
+     * @param source - Elements to group
+     * @param size - Maximum number of elements per list
+     * @return - Iterator over the groups
+     */
+    public static <T> Iterator<List<T>> batches(Iterator<T> source, int size) {
+        return new Iterator<List<T>>() {
+            @Override
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            @Override
+            public List<T> next() {
+                if (!source.hasNext())
+                    throw new NoSuchElementException();
+                List<T> batch = new ArrayList<>(size);
+                while (batch.size() < size && source.hasNext())
+                    batch.add(source.next());
+                return batch;
+            }
+        };
+    }
+
+    private static <R> void enqueue(BlockingQueue<Future<R>> pending, Future<R> result, AtomicBoolean cancelled) {
+        try {
+            while (!cancelled.get()) {
+                if (pending.offer(result, 100, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        result.cancel(true);
+    }
+
+    private static <R> Future<R> take(BlockingQueue<Future<R>> pending) throws IOException {
+        try {
+            return pending.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for converted data");
+        }
+    }
+
+    private static <R> R await(Future<R> result) throws IOException {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for converted data");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException)
+                throw ((UncheckedIOException) cause).getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
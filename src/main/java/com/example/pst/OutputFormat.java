@@ -0,0 +1,15 @@
+package com.example.pst;
+
+/**
+ * Layout of the output file
+ */
+public enum OutputFormat {
+    /**
+     * One json object per line
+     */
+    JSONL,
+    /**
+     * Typed row groups in the {@link ColumnarFormat} layout
+     */
+    COLUMNAR
+}
@@ -0,0 +1,198 @@
+package com.example.pst;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a stream as a series of independent gzip members, like pigz. Blocks of the stream are compressed
+ * on a thread pool and written in order, so compression is not bound to the writing thread.
+ * Gzip readers, including GZIPInputStream, read the concatenated members as one stream.
+ * An instance must be used by one thread at a time.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    public static final int defaultBlockSize = 1 << 20;
+
+    private static final AtomicInteger streamCount = new AtomicInteger();
+
+    //Magic, deflate, no flags, no modification time, no extra flags, OS as written by GZIPOutputStream
+    private static final byte[] header = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final OutputStream out;
+    private final int blockSize;
+    private final int level;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block;
+    private int length;
+    private boolean written;
+    private boolean closed;
+
+    /**
+     * @param out - Stream receiving the compressed members
+     * @param blockSize - Number of uncompressed bytes per member
+     * @param threads - Number of compressing threads
+     * @param level - Deflate level, 0 to 9 or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    public ParallelGzipOutputStream(OutputStream out, int blockSize, int threads, int level) {
+        if (blockSize < 1)
+            throw new IllegalArgumentException("Block size must be at least 1");
+        if (threads < 1)
+            throw new IllegalArgumentException("Threads must be at least 1");
+        if ((level < 0 || level > 9) && level != Deflater.DEFAULT_COMPRESSION)
+            throw new IllegalArgumentException("Compression level must be between 0 and 9");
+        this.out = out;
+        this.blockSize = blockSize;
+        this.level = level;
+        this.threads = threads;
+        this.block = new byte[blockSize];
+
+        int id = streamCount.incrementAndGet();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "pst-gzip-" + id + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (length == blockSize)
+            submitBlock();
+        block[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int count) throws IOException {
+        ensureOpen();
+        if (offset < 0 || count < 0 || offset + count > bytes.length)
+            throw new IndexOutOfBoundsException();
+        while (count > 0) {
+            if (length == blockSize)
+                submitBlock();
+            int part = Math.min(count, blockSize - length);
+            System.arraycopy(bytes, offset, block, length, part);
+            length += part;
+            offset += part;
+            count -= part;
+        }
+    }
+
+    /**
+     * Compress the buffered bytes as a member and write every pending member
+     * @throws IOException - Thrown if compressing or writing fails
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (length > 0)
+            submitBlock();
+        while (!pending.isEmpty())
+            writeOldest();
+        out.flush();
+    }
+
+    /**
+     * Write the remaining members and close the underlying stream. An empty stream is written as one empty member,
+     * so the output is a valid gzip file
+     * @throws IOException - Thrown if compressing or writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            if (length > 0 || !written)
+                submitBlock();
+            while (!pending.isEmpty())
+                writeOldest();
+        } finally {
+            closed = true;
+            executor.shutdownNow();
+            out.close();
+        }
+    }
+
+    /**
+     * Hand the current block to the pool. At most two blocks per thread are in flight, the oldest is written
+     * when the limit is reached
+     */
+    private void submitBlock() throws IOException {
+        byte[] data = block;
+        int count = length;
+        pending.add(executor.submit(() -> compress(data, count, level)));
+        written = true;
+        block = new byte[blockSize];
+        length = 0;
+        if (pending.size() >= threads * 2)
+            writeOldest();
+    }
+
+    private void writeOldest() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing output");
+        } catch (ExecutionException e) {
+            throw new IOException("Compressing output failed", e.getCause());
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+
+    /**
+     * Compress bytes as one complete gzip member
+     * @param data - Bytes to compress
+     * @param count - Number of bytes to compress from the start of data
+     * @param level - Deflate level
+     * @return - Member with header, deflated data and trailer
+     */
+    static byte[] compress(byte[] data, int count, int level) {
+        ByteArrayOutputStream member = new ByteArrayOutputStream(count / 3 + 64);
+        member.write(header, 0, header.length);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data, 0, count);
+            deflater.finish();
+            byte[] buffer = new byte[64 << 10];
+            while (!deflater.finished()) {
+                int deflated = deflater.deflate(buffer);
+                member.write(buffer, 0, deflated);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, count);
+        writeIntLittleEndian(member, (int) crc.getValue());
+        writeIntLittleEndian(member, count);
+        return member.toByteArray();
+    }
+
+    private static void writeIntLittleEndian(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
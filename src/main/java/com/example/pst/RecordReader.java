@@ -0,0 +1,371 @@
+package com.example.pst;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads the records of delimiter separated text, joining physical lines while a quoted field is open, so a field
+ * holding a line break stays in its record. Lines end at \n, \r or \r\n like with
+ * {@link java.io.BufferedReader#readLine()}, line breaks inside quotes are kept in the record as they are.
+ * A backslash escaping the next character, in dialects which use it, never escapes a line break.
+ * The quote state is carried over buffer refills. A record whose quote is still open after the maximum record
+ * size is taken to have a stray quote: its first physical line is returned as a record of its own and reading
+ * continues with the next line, as if the quote was not there. So a runaway quote holds at most the maximum
+ * record size in memory.
+ * Any other record longer than the maximum record size, like a line too long to be a real row, is oversized: it
+ * is never held whole, but handed piece by piece to {@link OversizedRecords} up to the next line terminator and
+ * left out of the records read. The buffer grows to hold the longest record read and is reused for the next ones.
+ * Instances are not thread safe.
+ */
+public final class RecordReader implements Closeable {
+
+    public static final int defaultMaxRecordSize = 16 << 20;
+
+    /**
+     * Receives the text of oversized records
+     */
+    public interface OversizedRecords {
+        /**
+         * @param part - Next piece of the record, never ending inside a surrogate pair. Only valid during the call
+         * @param last - Whether the piece ends the record
+         * @throws IOException - Thrown if the piece cannot be written, reading fails with it
+         */
+        void write(CharSequence part, boolean last) throws IOException;
+    }
+
+    private static final int bufferSize = 8192;
+
+    private final Reader in;
+    private final char quote;
+    private final boolean backslashEscapes;
+    private final int maxRecordSize;
+    private final OversizedRecords oversized;
+    private char[] buffer = new char[bufferSize];
+    private int start;
+    private int end;
+    private boolean eof;
+    private boolean skipLineFeed;
+
+    /**
+     * Read the records of a text, leaving out oversized records
+     * @param in - Text to read, closed with this reader
+     * @param dialect - Quote and escapes of the text
+     * @param maxRecordSize - Number of characters after which an open quote is taken as a stray one
+     */
+    public RecordReader(Reader in, Dialect dialect, int maxRecordSize) {
+        this(in, dialect, maxRecordSize, (part, last) -> {
+        });
+    }
+
+    /**
+     * @param in - Text to read, closed with this reader
+     * @param dialect - Quote and escapes of the text
+     * @param maxRecordSize - Number of characters after which an open quote is taken as a stray one, and after
+     * which other records are oversized
+     * @param oversized - Receives the oversized records
+     */
+    public RecordReader(Reader in, Dialect dialect, int maxRecordSize, OversizedRecords oversized) {
+        if (maxRecordSize < 1)
+            throw new IllegalArgumentException("Maximum record size must be at least 1");
+        this.in = in;
+        this.quote = dialect.getQuote();
+        this.backslashEscapes = dialect.getEscape() == Dialect.Escape.BACKSLASH;
+        this.maxRecordSize = maxRecordSize;
+        this.oversized = oversized;
+    }
+
+    /**
+     * Read the next record
+     * @return - Record without its final line terminator, null at the end of the text
+     * @throws IOException - Thrown if the text cannot be read
+     */
+    public String readRecord() throws IOException {
+        while (true) {
+            String record = readUpToOversized();
+            if (record != null || start == end)
+                return record;
+            skipOversized();
+        }
+    }
+
+    /**
+     * Read the next record, stopping at the start of the record if it is oversized
+     * @return - Record without its final line terminator, null at the end of the text or of the record size
+     */
+    private String readUpToOversized() throws IOException {
+        if (skipLineFeed) {
+            if (start == end)
+                fill();
+            if (start < end && buffer[start] == '\n')
+                start++;
+            skipLineFeed = false;
+        }
+
+        boolean quoted = false;
+        boolean escaped = false;
+        int firstLineEnd = -1;
+        for (int i = start; ; i++) {
+            if (i == end) {
+                if (!eof) {
+                    int shift = start;
+                    fill();
+                    i -= shift;
+                    if (firstLineEnd >= 0)
+                        firstLineEnd -= shift;
+                }
+                if (i == end) {
+                    if (quoted && firstLineEnd >= 0)
+                        return firstLine(firstLineEnd);
+                    if (start == end)
+                        return null;
+                    return record(end, end);
+                }
+            }
+
+            char c = buffer[i];
+            boolean escapedChar = escaped;
+            escaped = false;
+            if (c == '\n' || c == '\r') {
+                if (!quoted)
+                    return record(i, i + 1);
+                if (firstLineEnd < 0)
+                    firstLineEnd = i;
+            } else if (!escapedChar) {
+                if (c == '\\' && backslashEscapes)
+                    escaped = true;
+                else if (c == quote)
+                    quoted = !quoted;
+            }
+            if (i - start >= maxRecordSize) {
+                if (quoted && firstLineEnd >= 0)
+                    return firstLine(firstLineEnd);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Hand the record at the start of the buffer to the receiver of oversized records up to the next line
+     * terminator, refilling the buffer instead of growing it
+     */
+    private void skipOversized() throws IOException {
+        boolean last = false;
+        try {
+            //Oversized records end at the first line terminator after the maximum record size, quoted or not
+            int i = start + maxRecordSize + 1;
+            while (!last) {
+                while (i < end && buffer[i] != '\n' && buffer[i] != '\r')
+                    i++;
+                last = i < end || eof;
+                int partEnd = i;
+                if (!last && partEnd > start && Character.isHighSurrogate(buffer[partEnd - 1]))
+                    partEnd--;
+                oversized.write(CharBuffer.wrap(buffer, start, partEnd - start), last);
+                if (last) {
+                    start = Math.min(i + 1, end);
+                    skipLineFeed = i < end && buffer[i] == '\r';
+                } else {
+                    start = partEnd;
+                    fill();
+                    i = start + (i - partEnd);
+                }
+            }
+        } finally {
+            if (!last)
+                oversized.write("", true);
+        }
+    }
+
+    /**
+     * @return - Records of the text, the stream closes this reader when closed
+     */
+    public Stream<String> records() {
+        Iterator<String> iterator = new Iterator<String>() {
+            private String next;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null) {
+                    try {
+                        next = readRecord();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                String record = next;
+                next = null;
+                return record;
+            }
+        };
+        Stream<String> records = StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false);
+        return records.onClose(() -> {
+            try {
+                close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Find the end of the record starting at an offset of UTF-8 input, the same way records are read from text.
+     * Bytes of multi byte characters are never ASCII, so the same quotes and line ends are found. A record is
+     * oversized if it is longer than the maximum record size. Unless backslashes escape, the bytes before the
+     * maximum record size are scanned 8 at a time with {@link Swar}
+     * @param input - Buffer holding the records
+     * @param start - Offset of the first byte of the record
+     * @param limit - Offset after the last byte of the input
+     * @param dialect - Quote and escapes of the input
+     * @param maxRecordSize - Number of bytes after which an open quote is taken as a stray one
+     * @return - Offset of the line terminator ending the record, or the limit
+     */
+    public static int recordEnd(ByteBuffer input, int start, int limit, Dialect dialect, int maxRecordSize) {
+        return recordEnd(input, start, limit, dialect, maxRecordSize, true);
+    }
+
+    /**
+     * Find the end of the record starting at an offset of UTF-8 input which may go on after the limit
+     * @param input - Buffer holding the records
+     * @param start - Offset of the first byte of the record
+     * @param limit - Offset after the last byte read so far
+     * @param dialect - Quote and escapes of the input
+     * @param maxRecordSize - Number of bytes after which an open quote is taken as a stray one
+     * @param complete - Whether the input ends at the limit
+     * @return - Offset of the line terminator ending the record, or the limit. -1 if the input is not complete and
+     * the record reaches the limit, so the end is only known once more input is read
+     */
+    public static int recordEnd(ByteBuffer input, int start, int limit, Dialect dialect, int maxRecordSize,
+                                boolean complete) {
+        byte quoteByte = (byte) dialect.getQuote();
+        boolean backslashEscapes = dialect.getEscape() == Dialect.Escape.BACKSLASH;
+        boolean quoted = false;
+        int firstLineEnd = -1;
+        int i = start;
+        if (!backslashEscapes) {
+            //Whole words before the maximum record size, where the quote state is the prefix XOR of the quotes
+            long quotes = Swar.broadcast(quoteByte);
+            long lineFeeds = Swar.broadcast((byte) '\n');
+            long carriageReturns = Swar.broadcast((byte) '\r');
+            boolean bigEndian = Swar.isBigEndian(input);
+            int wordsEnd = limit - start > maxRecordSize ? start + maxRecordSize : limit;
+            for (; i <= wordsEnd - Swar.wordSize; i += Swar.wordSize) {
+                long word = Swar.word(input, i, bigEndian);
+                long quoteMask = Swar.matches(word, quotes);
+                long lineEnds = Swar.matches(word, lineFeeds) | Swar.matches(word, carriageReturns);
+                if (lineEnds != 0) {
+                    long unquoted = lineEnds & ~(Swar.prefixXor(quoteMask) ^ Swar.parity(quoted));
+                    if (unquoted != 0)
+                        return i + Swar.firstIndex(unquoted);
+                    if (firstLineEnd < 0)
+                        firstLineEnd = i + Swar.firstIndex(lineEnds);
+                }
+                quoted ^= Swar.isOdd(quoteMask);
+            }
+        }
+        for (; i < limit; i++) {
+            byte b = input.get(i);
+            if (b == '\\' && backslashEscapes) {
+                if (i + 1 < limit && input.get(i + 1) != '\n' && input.get(i + 1) != '\r')
+                    i++;
+            } else if (b == quoteByte) {
+                quoted = !quoted;
+            } else if (b == '\n' || b == '\r') {
+                if (!quoted)
+                    return i;
+                if (firstLineEnd < 0)
+                    firstLineEnd = i;
+            }
+            if (i - start >= maxRecordSize) {
+                if (quoted && firstLineEnd >= 0)
+                    return firstLineEnd;
+                //Oversized records end at the first line terminator after the maximum record size, quoted or not
+                for (i++; i < limit; i++) {
+                    byte terminator = input.get(i);
+                    if (terminator == '\n' || terminator == '\r')
+                        return i;
+                }
+                return complete ? limit : -1;
+            }
+        }
+        if (!complete)
+            return -1;
+        return quoted && firstLineEnd >= 0 ? firstLineEnd : limit;
+    }
+
+    /**
+     * @param input - Buffer holding the records
+     * @param recordEnd - Offset returned by {@link #recordEnd(ByteBuffer, int, int, Dialect, int)}
+     * @param limit - Offset after the last byte of the input
+     * @return - Offset of the next record, after the line terminator ending the record
+     */
+    public static int nextRecord(ByteBuffer input, int recordEnd, int limit) {
+        if (recordEnd >= limit)
+            return limit;
+        boolean crlf = input.get(recordEnd) == '\r' && recordEnd + 1 < limit && input.get(recordEnd + 1) == '\n';
+        return recordEnd + (crlf ? 2 : 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Take the text up to an offset as a record and continue after its line terminator
+     */
+    private String record(int recordEnd, int next) {
+        String record = new String(buffer, start, recordEnd - start);
+        start = next;
+        skipLineFeed = recordEnd < end && buffer[recordEnd] == '\r';
+        return record;
+    }
+
+    /**
+     * Take the first physical line of a record with a stray quote as a record of its own
+     */
+    private String firstLine(int lineEnd) {
+        String record = record(lineEnd, lineEnd + 1);
+        if (skipLineFeed && start < end && buffer[start] == '\n') {
+            start++;
+            skipLineFeed = false;
+        }
+        return record;
+    }
+
+    /**
+     * Move the unread text to the start of the buffer, growing it if the record fills it, and read more
+     */
+    private void fill() throws IOException {
+        int unread = end - start;
+        if (unread == buffer.length)
+            buffer = Arrays.copyOf(buffer, buffer.length << 1);
+        else
+            System.arraycopy(buffer, start, buffer, 0, unread);
+        start = 0;
+        end = unread;
+        int read = in.read(buffer, end, buffer.length - end);
+        if (read < 0)
+            eof = true;
+        else
+            end += read;
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.pst;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects the lines which could not be converted in a file next to the output, written by a background thread
+ * so a worker never waits for the disk. Workers hand over the rejected lines of a whole region or batch at once,
+ * in the order they finish, so with several workers the lines of different regions may be interleaved
+ * differently than in the input, unless a single thread writes them in order. The file is only created for the first
+ * rejected line, and appended to. A resumed conversion cuts it back to the length of its checkpoint first.
+ * Lines too long to be held whole are queued in parts, the rejected lines of other threads wait until the last part.
+ * Instances are thread safe.
+ */
+public final class RejectsFile implements AutoCloseable {
+
+    //Number of rejected units waiting for the writer before workers wait
+    private static final int queueSize = 64;
+    private static final AtomicInteger writerCount = new AtomicInteger();
+
+    //Marks the end of the rejected lines for the writer thread
+    private static final byte[] end = new byte[0];
+    //Mark where the writer thread reports that the lines before are written, and forced to the device
+    private static final byte[] written = new byte[0];
+    private static final byte[] forced = new byte[0];
+    private static final byte[] lineSeparatorBytes = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    //Number of bytes of a long line queued at once
+    private static final int partSize = 64 << 10;
+
+    private final Path path;
+    private final BlockingQueue<byte[]> lines = new ArrayBlockingQueue<>(queueSize);
+    private final Thread writer;
+    private final ReentrantLock lineLock = new ReentrantLock();
+    private final Utf8Builder part = new Utf8Builder(0);
+    private final Semaphore flushed = new Semaphore(0);
+    private volatile IOException failure;
+    private boolean closed;
+
+    /**
+     * @param path - File the rejected lines are appended to
+     */
+    public RejectsFile(Path path) {
+        this.path = path;
+        this.writer = new Thread(this::writeRejected, "pst-rejects-" + writerCount.incrementAndGet());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Path of the rejected lines of a conversion: the output path with .rejects appended
+     * @param output - Output file of the conversion
+     * @return - Rejects file next to the output
+     */
+    public static Path pathFor(Path output) {
+        return Paths.get(output + ".rejects");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Cut a rejects file back to a length recorded in a checkpoint, dropping the lines rejected after it
+     * @param path - Rejects file, which may not exist if nothing was rejected
+     * @param length - Length to keep
+     * @throws IOException - Thrown if the file is shorter than the length or cannot be written
+     */
+    public static void truncate(Path path, long length) throws IOException {
+        if (length == 0) {
+            Files.deleteIfExists(path);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            if (channel.size() < length)
+                throw new IOException("Rejects file " + path + " is shorter than its checkpoint");
+            channel.truncate(length);
+        }
+    }
+
+    /**
+     * Queue rejected lines for writing
+     * @param rejected - UTF-8 lines, each followed by a line separator
+     * @throws IOException - Thrown if writing earlier lines failed, or if interrupted while the queue is full
+     */
+    public void write(Utf8Builder rejected) throws IOException {
+        checkFailure();
+        if (rejected.length() == 0)
+            return;
+        byte[] bytes = toBytes(rejected);
+        lineLock.lock();
+        try {
+            put(bytes);
+        } finally {
+            lineLock.unlock();
+        }
+    }
+
+    /**
+     * Queue rejected lines for writing, in parts if they are long
+     * @param rejected - UTF-8 lines, each followed by a line separator, from the position to the limit
+     * @throws IOException - Thrown if writing earlier lines failed, or if interrupted while the queue is full
+     */
+    public void write(ByteBuffer rejected) throws IOException {
+        checkFailure();
+        lineLock.lock();
+        try {
+            putParts(rejected, rejected.position(), rejected.limit());
+        } finally {
+            lineLock.unlock();
+        }
+    }
+
+    /**
+     * Queue a long rejected line in parts, followed by a line separator
+     * @param input - UTF-8 input holding the line
+     * @param from - Offset of the first byte of the line
+     * @param to - Offset after the last byte of the line
+     * @throws IOException - Thrown if writing earlier lines failed, or if interrupted while the queue is full
+     */
+    public void writeLine(ByteBuffer input, int from, int to) throws IOException {
+        checkFailure();
+        lineLock.lock();
+        try {
+            putParts(input, from, to);
+            put(lineSeparatorBytes);
+        } finally {
+            lineLock.unlock();
+        }
+    }
+
+    /**
+     * Wait until the lines queued so far are written, so the length of the file can be recorded in a checkpoint
+     * @param fsync - Whether the file is forced to the storage device too
+     * @throws IOException - Thrown if writing the lines failed, or if interrupted while waiting
+     */
+    public void flush(boolean fsync) throws IOException {
+        lineLock.lock();
+        try {
+            put(fsync ? forced : written);
+        } finally {
+            lineLock.unlock();
+        }
+        try {
+            flushed.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing rejected lines");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Queue the next part of a rejected line read piece by piece, as {@link RecordReader.OversizedRecords}. Other
+     * threads wait with their rejected lines from the first part until the last one
+     * @param text - Next piece of the line, not ending inside a surrogate pair
+     * @param last - Whether the piece ends the line, a line separator is written after it
+     * @throws IOException - Thrown if writing earlier lines failed, or if interrupted while the queue is full
+     */
+    public void writePart(CharSequence text, boolean last) throws IOException {
+        if (!lineLock.isHeldByCurrentThread())
+            lineLock.lock();
+        try {
+            checkFailure();
+            for (int start = 0; start < text.length(); ) {
+                int end = Math.min(start + partSize, text.length());
+                if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1)))
+                    end--;
+                part.setLength(0);
+                part.appendUtf8(text.subSequence(start, end));
+                put(toBytes(part));
+                start = end;
+            }
+            if (last)
+                put(lineSeparatorBytes);
+        } finally {
+            if (last)
+                lineLock.unlock();
+        }
+    }
+
+    /**
+     * Write the queued lines and close the file
+     * @throws IOException - Thrown if writing the lines failed
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        put(end);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing rejected lines");
+        }
+        checkFailure();
+    }
+
+    /**
+     * Writer thread: append queued lines, opening the file for the first ones. After a failure lines are dropped
+     */
+    private void writeRejected() {
+        FileChannel out = null;
+        try {
+            for (byte[] bytes = lines.take(); bytes != end; bytes = lines.take()) {
+                if (bytes == written || bytes == forced) {
+                    try {
+                        if (bytes == forced && out != null && failure == null)
+                            out.force(true);
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                    flushed.release();
+                    continue;
+                }
+                if (failure != null)
+                    continue;
+                try {
+                    if (out == null)
+                        out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                StandardOpenOption.APPEND);
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while (buffer.hasRemaining())
+                        out.write(buffer);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            if (failure == null)
+                failure = new InterruptedIOException("Rejects writer interrupted");
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Queue part of a buffer in copies of at most {@link #partSize} bytes
+     */
+    private void putParts(ByteBuffer input, int from, int to) throws IOException {
+        for (int start = from; start < to; start += partSize) {
+            byte[] bytes = new byte[Math.min(partSize, to - start)];
+            ByteBuffer source = input.duplicate();
+            ((Buffer) source).limit(start + bytes.length).position(start);
+            source.get(bytes);
+            put(bytes);
+        }
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        try {
+            lines.put(bytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing rejected lines");
+        }
+    }
+
+    private static byte[] toBytes(Utf8Builder utf8) {
+        byte[] bytes = new byte[utf8.length()];
+        utf8.toByteBuffer().get(bytes);
+        return bytes;
+    }
+
+    private void checkFailure() throws IOException {
+        IOException failure = this.failure;
+        if (failure != null)
+            throw new IOException("Writing rejected lines to " + path + " failed", failure);
+    }
+}
@@ -0,0 +1,276 @@
+package com.example.pst;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * The cells of one converted row, indexed by column position and reused from row to row so converting a line
+ * allocates nothing per cell. Numbers and dates are kept in primitive slots, dates as int days since 1970-01-01,
+ * and strings as a range of the line they were cleaned from: characters of a text or UTF-8 bytes of a buffer.
+ * Which cells hold a value is kept in a bitmap, cells without value are null. A cell may also carry its json text,
+ * set by a {@link ValueCache} hit, which is written instead of encoding the value again.
+ * Ranges point into the converted line, so a row is only valid until the line is reused.
+ * An instance must not be shared between threads.
+ */
+public final class RowBuffer {
+
+    /**
+     * Kind of a cell holding a long
+     */
+    public static final byte longCell = 1;
+    /**
+     * Kind of a cell holding a double
+     */
+    public static final byte doubleCell = 2;
+    /**
+     * Kind of a cell holding a date as days since 1970-01-01
+     */
+    public static final byte dateCell = 3;
+    /**
+     * Kind of a cell holding a string as a range of characters
+     */
+    public static final byte textCell = 4;
+    /**
+     * Kind of a cell holding a string as a range of valid UTF-8 bytes
+     */
+    public static final byte utf8Cell = 5;
+
+    private final long[] present;
+    private final byte[] kinds;
+    private final long[] longs;
+    private final double[] doubles;
+    private final int[] days;
+    private final CharSequence[] texts;
+    private final ByteBuffer[] sources;
+    private final int[] starts;
+    private final int[] ends;
+    private final long[] encoded;
+    private final String[] jsons;
+    private final byte[][] jsonUtf8s;
+    private boolean filteredOut;
+
+    /**
+     * @param columns - Number of columns
+     */
+    public RowBuffer(int columns) {
+        this.present = new long[(columns + 63) >>> 6];
+        this.kinds = new byte[columns];
+        this.longs = new long[columns];
+        this.doubles = new double[columns];
+        this.days = new int[columns];
+        this.texts = new CharSequence[columns];
+        this.sources = new ByteBuffer[columns];
+        this.starts = new int[columns];
+        this.ends = new int[columns];
+        this.encoded = new long[present.length];
+        this.jsons = new String[columns];
+        this.jsonUtf8s = new byte[columns][];
+    }
+
+    /**
+     * @return - Number of columns
+     */
+    public int size() {
+        return kinds.length;
+    }
+
+    /**
+     * Make every cell null and the row not filtered out. The slots are kept, only the bitmap is reset
+     */
+    public void clear() {
+        Arrays.fill(present, 0);
+        Arrays.fill(encoded, 0);
+        filteredOut = false;
+    }
+
+    /**
+     * @return - Whether the row was left out by a {@link RowFilter} of the converter, its cells are incomplete then
+     */
+    public boolean isFilteredOut() {
+        return filteredOut;
+    }
+
+    public void setFilteredOut(boolean filteredOut) {
+        this.filteredOut = filteredOut;
+    }
+
+    public void setNull(int column) {
+        present[column >>> 6] &= ~(1L << column);
+        encoded[column >>> 6] &= ~(1L << column);
+    }
+
+    public void setLong(int column, long value) {
+        longs[column] = value;
+        set(column, longCell);
+    }
+
+    public void setDouble(int column, double value) {
+        doubles[column] = value;
+        set(column, doubleCell);
+    }
+
+    /**
+     * @param column - Column index
+     * @param epochDay - Days since 1970-01-01
+     */
+    public void setDate(int column, int epochDay) {
+        days[column] = epochDay;
+        set(column, dateCell);
+    }
+
+    /**
+     * Set a date, or null. Dates too far from 1970 for an int number of days are kept as their
+     * {@link Main#outputDatePattern} text, which is written to json the same way
+     * @param column - Column index
+     * @param date - Date to set, may be null
+     */
+    public void setDate(int column, LocalDate date) {
+        if (date == null) {
+            setNull(column);
+            return;
+        }
+        long epochDay = date.toEpochDay();
+        if ((int) epochDay == epochDay)
+            setDate(column, (int) epochDay);
+        else
+            setText(column, date.format(JsonRowEncoder.outputDateFormatter));
+    }
+
+    /**
+     * @param column - Column index
+     * @param text - String to set, may be null
+     */
+    public void setText(int column, String text) {
+        if (text == null)
+            setNull(column);
+        else
+            setText(column, text, 0, text.length());
+    }
+
+    /**
+     * @param column - Column index
+     * @param text - Text holding the string, kept until the row is cleared or the cell is set again
+     * @param from - Offset of the first character
+     * @param to - Offset after the last character
+     */
+    public void setText(int column, CharSequence text, int from, int to) {
+        texts[column] = text;
+        starts[column] = from;
+        ends[column] = to;
+        set(column, textCell);
+    }
+
+    /**
+     * @param column - Column index
+     * @param source - Buffer holding the string as valid UTF-8, kept until the row is cleared or the cell is set
+     * again
+     * @param from - Offset of the first byte
+     * @param to - Offset after the last byte
+     */
+    public void setUtf8(int column, ByteBuffer source, int from, int to) {
+        sources[column] = source;
+        starts[column] = from;
+        ends[column] = to;
+        set(column, utf8Cell);
+    }
+
+    /**
+     * Attach the json text of the value just set, kept until the row is cleared or the cell is set again
+     * @param column - Column index of a cell which is not null
+     * @param json - Json text of the value
+     * @param jsonUtf8 - The same json text as UTF-8 bytes
+     */
+    public void setJson(int column, String json, byte[] jsonUtf8) {
+        jsons[column] = json;
+        jsonUtf8s[column] = jsonUtf8;
+        encoded[column >>> 6] |= 1L << column;
+    }
+
+    public boolean isNull(int column) {
+        return (present[column >>> 6] & 1L << column) == 0;
+    }
+
+    /**
+     * @param column - Column index
+     * @return - {@link #longCell}, {@link #doubleCell}, {@link #dateCell}, {@link #textCell} or {@link #utf8Cell},
+     * 0 if the cell is null
+     */
+    public byte kind(int column) {
+        return isNull(column) ? 0 : kinds[column];
+    }
+
+    public long getLong(int column) {
+        return longs[column];
+    }
+
+    public double getDouble(int column) {
+        return doubles[column];
+    }
+
+    /**
+     * @return - Days since 1970-01-01
+     */
+    public int getEpochDay(int column) {
+        return days[column];
+    }
+
+    /**
+     * @return - Text of a {@link #textCell}
+     */
+    public CharSequence getText(int column) {
+        return texts[column];
+    }
+
+    /**
+     * @return - Buffer of a {@link #utf8Cell}
+     */
+    public ByteBuffer getSource(int column) {
+        return sources[column];
+    }
+
+    /**
+     * @return - Offset of the first character or byte of a string
+     */
+    public int getStart(int column) {
+        return starts[column];
+    }
+
+    /**
+     * @return - Offset after the last character or byte of a string
+     */
+    public int getEnd(int column) {
+        return ends[column];
+    }
+
+    /**
+     * @return - Json text of the value, null if none was attached
+     */
+    public String getJson(int column) {
+        return (encoded[column >>> 6] & 1L << column) == 0 ? null : jsons[column];
+    }
+
+    /**
+     * @return - Json text of the value as UTF-8 bytes, null if none was attached
+     */
+    public byte[] getJsonUtf8(int column) {
+        return (encoded[column >>> 6] & 1L << column) == 0 ? null : jsonUtf8s[column];
+    }
+
+    /**
+     * Copy a string cell out of its line
+     * @param column - Column index of a {@link #textCell} or {@link #utf8Cell}
+     * @return - The string
+     */
+    public String getString(int column) {
+        if (kinds[column] == utf8Cell)
+            return Utf8Builder.decode(sources[column], starts[column], ends[column]);
+        return texts[column].subSequence(starts[column], ends[column]).toString();
+    }
+
+    private void set(int column, byte kind) {
+        kinds[column] = kind;
+        present[column >>> 6] |= 1L << column;
+        encoded[column >>> 6] &= ~(1L << column);
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.pst;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+
+/**
+ * Compares a cell of a converted row with a value, like lastName=Smith or age&gt;=18. The value is compared by the
+ * type of the cell: numbers as numbers, dates as dates written as {@link Main#outputDatePattern} and strings
+ * by their characters, if the value is neither a number nor a date. A cell of another type than the value is
+ * not equal to it and not in any range. Rows without value in the column never match.
+ * Instances are immutable.
+ */
+public final class RowFilter {
+
+    /**
+     * Comparison of a cell with the value
+     */
+    public enum Operator {
+        EQUAL("="), NOT_EQUAL("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">=");
+
+        private final String symbol;
+
+        Operator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        private boolean matches(int comparison) {
+            if (comparison == incomparable)
+                return this == NOT_EQUAL;
+            switch (this) {
+                case EQUAL:
+                    return comparison == 0;
+                case NOT_EQUAL:
+                    return comparison != 0;
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case GREATER:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+    }
+
+    private static final int incomparable = Integer.MIN_VALUE;
+
+    private final String column;
+    private final Operator operator;
+    private final String value;
+    private final boolean isLong;
+    private final long longValue;
+    private final boolean isNumber;
+    private final double doubleValue;
+    private final boolean isDate;
+    private final long epochDay;
+
+    /**
+     * @param column - Name of the column
+     * @param operator - Comparison of the cell with the value
+     * @param value - Value the cell is compared with
+     */
+    public RowFilter(String column, Operator operator, String value) {
+        if (column == null || column.isEmpty())
+            throw new IllegalArgumentException("Filter column must not be empty");
+        this.column = column;
+        this.operator = operator;
+        this.value = value;
+        this.isLong = ValueParsers.isLong(value);
+        this.longValue = isLong ? ValueParsers.parseLong(value) : 0;
+        double number = isLong ? longValue
+                : ValueParsers.isDouble(value) ? ValueParsers.parseDouble(value) : Double.NaN;
+        this.isNumber = !Double.isNaN(number);
+        this.doubleValue = number;
+        long day;
+        try {
+            day = LocalDate.parse(value).toEpochDay();
+        } catch (DateTimeParseException e) {
+            day = Long.MIN_VALUE;
+        }
+        this.isDate = day != Long.MIN_VALUE;
+        this.epochDay = day;
+    }
+
+    /**
+     * Parse a filter written as a column name, an operator and a value, like born&gt;=2000-01-01
+     * @param expression - Filter text, white space around the name and value is ignored
+     * @return - Filter
+     * @throws IllegalArgumentException - Thrown if the text has no operator or no column name
+     */
+    public static RowFilter parse(String expression) {
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c != '=' && c != '!' && c != '<' && c != '>')
+                continue;
+            Operator operator = null;
+            for (Operator candidate : Operator.values()) {
+                if (expression.startsWith(candidate.symbol, i)
+                        && (operator == null || candidate.symbol.length() > operator.symbol.length()))
+                    operator = candidate;
+            }
+            if (operator == null)
+                break;
+            return new RowFilter(expression.substring(0, i).trim(), operator,
+                    expression.substring(i + operator.symbol.length()).trim());
+        }
+        throw new IllegalArgumentException("Filter " + expression + " has no operator");
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    /**
+     * @param row - Converted row
+     * @param column - Column index of the cell compared
+     * @return - Whether the cell matches
+     */
+    public boolean test(RowBuffer row, int column) {
+        return !row.isNull(column) && operator.matches(compare(row, column));
+    }
+
+    /**
+     * @return - Sign of the comparison of the cell with the value, {@link #incomparable} if their types differ
+     */
+    private int compare(RowBuffer row, int column) {
+        switch (row.kind(column)) {
+            case RowBuffer.longCell:
+                if (isLong)
+                    return Long.compare(row.getLong(column), longValue);
+                return isNumber ? compare(row.getLong(column), doubleValue) : incomparable;
+            case RowBuffer.doubleCell:
+                return isNumber ? compare(row.getDouble(column), doubleValue) : incomparable;
+            case RowBuffer.dateCell:
+                return isDate ? Long.compare(row.getEpochDay(column), epochDay) : incomparable;
+            case RowBuffer.textCell:
+                if (isNumber || isDate)
+                    return incomparable;
+                return Integer.signum(compare(row.getText(column), row.getStart(column), row.getEnd(column)));
+            default:
+                if (isNumber || isDate)
+                    return incomparable;
+                ByteBuffer source = row.getSource(column);
+                if (Utf8Builder.isAscii(source, row.getStart(column), row.getEnd(column)))
+                    return Integer.signum(compare(source, row.getStart(column), row.getEnd(column)));
+                String text = row.getString(column);
+                return Integer.signum(compare(text, 0, text.length()));
+        }
+    }
+
+    private static int compare(double cell, double value) {
+        return cell < value ? -1 : cell > value ? 1 : 0;
+    }
+
+    private int compare(CharSequence text, int from, int to) {
+        int length = Math.min(to - from, value.length());
+        for (int i = 0; i < length; i++) {
+            int difference = text.charAt(from + i) - value.charAt(i);
+            if (difference != 0)
+                return difference;
+        }
+        return (to - from) - value.length();
+    }
+
+    private int compare(ByteBuffer ascii, int from, int to) {
+        int length = Math.min(to - from, value.length());
+        for (int i = 0; i < length; i++) {
+            int difference = ascii.get(from + i) - value.charAt(i);
+            if (difference != 0)
+                return difference;
+        }
+        return (to - from) - value.length();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof RowFilter))
+            return false;
+        RowFilter filter = (RowFilter) other;
+        return column.equals(filter.column) && operator == filter.operator && value.equals(filter.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(column, operator, value);
+    }
+
+    @Override
+    public String toString() {
+        return column + operator.symbol + value;
+    }
+}
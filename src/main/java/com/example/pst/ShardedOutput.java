@@ -0,0 +1,246 @@
+package com.example.pst;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The output of a conversion split into a number of shard files, each row going to the shard chosen by the hash
+ * of one of its cells, so rows with the same key are always in the same shard.
+ * Shard files are named like the output with the shard number before the extension, output.jsonl becomes
+ * output-0.jsonl, output-1.jsonl and so on. Each shard has a small buffer written on the calling thread, the
+ * output buffer size shared out over the shards, gzip compressed if the output is named *.gz. No thread is started
+ * per shard, so many shards cost little more memory than a single output file.
+ * Writing to a shard is thread safe, writes to different shards do not wait for each other.
+ */
+public final class ShardedOutput implements Closeable {
+
+    //Smallest buffer of a shard, large enough for few writes to the file however many shards there are
+    private static final int minBufferSize = 64 << 10;
+
+    private final Path[] paths;
+    private final OutputStream[] outputs;
+    private boolean closed;
+
+    /**
+     * Create or truncate the shard files
+     * @param output - Output file the shard files are named after
+     * @param shards - Number of shard files
+     * @param options - Output buffer size shared out over the shards and whether the files are forced to the device
+     * when closed
+     * @throws IOException - Thrown if a shard file cannot be opened
+     */
+    public ShardedOutput(Path output, int shards, ConversionOptions options) throws IOException {
+        if (shards < 1)
+            throw new IllegalArgumentException("Shards must be at least 1");
+        this.paths = new Path[shards];
+        this.outputs = new OutputStream[shards];
+        int bufferSize = Math.max(minBufferSize, options.getFlushSize() / shards);
+        boolean gzip = FileStreams.hasGzipExtension(output);
+        try {
+            for (int shard = 0; shard < shards; shard++) {
+                paths[shard] = pathFor(output, shard, shards);
+                OutputStream file = new BufferedOutputStream(new ShardFile(paths[shard], options.isFsync()),
+                        bufferSize);
+                outputs[shard] = gzip ? new GZIPOutputStream(file, bufferSize) : file;
+            }
+        } catch (IOException | RuntimeException e) {
+            close(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Name of a shard file: the output with the shard number, padded to the same width for every shard, before
+     * the extension and a .gz suffix
+     * @param output - Output file
+     * @param shard - Shard number from 0
+     * @param shards - Number of shards
+     * @return - Path of the shard file next to the output
+     */
+    public static Path pathFor(Path output, int shard, int shards) {
+        String name = output.getFileName().toString();
+        String suffix = "";
+        if (name.endsWith(".gz")) {
+            suffix = ".gz";
+            name = name.substring(0, name.length() - suffix.length());
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            suffix = name.substring(dot) + suffix;
+            name = name.substring(0, dot);
+        }
+        int width = Integer.toString(shards - 1).length();
+        return output.resolveSibling(String.format("%s-%0" + width + "d%s", name, shard, suffix));
+    }
+
+    /**
+     * Find the shard of a row by the hash of a cell. Strings hash by their characters whether they point into
+     * text or UTF-8 input, so reading a file as a stream or memory mapped gives the same shards
+     * @param row - Converted row
+     * @param column - Column index of the key
+     * @param shards - Number of shards
+     * @return - Shard number from 0, rows without key go to shard 0
+     */
+    public static int shardOf(RowBuffer row, int column, int shards) {
+        int hash;
+        switch (row.kind(column)) {
+            case 0:
+                return 0;
+            case RowBuffer.longCell:
+                hash = Long.hashCode(row.getLong(column));
+                break;
+            case RowBuffer.doubleCell:
+                hash = Double.hashCode(row.getDouble(column));
+                break;
+            case RowBuffer.dateCell:
+                hash = row.getEpochDay(column);
+                break;
+            case RowBuffer.textCell:
+                hash = hash(row.getText(column), row.getStart(column), row.getEnd(column));
+                break;
+            default:
+                ByteBuffer source = row.getSource(column);
+                if (Utf8Builder.isAscii(source, row.getStart(column), row.getEnd(column))) {
+                    hash = 0;
+                    for (int i = row.getStart(column); i < row.getEnd(column); i++)
+                        hash = 31 * hash + source.get(i);
+                } else {
+                    String text = row.getString(column);
+                    hash = hash(text, 0, text.length());
+                }
+        }
+        //Spread the bits, so keys differing only in their high bits still go to different shards
+        hash *= 0x9E3779B9;
+        return Math.floorMod(hash ^ hash >>> 16, shards);
+    }
+
+    /**
+     * @return - Number of shards
+     */
+    public int size() {
+        return outputs.length;
+    }
+
+    /**
+     * @param shard - Shard number from 0
+     * @return - Path of the shard file
+     */
+    public Path getPath(int shard) {
+        return paths[shard];
+    }
+
+    /**
+     * Write bytes to a shard
+     * @param shard - Shard number from 0
+     * @param bytes - Heap buffer holding the bytes
+     * @throws IOException - Thrown if the shard file cannot be written
+     */
+    public void write(int shard, ByteBuffer bytes) throws IOException {
+        OutputStream output = outputs[shard];
+        synchronized (output) {
+            output.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        }
+    }
+
+    /**
+     * @param output - Output file the shard files are named after
+     * @param shards - Number of shard files
+     * @return - Total size of the shard files, once they are closed
+     * @throws IOException - Thrown if the size of a file cannot be read
+     */
+    public static long totalSize(Path output, int shards) throws IOException {
+        long size = 0;
+        for (int shard = 0; shard < shards; shard++)
+            size += Files.size(pathFor(output, shard, shards));
+        return size;
+    }
+
+    /**
+     * Close the shard files, closing again does nothing
+     * @throws IOException - Thrown if a shard file cannot be written, the other files are closed still
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        IOException failure = null;
+        for (OutputStream output : outputs) {
+            if (output == null)
+                continue;
+            try {
+                output.close();
+            } catch (IOException e) {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    /**
+     * Close the shard files opened so far after a failure, adding errors while closing to it
+     */
+    private void close(Exception failure) {
+        try {
+            close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private static int hash(CharSequence text, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++)
+            hash = 31 * hash + text.charAt(i);
+        return hash;
+    }
+
+    /**
+     * Unbuffered stream writing a shard file on the calling thread, forced to the device when closed if requested
+     */
+    private static final class ShardFile extends OutputStream {
+
+        private final FileChannel channel;
+        private final boolean fsync;
+
+        private ShardFile(Path path, boolean fsync) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.fsync = fsync;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (fsync && channel.isOpen())
+                    channel.force(true);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.pst;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * SIMD within a register: scans 8 bytes at once in a long. Words are read little endian whatever the order of the
+ * buffer, so byte i of the word is bits 8i to 8i+7. Masks mark a byte by its high bit, so the bytes marked in a mask
+ * are found in order with {@link Long#numberOfTrailingZeros(long)} and cleared with mask &amp; (mask - 1).
+ * Used by the tokenizer and the record reader to find delimiters, quotes and line ends without a branch per byte.
+ */
+final class Swar {
+
+    static final int wordSize = Long.BYTES;
+
+    private static final long ones = 0x0101010101010101L;
+    private static final long lowBits = 0x7F7F7F7F7F7F7F7FL;
+    private static final long highBits = 0x8080808080808080L;
+
+    private Swar() {
+    }
+
+    /**
+     * @param b - Byte to look for
+     * @return - Word holding the byte 8 times, for {@link #matches(long, long)}
+     */
+    static long broadcast(byte b) {
+        return (b & 0xFFL) * ones;
+    }
+
+    /**
+     * Read 8 bytes from a buffer in little endian order
+     * @param buffer - Buffer to read
+     * @param index - Offset of the first byte, at least 8 bytes before the limit
+     * @param bigEndian - Whether the buffer order is big endian, see {@link #isBigEndian(ByteBuffer)}
+     * @return - Word of the bytes
+     */
+    static long word(ByteBuffer buffer, int index, boolean bigEndian) {
+        long word = buffer.getLong(index);
+        return bigEndian ? Long.reverseBytes(word) : word;
+    }
+
+    static boolean isBigEndian(ByteBuffer buffer) {
+        return buffer.order() == ByteOrder.BIG_ENDIAN;
+    }
+
+    /**
+     * Mark the bytes of a word which equal a byte. Exact for every byte, no borrow runs from one byte into the next
+     * @param word - Bytes to check
+     * @param pattern - Byte to look for, from {@link #broadcast(byte)}
+     * @return - Mask of the equal bytes
+     */
+    static long matches(long word, long pattern) {
+        long x = word ^ pattern;
+        return ~(((x & lowBits) + lowBits) | x | lowBits);
+    }
+
+    /**
+     * @param word - Bytes to check
+     * @return - Mask of the bytes which are not ASCII
+     */
+    static long nonAscii(long word) {
+        return word & highBits;
+    }
+
+    /**
+     * Prefix XOR of a mask: each byte is marked if an odd number of bytes up to and including it are marked. For a
+     * mask of quotes, the bytes inside quotes, the opening quote included and the closing one not
+     * @param mask - Marked bytes
+     * @return - Mask of the bytes with odd parity
+     */
+    static long prefixXor(long mask) {
+        mask ^= mask << 8;
+        mask ^= mask << 16;
+        mask ^= mask << 32;
+        return mask;
+    }
+
+    /**
+     * @param mask - Marked bytes
+     * @return - Whether an odd number of bytes are marked
+     */
+    static boolean isOdd(long mask) {
+        return (Long.bitCount(mask) & 1) != 0;
+    }
+
+    /**
+     * @param mask - Marked bytes, not 0
+     * @return - Index of the first marked byte in the word
+     */
+    static int firstIndex(long mask) {
+        return Long.numberOfTrailingZeros(mask) >>> 3;
+    }
+
+    /**
+     * @param odd - Whether the parity starts odd
+     * @return - Mask marking every byte if it does, for flipping a {@link #prefixXor(long)}
+     */
+    static long parity(boolean odd) {
+        return odd ? highBits : 0;
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.pst;
+
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A growable buffer of UTF-8 encoded text, the byte counterpart of StringBuilder used by the byte pipeline.
+ * Also holds the helpers for UTF-8 encoded ranges of input buffers.
+ * An instance must not be shared between threads.
+ */
+public final class Utf8Builder {
+
+    private static final int initialCapacity = 256;
+
+    private byte[] bytes;
+    private int length;
+    private StringBuilder digits;
+
+    public Utf8Builder() {
+        this(initialCapacity);
+    }
+
+    /**
+     * @param capacity - Expected number of bytes
+     */
+    public Utf8Builder(int capacity) {
+        this.bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * @return - Number of bytes written
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Drop bytes from the end
+     * @param length - Number of bytes to keep
+     */
+    public void setLength(int length) {
+        if (length < 0 || length > this.length)
+            throw new IndexOutOfBoundsException("Length " + length + " of " + this.length);
+        this.length = length;
+    }
+
+    /**
+     * @return - Last byte written, 0 if the buffer is empty
+     */
+    public byte lastByte() {
+        return length == 0 ? 0 : bytes[length - 1];
+    }
+
+    public Utf8Builder append(byte b) {
+        ensureCapacity(1);
+        bytes[length++] = b;
+        return this;
+    }
+
+    /**
+     * @param c - Character below 128
+     */
+    public Utf8Builder append(char c) {
+        return append((byte) c);
+    }
+
+    public Utf8Builder append(byte[] source) {
+        ensureCapacity(source.length);
+        System.arraycopy(source, 0, bytes, length, source.length);
+        length += source.length;
+        return this;
+    }
+
+    /**
+     * Copy a range of a buffer. The position of the buffer is moved for the copy and restored
+     * @param source - Buffer to copy from
+     * @param from - Offset of the first byte
+     * @param to - Offset after the last byte
+     */
+    public Utf8Builder append(ByteBuffer source, int from, int to) {
+        int count = to - from;
+        if (count == 0)
+            return this;
+        ensureCapacity(count);
+        if (source.hasArray()) {
+            System.arraycopy(source.array(), source.arrayOffset() + from, bytes, length, count);
+        } else {
+            int position = source.position();
+            ((Buffer) source).position(from);
+            source.get(bytes, length, count);
+            ((Buffer) source).position(position);
+        }
+        length += count;
+        return this;
+    }
+
+    /**
+     * Write the decimal digits of a number, the same text as {@link Long#toString(long)}
+     * @param value - Number to write
+     */
+    public Utf8Builder append(long value) {
+        if (value == Long.MIN_VALUE)
+            return appendAscii(Long.toString(value));
+        ensureCapacity(20);
+        if (value < 0) {
+            bytes[length++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10)
+            digits++;
+        for (int i = length + digits - 1; i >= length; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+        return this;
+    }
+
+    /**
+     * Write a number, the same text as {@link Double#toString(double)}
+     * @param value - Number to write
+     */
+    public Utf8Builder append(double value) {
+        if (digits == null)
+            digits = new StringBuilder(24);
+        digits.setLength(0);
+        return appendAscii(digits.append(value));
+    }
+
+    /**
+     * @param text - Characters below 128
+     */
+    public Utf8Builder appendAscii(CharSequence text) {
+        int count = text.length();
+        ensureCapacity(count);
+        for (int i = 0; i < count; i++)
+            bytes[length + i] = (byte) text.charAt(i);
+        length += count;
+        return this;
+    }
+
+    /**
+     * Encode text as UTF-8. Unpaired surrogates are written as '?', like {@link String#getBytes}
+     * @param text - Text to write
+     */
+    public Utf8Builder appendUtf8(CharSequence text) {
+        int count = text.length();
+        ensureCapacity(count * 3);
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[length++] = (byte) (0xC0 | c >> 6);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                    bytes[length++] = (byte) (0xF0 | codePoint >> 18);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                    bytes[length++] = (byte) (0x80 | codePoint & 0x3F);
+                } else {
+                    bytes[length++] = '?';
+                }
+            } else {
+                bytes[length++] = (byte) (0xE0 | c >> 12);
+                bytes[length++] = (byte) (0x80 | c >> 6 & 0x3F);
+                bytes[length++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return - Buffer over the written bytes, sharing the content of this builder
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(bytes, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int count) {
+        if (length + count > bytes.length)
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length << 1, length + count));
+    }
+
+    /**
+     * @param source - Buffer to check
+     * @param from - Offset of the first byte
+     * @param to - Offset after the last byte
+     * @return - Whether all bytes of the range are below 128
+     */
+    public static boolean isAscii(ByteBuffer source, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (source.get(i) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decode a range strictly
+     * @param source - Buffer to decode
+     * @param from - Offset of the first byte
+     * @param to - Offset after the last byte
+     * @return - Decoded text
+     * @throws UncheckedIOException - Thrown if the range is not valid UTF-8, as reading the lines as text would
+     */
+    public static String decode(ByteBuffer source, int from, int to) {
+        ByteBuffer range = source.duplicate();
+        ((Buffer) range).limit(to).position(from);
+        try {
+            return StandardCharsets.UTF_8.newDecoder().decode(range).toString();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Check that a range is valid UTF-8 without decoding it: no overlong forms, surrogates, code points past
+     * U+10FFFF or truncated sequences, the same rules the strict decoder applies
+     * @param source - Buffer to check
+     * @param from - Offset of the first byte
+     * @param to - Offset after the last byte
+     * @throws UncheckedIOException - Thrown if the range is not valid UTF-8
+     */
+    public static void validate(ByteBuffer source, int from, int to) {
+        int i = from;
+        while (i < to) {
+            int b = source.get(i);
+            if (b >= 0) {
+                i++;
+                continue;
+            }
+
+            b &= 0xFF;
+            int count;
+            int min = 0x80;
+            int max = 0xBF;
+            if (b >= 0xC2 && b <= 0xDF) {
+                count = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                count = 2;
+                if (b == 0xE0)
+                    min = 0xA0;
+                else if (b == 0xED)
+                    max = 0x9F;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                count = 3;
+                if (b == 0xF0)
+                    min = 0x90;
+                else if (b == 0xF4)
+                    max = 0x8F;
+            } else {
+                count = -1;
+            }
+
+            //The second byte carries the range limits, the others are plain continuation bytes
+            boolean valid = count > 0 && i + count < to;
+            for (int k = 1; valid && k <= count; k++) {
+                int next = source.get(i + k) & 0xFF;
+                valid = k == 1 ? next >= min && next <= max : (next & 0xC0) == 0x80;
+            }
+            if (!valid) {
+                decode(source, from, to);   //Throws the error of the strict decoder
+                return;
+            }
+            i += count + 1;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.pst;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Remembers the converted cells of one column by their cleaned text, so a value which repeats, like a gender or
+ * a date, is recognized, parsed and escaped once instead of on every row. Each entry keeps the typed value and
+ * its json text. Entries live in a direct mapped table: a new value replaces the one in its slot, so the cache
+ * never grows past its capacity and values which stop repeating are soon dropped. Only cells of up to
+ * {@link #maxKeyLength} characters are remembered.
+ * Every {@link #probeLookups} lookups the hit rate is checked. Below {@link #minHitPercent} percent the cache turns
+ * itself off for {@link #offLookups} lookups before it tries again, so a column of mostly distinct values only
+ * pays for the probes.
+ * An instance must only be used by one thread.
+ */
+public final class ValueCache {
+
+    public static final int defaultCapacity = 256;
+    /**
+     * Longest cell text which is remembered, longer cells count as misses
+     */
+    public static final int maxKeyLength = 64;
+
+    static final int probeLookups = 1024;
+    static final int minHitPercent = 50;
+    static final int offLookups = 64 << 10;
+
+    private final Entry[] slots;
+    private final int mask;
+    private int lookups;
+    private int hits;
+    private int offFor;
+
+    /**
+     * @param capacity - Number of slots, a power of two
+     */
+    public ValueCache(int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        this.slots = new Entry[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * @return - Whether converted cells are looked up and remembered, false while the cache is turned off
+     */
+    public boolean isEnabled() {
+        return offFor == 0;
+    }
+
+    /**
+     * Look up a cell
+     * @param text - Text holding the cleaned cell
+     * @param from - Offset of the first character
+     * @param to - Offset after the last character
+     * @return - Remembered cell, null if the text was not seen or the cache is off
+     */
+    public Entry get(CharSequence text, int from, int to) {
+        if (!lookup() || to - from > maxKeyLength)
+            return null;
+        int hash = 0;
+        for (int i = from; i < to; i++)
+            hash = 31 * hash + text.charAt(i);
+        Entry entry = slots[hash & mask];
+        if (entry == null || entry.hash != hash || entry.key.length() != to - from)
+            return null;
+        for (int i = from; i < to; i++) {
+            if (entry.key.charAt(i - from) != text.charAt(i))
+                return null;
+        }
+        hits++;
+        return entry;
+    }
+
+    /**
+     * Look up a cell of ASCII input
+     * @param ascii - Buffer holding the cleaned cell, only ASCII bytes
+     * @param from - Offset of the first byte
+     * @param to - Offset after the last byte
+     * @return - Remembered cell, null if the text was not seen or the cache is off
+     */
+    public Entry get(ByteBuffer ascii, int from, int to) {
+        if (!lookup() || to - from > maxKeyLength)
+            return null;
+        int hash = 0;
+        for (int i = from; i < to; i++)
+            hash = 31 * hash + ascii.get(i);
+        Entry entry = slots[hash & mask];
+        if (entry == null || entry.hash != hash || entry.key.length() != to - from)
+            return null;
+        for (int i = from; i < to; i++) {
+            if (entry.key.charAt(i - from) != ascii.get(i))
+                return null;
+        }
+        hits++;
+        return entry;
+    }
+
+    /**
+     * Remember a converted cell, replacing the entry in its slot
+     * @param key - Cleaned text of the cell
+     * @param row - Row holding the converted cell
+     * @param column - Column index of the cell
+     * @param json - Json text of the cell value
+     */
+    public void put(String key, RowBuffer row, int column, String json) {
+        if (isEnabled() && key.length() <= maxKeyLength) {
+            Entry entry = new Entry(key, row, column, json);
+            slots[entry.hash & mask] = entry;
+        }
+    }
+
+    /**
+     * Count a lookup, and turn the cache off or on again based on the hit rate
+     * @return - Whether the lookup is made
+     */
+    private boolean lookup() {
+        if (offFor > 0) {
+            offFor--;
+            return false;
+        }
+        if (lookups == probeLookups) {
+            boolean cold = hits * 100L < (long) lookups * minHitPercent;
+            lookups = 0;
+            hits = 0;
+            if (cold) {
+                offFor = offLookups;
+                return false;
+            }
+        }
+        lookups++;
+        return true;
+    }
+
+    /**
+     * A converted cell: its typed value and json text. Instances are immutable
+     */
+    public static final class Entry {
+        private final String key;
+        private final int hash;
+        private final byte kind;
+        private final long longValue;
+        private final double doubleValue;
+        private final int epochDay;
+        private final String text;
+        private final String json;
+        private final byte[] jsonUtf8;
+
+        private Entry(String key, RowBuffer row, int column, String json) {
+            this.key = key;
+            this.hash = key.hashCode();
+            this.kind = row.kind(column);
+            this.longValue = row.getLong(column);
+            this.doubleValue = row.getDouble(column);
+            this.epochDay = row.getEpochDay(column);
+            this.text = kind == RowBuffer.textCell || kind == RowBuffer.utf8Cell ? row.getString(column) : null;
+            this.json = json;
+            this.jsonUtf8 = json.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Set the cell and its json text in a row
+         * @param column - Column index of the cell
+         * @param row - Row receiving the cell
+         */
+        public void set(int column, RowBuffer row) {
+            switch (kind) {
+                case RowBuffer.longCell:
+                    row.setLong(column, longValue);
+                    break;
+                case RowBuffer.doubleCell:
+                    row.setDouble(column, doubleValue);
+                    break;
+                case RowBuffer.dateCell:
+                    row.setDate(column, epochDay);
+                    break;
+                default:
+                    row.setText(column, text);
+            }
+            row.setJson(column, json, jsonUtf8);
+        }
+    }
+}
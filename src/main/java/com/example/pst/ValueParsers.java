@@ -0,0 +1,405 @@
+package com.example.pst;
+
+/**
+ * Exception free recognizers for the value types of a cell.
+ * Each recognizer accepts exactly the texts the matching JDK parser accepts, so a cell can be checked before it is
+ * parsed instead of catching the exception thrown for every text of another type.
+ * Texts are expected without surrounding white space, as produced by {@link JsonLineConverter#trim(String)}.
+ */
+public final class ValueParsers {
+
+    /**
+     * Returned by {@link DateShape#parse(CharSequence)} when the text is not a date of the pattern
+     */
+    public static final int noDate = -1;
+
+    private static final long daysFromYearZeroTo1970 = 719528;
+
+    /**
+     * Returned by {@link DateShape#parse(CharSequence)} when only a DateTimeFormatter can tell, for signed years
+     */
+    public static final int unknownDate = -2;
+
+    //Powers of ten which are exact doubles
+    private static final double[] smallPowersOfTen = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private ValueParsers() {
+    }
+
+    /**
+     * Check whether {@link Long#parseLong(String)} accepts the text: an optional sign followed by decimal digits,
+     * within the range of long
+     * @param text - Text to check
+     * @return - Whether the text is a long
+     */
+    public static boolean isLong(CharSequence text) {
+        int length = text.length();
+        if (length == 0)
+            return false;
+
+        int i = 0;
+        long limit = -Long.MAX_VALUE;
+        char first = text.charAt(0);
+        if (first < '0') {
+            if (first == '-')
+                limit = Long.MIN_VALUE;
+            else if (first != '+')
+                return false;
+            if (length == 1)
+                return false;
+            i++;
+        }
+
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < length; i++) {
+            int digit = digit(text.charAt(i));
+            if (digit < 0 || result < multmin)
+                return false;
+            result *= 10;
+            if (result < limit + digit)
+                return false;
+            result -= digit;
+        }
+        return true;
+    }
+
+    /**
+     * Parse a text accepted by {@link #isLong(CharSequence)}
+     * @param text - Text to parse
+     * @return - Parsed value
+     */
+    public static long parseLong(CharSequence text) {
+        int i = 0;
+        boolean negative = false;
+        char first = text.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        //Accumulate negatively, like Long.parseLong, to reach Long.MIN_VALUE
+        long result = 0;
+        for (; i < text.length(); i++)
+            result = result * 10 - digit(text.charAt(i));
+        return negative ? result : -result;
+    }
+
+    /**
+     * Check whether {@link Double#parseDouble(String)} accepts the text: decimal or hexadecimal floating point
+     * literals with an optional type suffix, NaN and Infinity, each with an optional sign
+     * @param text - Text to check
+     * @return - Whether the text is a double
+     */
+    public static boolean isDouble(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+'))
+            i++;
+        if (i == length)
+            return false;
+
+        char c = text.charAt(i);
+        if (c == 'N')
+            return matches(text, i, "NaN");
+        if (c == 'I')
+            return matches(text, i, "Infinity");
+        if (c == '0' && i + 1 < length && (text.charAt(i + 1) == 'x' || text.charAt(i + 1) == 'X'))
+            return isHexDouble(text, i + 2);
+
+        //Mantissa: digits with at most one point, at least one digit
+        int digits = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c == '.') {
+                if (point)
+                    return false;
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0)
+            return false;
+
+        //Exponent: sign and at least one digit
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i = skipExponent(text, i + 1);
+            if (i < 0)
+                return false;
+        }
+        return isEndOfDouble(text, i);
+    }
+
+    /**
+     * Parse a text accepted by {@link #isDouble(CharSequence)}. Plain decimals with at most 15 significant
+     * digits and 22 fraction digits are divided exactly by a power of ten, which is what
+     * {@link Double#parseDouble(String)} does for them as well; other texts are handed to it
+     * @param text - Text to parse
+     * @return - Parsed value
+     */
+    public static double parseDouble(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        char first = text.charAt(0);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (mantissa != 0 || c != '0')
+                    digits++;
+                mantissa = mantissa * 10 + (c - '0');
+                if (point)
+                    scale++;
+                if (digits > 15 || scale >= smallPowersOfTen.length)
+                    return Double.parseDouble(text.toString());
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                return Double.parseDouble(text.toString());
+            }
+        }
+
+        double value = scale == 0 ? mantissa : mantissa / smallPowersOfTen[scale];
+        return negative ? -value : value;
+    }
+
+    private static boolean isHexDouble(CharSequence text, int i) {
+        int length = text.length();
+        int digits = 0;
+        boolean point = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (Character.digit(c, 16) >= 0 && c < 128) {
+                digits++;
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0 || i == length || (text.charAt(i) != 'p' && text.charAt(i) != 'P'))
+            return false;
+
+        //Binary exponent is mandatory
+        i = skipExponent(text, i + 1);
+        return i >= 0 && isEndOfDouble(text, i);
+    }
+
+    /**
+     * @return - Offset after the exponent digits, -1 if there are none
+     */
+    private static int skipExponent(CharSequence text, int i) {
+        int length = text.length();
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+'))
+            i++;
+        int start = i;
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+            i++;
+        return i == start ? -1 : i;
+    }
+
+    /**
+     * A double ends with the text or with a single type suffix
+     */
+    private static boolean isEndOfDouble(CharSequence text, int i) {
+        if (i == text.length())
+            return true;
+        char c = text.charAt(i);
+        return i == text.length() - 1 && (c == 'f' || c == 'F' || c == 'd' || c == 'D');
+    }
+
+    private static boolean matches(CharSequence text, int from, String expected) {
+        if (text.length() - from != expected.length())
+            return false;
+        for (int i = 0; i < expected.length(); i++) {
+            if (text.charAt(from + i) != expected.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9')
+            return c - '0';
+        return c < 128 ? -1 : Character.digit(c, 10);
+    }
+
+    /**
+     * @param date - Date as returned by {@link DateShape#parse(CharSequence)}
+     * @return - Year of the date
+     */
+    public static int year(int date) {
+        return date / 10000;
+    }
+
+    /**
+     * @param date - Date as returned by {@link DateShape#parse(CharSequence)}
+     * @return - Month of year of the date
+     */
+    public static int month(int date) {
+        return date / 100 % 100;
+    }
+
+    /**
+     * @param date - Date as returned by {@link DateShape#parse(CharSequence)}
+     * @return - Day of month of the date
+     */
+    public static int day(int date) {
+        return date % 100;
+    }
+
+    /**
+     * Count days like LocalDate.toEpochDay() without creating the date
+     * @param date - Date as returned by {@link DateShape#parse(CharSequence)}
+     * @return - Days since 1970-01-01
+     */
+    public static long epochDay(int date) {
+        long year = year(date);
+        int month = month(date);
+        long days = 365 * year + (year + 3) / 4 - (year + 99) / 100 + (year + 399) / 400;
+        days += (367 * month - 362) / 12 + day(date) - 1;
+        if (month > 2) {
+            boolean leap = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+            days -= leap ? 1 : 2;
+        }
+        return days - daysFromYearZeroTo1970;
+    }
+
+    /**
+     * Find the date of a day like LocalDate.ofEpochDay() without creating the date, the inverse of
+     * {@link #epochDay(int)}
+     * @param epochDay - Days since 1970-01-01, of a date between the years 0 and 9999
+     * @return - Date as yyyyMMdd number
+     */
+    public static int packedDate(int epochDay) {
+        //Count from a year starting in March, so the leap day is the last day of the year
+        long days = epochDay + daysFromYearZeroTo1970 - 60;
+        long adjust = 0;
+        if (days < 0) {
+            long cycles = (days + 1) / 146097 - 1;
+            adjust = cycles * 400;
+            days -= cycles * 146097;
+        }
+        long year = (400 * days + 591) / 146097;
+        long dayOfYear = days - (365 * year + year / 4 - year / 100 + year / 400);
+        if (dayOfYear < 0) {
+            year--;
+            dayOfYear = days - (365 * year + year / 4 - year / 100 + year / 400);
+        }
+        year += adjust;
+        int marchMonth = ((int) dayOfYear * 5 + 2) / 153;
+        int month = (marchMonth + 2) % 12 + 1;
+        int day = (int) dayOfYear - (marchMonth * 306 + 5) / 10 + 1;
+        year += marchMonth / 10;
+        return (int) year * 10000 + month * 100 + day;
+    }
+
+    /**
+     * A date pattern made of yyyy, MM, dd and single character literals, parsed by hand.
+     * It accepts the same texts as DateTimeFormatter.ofPattern with the default smart resolver, which also
+     * moves a day past the end of the month to its last day.
+     * Instances are immutable.
+     */
+    public static final class DateShape {
+
+        private final String pattern;
+        private final int yearAt;
+        private final int monthAt;
+        private final int dayAt;
+
+        private DateShape(String pattern, int yearAt, int monthAt, int dayAt) {
+            this.pattern = pattern;
+            this.yearAt = yearAt;
+            this.monthAt = monthAt;
+            this.dayAt = dayAt;
+        }
+
+        /**
+         * @param pattern - DateTimeFormatter pattern
+         * @return - Shape of the pattern, null if the pattern has other fields than yyyy, MM and dd
+         */
+        public static DateShape compile(String pattern) {
+            int yearAt = pattern.indexOf("yyyy");
+            int monthAt = pattern.indexOf("MM");
+            int dayAt = pattern.indexOf("dd");
+            if (yearAt < 0 || monthAt < 0 || dayAt < 0)
+                return null;
+
+            for (int i = 0; i < pattern.length(); i++) {
+                boolean field = (i >= yearAt && i < yearAt + 4) || (i >= monthAt && i < monthAt + 2)
+                        || (i >= dayAt && i < dayAt + 2);
+                if (!field && (Character.isLetter(pattern.charAt(i)) || pattern.charAt(i) == '\''))
+                    return null;
+            }
+            if (pattern.replaceAll("[^yMd]", "").length() != 8)
+                return null;
+            return new DateShape(pattern, yearAt, monthAt, dayAt);
+        }
+
+        /**
+         * Parse a date
+         * @param text - Text to parse
+         * @return - Date as yyyyMMdd number, {@link #noDate} if the text is not a date of the pattern,
+         * {@link #unknownDate} if the text contains a sign which only a DateTimeFormatter can judge
+         */
+        public int parse(CharSequence text) {
+            int length = text.length();
+            if (length != pattern.length()) {
+                for (int i = 0; i < length; i++) {
+                    if (text.charAt(i) == '+')
+                        return unknownDate;
+                }
+                return noDate;
+            }
+
+            for (int i = 0; i < length; i++) {
+                char p = pattern.charAt(i);
+                char c = text.charAt(i);
+                if (p == 'y' || p == 'M' || p == 'd') {
+                    if (c < '0' || c > '9')
+                        return c == '+' ? unknownDate : noDate;
+                } else if (c != p) {
+                    return noDate;
+                }
+            }
+
+            int year = number(text, yearAt, 4);
+            int month = number(text, monthAt, 2);
+            int day = number(text, dayAt, 2);
+            if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31)
+                return noDate;
+
+            //Smart resolving moves a day past the end of the month to its last day
+            if (month == 4 || month == 6 || month == 9 || month == 11)
+                day = Math.min(day, 30);
+            else if (month == 2)
+                day = Math.min(day, isLeap(year) ? 29 : 28);
+            return year * 10000 + month * 100 + day;
+        }
+
+        private static int number(CharSequence text, int at, int digits) {
+            int value = 0;
+            for (int i = at; i < at + digits; i++)
+                value = value * 10 + text.charAt(i) - '0';
+            return value;
+        }
+
+        private static boolean isLeap(int year) {
+            return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+        }
+    }
+}
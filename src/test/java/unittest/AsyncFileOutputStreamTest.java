@@ -0,0 +1,83 @@
+package unittest;
+
+import com.example.pst.AsyncFileOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Checks the double buffered output against the bytes handed to it
+ */
+public class AsyncFileOutputStreamTest {
+
+    /**
+     * Test that writes of every size across buffer boundaries reach the file in order
+     */
+    @Test
+    public void writesInOrder(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("output.jsonl");
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Random random = new Random(5);
+
+        try (AsyncFileOutputStream output = new AsyncFileOutputStream(path, 13, true)) {
+            for (int i = 0; i < 2000; i++) {
+                byte[] bytes = new byte[random.nextInt(40)];
+                random.nextBytes(bytes);
+                expected.write(bytes);
+                switch (i % 4) {
+                    case 0:
+                        output.write(bytes);
+                        break;
+                    case 1:
+                        output.write(ByteBuffer.wrap(bytes));
+                        break;
+                    case 2:
+                        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+                        direct.put(bytes).flip();
+                        output.write(direct);
+                        Assertions.assertFalse(direct.hasRemaining());
+                        break;
+                    default:
+                        for (byte b : bytes)
+                            output.write(b);
+                }
+                if (i % 500 == 0) {
+                    output.flush();
+                    Assertions.assertEquals(expected.size(), Files.size(path));
+                }
+            }
+        }
+
+        Assertions.assertArrayEquals(expected.toByteArray(), Files.readAllBytes(path));
+    }
+
+    /**
+     * Test that a failed write on the background thread is thrown to the caller
+     */
+    @Test
+    public void reportsWriteFailure() throws IOException {
+        Path full = Paths.get("/dev/full");
+        Assumptions.assumeTrue(Files.isWritable(full));
+
+        AsyncFileOutputStream output = new AsyncFileOutputStream(full, 16, false);
+        Assertions.assertThrows(IOException.class, () -> {
+            try {
+                for (int i = 0; i < 100; i++)
+                    output.write(new byte[16]);
+                output.flush();
+            } finally {
+                output.close();
+            }
+        });
+        Assertions.assertThrows(IOException.class, () -> output.write(1));
+    }
+}
@@ -0,0 +1,94 @@
+package unittest;
+
+import com.example.pst.BatchConverter;
+import com.example.pst.ConversionOptions;
+import com.example.pst.ConversionReport;
+import com.example.pst.Main;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Tests for converting many files in one run
+ */
+public class BatchConverterTest {
+
+    /**
+     * Test that every file of a batch gets its own output, equal to converting it alone, and a failing file
+     * is reported without stopping the others
+     */
+    @Test
+    public void convertsFilesConcurrently(@TempDir Path tempDir) throws IOException {
+        Path inputs = Files.createDirectory(tempDir.resolve("inputs"));
+        for (int file = 0; file < 6; file++) {
+            List<String> lines = new ArrayList<>();
+            lines.add("id|name|joined");
+            for (int i = 0; i < 200 * file; i++)
+                lines.add(i + "|Name " + file + "|2022/03/" + String.format("%02d", i % 28 + 1));
+            Files.write(inputs.resolve("part-" + file + ".txt"), lines);
+        }
+        Files.write(inputs.resolve("broken.txt"), Arrays.asList("no delimiter", "here"));
+
+        Main main = new Main();
+        ConversionOptions options = new ConversionOptions();
+        options.setOutputDirectory(tempDir.resolve("outputs").toString());
+        options.setParallelFiles(3);
+        List<Path> files = BatchConverter.resolveInputs(Collections.singletonList(inputs.toString()));
+        Assertions.assertEquals(7, files.size());
+        List<ConversionReport> reports = new BatchConverter(main).convert(files, options);
+
+        Assertions.assertEquals(files, reports.stream().map(ConversionReport::getInput).collect(Collectors.toList()));
+        Assertions.assertFalse(reports.get(0).isSuccessful());
+        Assertions.assertTrue(reports.get(0).getFailure() instanceof IllegalArgumentException);
+        for (int file = 0; file < 6; file++) {
+            ConversionReport report = reports.get(file + 1);
+            Assertions.assertTrue(report.isSuccessful(), report.toString());
+            Assertions.assertEquals(tempDir.resolve("outputs").resolve("part-" + file + ".jsonl"),
+                    report.getOutput());
+            Assertions.assertEquals(200 * file, report.getRows());
+            Assertions.assertEquals(Files.size(report.getOutput()), report.getOutputBytes());
+
+            main.convertFileWithIntelligence(report.getInput().toString());
+            Assertions.assertEquals(Files.readAllLines(Paths.get(Main.outputFilename)),
+                    Files.readAllLines(report.getOutput()));
+        }
+    }
+
+    /**
+     * Test that globs and lists are expanded and outputs follow the pattern
+     */
+    @Test
+    public void resolvesGlobsAndLists(@TempDir Path tempDir) throws IOException {
+        for (String name : new String[]{"b.csv", "a.csv", "c.txt.gz"})
+            Files.write(tempDir.resolve(name), Collections.singletonList("a,b"));
+        Path list = tempDir.resolve("inputs.lst");
+        Files.write(list, Arrays.asList(tempDir.resolve("c.txt.gz").toString(), ""));
+
+        List<Path> inputs = BatchConverter.resolveInputs(
+                Arrays.asList(tempDir.resolve("*.csv").toString(), "@" + list));
+        Assertions.assertEquals(Arrays.asList(tempDir.resolve("a.csv"), tempDir.resolve("b.csv"),
+                tempDir.resolve("c.txt.gz")), inputs);
+
+        ConversionOptions options = new ConversionOptions();
+        options.setOutputDirectory(tempDir.toString());
+        options.setOutputPattern("{name}.jsonl.gz");
+        Assertions.assertEquals(tempDir.resolve("c.jsonl.gz"), BatchConverter.outputFor(inputs.get(2), options));
+        options.setOutputPattern("{file}.jsonl");
+        Assertions.assertEquals(tempDir.resolve("a.csv.jsonl"), BatchConverter.outputFor(inputs.get(0), options));
+
+        options.setOutputPattern("x{name}.jsonl");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new BatchConverter(new Main()).convert(Arrays.asList(tempDir.resolve("a.csv"),
+                        tempDir.resolve("a.txt")), options));
+    }
+}
@@ -0,0 +1,56 @@
+package unittest;
+
+import com.example.pst.ConverterFactory;
+import com.example.pst.IntelligentJsonLineConverter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Tests for sharing converters between files
+ */
+public class ConverterFactoryTest {
+
+    /**
+     * Test that converters are shared by delimiter and header and the least recently used one is dropped
+     */
+    @Test
+    public void cachesByDelimiterAndHeader() {
+        ConverterFactory factory = new ConverterFactory(2);
+        IntelligentJsonLineConverter people = factory.intelligentConverter(",", "name,age");
+        Assertions.assertSame(people, factory.intelligentConverter(",", "name,age"));
+        Assertions.assertNotSame(people, factory.intelligentConverter(",", "name,city"));
+        Assertions.assertNotSame(people, factory.intelligentConverter("\\|", "name,age"));
+        Assertions.assertEquals(2, factory.size());
+
+        //The first converter was the least recently used one
+        Assertions.assertNotSame(people, factory.intelligentConverter(",", "name,age"));
+        Assertions.assertSame(factory.converter(","), factory.converter(","));
+        Assertions.assertEquals("{\"name\":\"Ann\",\"age\":3}",
+                factory.intelligentConverter(",", "name,age").intelligentConvert("Ann,3"));
+    }
+
+    /**
+     * Test that threads asking for the same converter at once all get the same instance
+     */
+    @Test
+    public void sharesConvertersBetweenThreads() {
+        ConverterFactory factory = new ConverterFactory(ConverterFactory.defaultCapacity);
+        List<CompletableFuture<IntelligentJsonLineConverter>> futures = IntStream.range(0, 64)
+                .mapToObj(i -> CompletableFuture.supplyAsync(
+                        () -> factory.intelligentConverter(",", "header " + i % 4 + ",value")))
+                .collect(Collectors.toList());
+
+        List<IntelligentJsonLineConverter> converters = new ArrayList<>();
+        for (CompletableFuture<IntelligentJsonLineConverter> future : futures)
+            converters.add(future.join());
+        for (int i = 0; i < converters.size(); i++)
+            Assertions.assertSame(converters.get(i % 4), converters.get(i));
+        Assertions.assertEquals(4, factory.size());
+    }
+}
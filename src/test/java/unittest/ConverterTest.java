@@ -1,9 +1,12 @@
 package unittest;
 
 import com.example.pst.Converter;
+import com.example.pst.ConverterFactory;
+import com.example.pst.JsonRowEncoder;
 import com.example.pst.JsonLineConverter;
 import com.example.pst.Main;
 import com.example.pst.Person;
+import com.example.pst.RowBuffer;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonDeserializer;
@@ -40,6 +43,25 @@ public class ConverterTest {
                 LocalDate.parse(json.getAsString(), DateTimeFormatter.ofPattern(Main.outputDatePattern));
     }
 
+    /**
+     * Test that the Person fields written from a row are the json Gson writes for the Person
+     */
+    @Test
+    public void convertLineToRow(){
+        Converter converter = new JsonLineConverter(",");
+        Gson writer = new ConverterFactory(ConverterFactory.defaultCapacity).getGson();
+        JsonRowEncoder encoder = new JsonRowEncoder(JsonLineConverter.personFields, true, false);
+        RowBuffer row = new RowBuffer(JsonLineConverter.personFields.size());
+
+        for (String line : new String[]{"\"Marie, Salomea\",Sklodowska |,\"Curie\",Female,04-07-1934,3000",
+                "<a>,,\"\",x,1934-13-01,-5", "a,b,c,d,+12020-01-01,7"}) {
+            converter.convert(line, row);
+            StringBuilder json = new StringBuilder();
+            encoder.appendRow(row, json);
+            Assertions.assertEquals(writer.toJson(converter.convert(line)), json.toString(), line);
+        }
+    }
+
     /**
      * Test that a comma seperated line can be converted successfully
      */
@@ -0,0 +1,116 @@
+package unittest;
+
+import com.example.pst.ConversionOptions;
+import com.example.pst.Dialect;
+import com.example.pst.DialectSniffer;
+import com.example.pst.Main;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that the delimiter, quoting, line terminator and header are found from the first lines of a file
+ */
+public class DialectSnifferTest {
+
+    /**
+     * Test that each candidate delimiter is found, and that a delimiter inside values does not win
+     */
+    @Test
+    public void sniffDelimiters(){
+        Assertions.assertEquals(',', sniff("name,age,city\nbob,31,x|y\nann,27,z|w\n").getDelimiter());
+        Assertions.assertEquals('|', sniff("name|amount|city\nbob|1,5|Oslo\nann|2|Rome\n").getDelimiter());
+        Assertions.assertEquals('\t', sniff("name\tage\nbob\t31\nann\t27\n").getDelimiter());
+        Assertions.assertEquals(';', sniff("name;amount\nbob;1,5\nann;2,25\nsam;3\n").getDelimiter());
+
+        //A single line splitting on both keeps the old preference for commas
+        Assertions.assertEquals(",", sniff("a,b|c").getDelimeter());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> sniff("abc\ndef\n"));
+    }
+
+    /**
+     * Test that the quote character and the escape style are found
+     */
+    @Test
+    public void sniffQuoting(){
+        Dialect doubled = sniff("name,note\n\"bob\",\"a \"\"b\"\", c\"\nann,\"d, e\"\n");
+        Assertions.assertEquals('"', doubled.getQuote());
+        Assertions.assertEquals(Dialect.Escape.DOUBLED, doubled.getEscape());
+
+        Dialect backslash = sniff("name,note\n\"bob\",\"a \\\"b\\\", c\"\nann,\"d \\\" e\"\n");
+        Assertions.assertEquals(Dialect.Escape.BACKSLASH, backslash.getEscape());
+        Assertions.assertEquals(',', backslash.getDelimiter());
+
+        Dialect single = sniff("name;note\n'bob';'a; b'\n'ann';'c'\n");
+        Assertions.assertEquals('\'', single.getQuote());
+        Assertions.assertEquals(';', single.getDelimiter());
+    }
+
+    /**
+     * Test that the line terminator is found and that a cut last line is ignored
+     */
+    @Test
+    public void sniffLineTerminators(){
+        Assertions.assertEquals(Dialect.LineTerminator.CRLF, sniff("a,b\r\n1,2\r\n").getLineTerminator());
+        Assertions.assertEquals(Dialect.LineTerminator.CR, sniff("a,b\r1,2\r").getLineTerminator());
+        Assertions.assertEquals(Dialect.LineTerminator.LF, sniff("a,b").getLineTerminator());
+
+        ByteBuffer cut = ByteBuffer.wrap("a|b\n1|2\n3,4,5,6".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals('|', DialectSniffer.sniff(cut, false).getDelimiter());
+    }
+
+    /**
+     * Test that a header is found by the types and lengths of the cells below it
+     */
+    @Test
+    public void sniffHeader(){
+        Assertions.assertTrue(sniff("name,age,born\nbob,31,1990-01-02\nann,27,1994-03-04\n").hasHeader());
+        Assertions.assertFalse(sniff("bob,31,1990-01-02\nann,27,1994-03-04\n").hasHeader());
+        Assertions.assertFalse(sniff("ab,cd\nef,gh\nij,kl\n").hasHeader());
+        Assertions.assertTrue(sniff("a,b\n").hasHeader());
+        Assertions.assertEquals("column1,column2,column3", sniff("bob,31,x\nann,27,y\n").headingOf("bob,31,x"));
+    }
+
+    /**
+     * Test that a dialect is written and read back
+     */
+    @Test
+    public void formatDialect(){
+        Dialect dialect = new Dialect('\t', '\'', Dialect.Escape.BACKSLASH, Dialect.LineTerminator.CRLF, false);
+        Assertions.assertEquals(dialect, Dialect.parse(dialect.format()));
+        Assertions.assertEquals("\\|", Dialect.of("\\|").getDelimeter());
+    }
+
+    /**
+     * Test that a tab separated file without header converts the same memory mapped and as a stream
+     */
+    @Test
+    public void convertWithoutHeader(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.tsv");
+        Files.write(input, Arrays.asList("bob\t31\t\"a\\\"b\"", "ann\t27\tc"));
+
+        for (boolean memoryMapped : new boolean[]{true, false}) {
+            ConversionOptions options = new ConversionOptions();
+            options.setMemoryMapped(memoryMapped);
+            options.setOutputFile(tempDir.resolve("output" + memoryMapped + ".jsonl").toString());
+            new Main().convertFileWithIntelligence(input.toString(), options);
+
+            List<String> lines = Files.readAllLines(Paths.get(options.getOutputFile()));
+            Assertions.assertEquals(Arrays.asList("{\"column1\":\"bob\",\"column2\":31,\"column3\":\"a\\\\\\\"b\"}",
+                    "{\"column1\":\"ann\",\"column2\":27,\"column3\":\"c\"}"), lines);
+        }
+    }
+
+    private static Dialect sniff(String text){
+        return DialectSniffer.sniff(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), true);
+    }
+}
@@ -0,0 +1,61 @@
+package unittest;
+
+import com.example.pst.FieldCleaner;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Checks the range based field cleaning against the regex it replaces
+ */
+public class FieldCleanerTest {
+
+    private static final String regexToClean = "^\"|\\||\"$|,$";
+
+    /**
+     * Test that cleaning gives the same text as the regex followed by trim
+     */
+    @Test
+    public void cleanMatchesRegex(){
+        String[] samples = {"", "\"", "\"\"", ",", "|", " ", "a", "\"a\"", " \"a\" ", "a,", "a|b", "|a|", "\"|a",
+                "a\"|", "a|\"", "a\"\n", "a,\r\n", "a\"\u2028", "\"\u2029", ",\u0085", "a\u2028", "\"a\r", "a\n\"",
+                "\"\"\"", ",,", " ,", "a ,", "\"x,y\"", "Curie |", "\u00a0a\u00a0"};
+        for (String sample : samples)
+            assertClean(sample);
+
+        Random random = new Random(17);
+        String alphabet = "\"|, \tab\n\r\u0085\u2028\u2029\u00fc";
+        for (int i = 0; i < 200000; i++) {
+            char[] chars = new char[random.nextInt(7)];
+            for (int k = 0; k < chars.length; k++)
+                chars[k] = alphabet.charAt(random.nextInt(alphabet.length()));
+            assertClean(new String(chars));
+        }
+    }
+
+    private static void assertClean(String field){
+        String cleaned = field.replaceAll(regexToClean, "").trim();
+        String expected = cleaned.isEmpty() ? null : cleaned;
+
+        //The field is cleaned in place, inside a longer line
+        String line = "x" + field + "y";
+        Assertions.assertEquals(expected, FieldCleaner.clean(line, 1, line.length() - 1), field);
+
+        long range = FieldCleaner.range(line, 1, line.length() - 1);
+        if (range != FieldCleaner.notContiguous)
+            Assertions.assertEquals(cleaned, line.substring(FieldCleaner.start(range), FieldCleaner.end(range)), field);
+
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer input = ByteBuffer.wrap(bytes);
+        long byteRange = FieldCleaner.range(input, 1, bytes.length - 1);
+        Assertions.assertEquals(range == FieldCleaner.notContiguous, byteRange == FieldCleaner.notContiguous, field);
+        if (byteRange != FieldCleaner.notContiguous) {
+            String text = new String(bytes, FieldCleaner.start(byteRange),
+                    FieldCleaner.end(byteRange) - FieldCleaner.start(byteRange), StandardCharsets.UTF_8);
+            Assertions.assertEquals(cleaned, text, field);
+        }
+    }
+}
@@ -1,21 +1,56 @@
 package unittest;
 
+import com.example.pst.Checkpoint;
+import com.example.pst.ColumnType;
+import com.example.pst.ColumnarFormat;
+import com.example.pst.ConversionMetrics;
+import com.example.pst.ConversionOptions;
+import com.example.pst.ConversionReport;
+import com.example.pst.IntelligentJsonLineConverter;
 import com.example.pst.Main;
+import com.example.pst.OutputFormat;
+import com.example.pst.RejectsFile;
+import com.example.pst.RowBuffer;
+import com.example.pst.Utf8Builder;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import javax.management.ObjectName;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created by Setu on 3/3/22
@@ -129,6 +164,453 @@ public class IntelligentConverterTest {
         );
     }
 
+    /**
+     * Test that fields are written in header order and strings are escaped like Gson does
+     */
+    @Test
+    public void testJsonInHeaderOrder(){
+        IntelligentJsonLineConverter converter = new IntelligentJsonLineConverter(",", "b,a,c,d,e", gson);
+        String text = "<tag> & 'x'=\u2028\\\u0001\\\"end";
+
+        String json = converter.intelligentConvert("\"" + text + "\",12,1.50,,2020/01/31");
+
+        Assertions.assertEquals("{\"b\":" + gson.toJson(text) + ",\"a\":12,\"c\":1.5,\"e\":\"2020-01-31\"}", json);
+    }
+
+    /**
+     * Test that a line is converted to typed cells of a reused row, strings pointing into the line
+     */
+    @Test
+    public void testRowCells(){
+        IntelligentJsonLineConverter converter = new IntelligentJsonLineConverter(",", "a,b,c,d,e,f", gson);
+        RowBuffer row = new RowBuffer(6);
+        String line = "12, 1.5 ,\"x, y\",2020/01/31,,+12020-01-01";
+
+        Assertions.assertTrue(converter.intelligentConvert(line, row));
+        Assertions.assertEquals(12, row.getLong(0));
+        Assertions.assertEquals(1.5, row.getDouble(1));
+        Assertions.assertEquals(RowBuffer.textCell, row.kind(2));
+        Assertions.assertEquals("x, y", row.getString(2));
+        Assertions.assertEquals(LocalDate.of(2020, 1, 31).toEpochDay(), row.getEpochDay(3));
+        Assertions.assertTrue(row.isNull(4));
+        Assertions.assertEquals(LocalDate.of(12020, 1, 1).toEpochDay(), row.getEpochDay(5));
+
+        byte[] bytes = "x,y,,1,2,3".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertTrue(converter.intelligentConvert(ByteBuffer.wrap(bytes), 0, bytes.length, row));
+        Assertions.assertEquals(RowBuffer.utf8Cell, row.kind(0));
+        Assertions.assertEquals(2, row.getStart(1));
+        Assertions.assertTrue(row.isNull(2));
+        Assertions.assertEquals(RowBuffer.longCell, row.kind(5));
+        Assertions.assertFalse(converter.intelligentConvert("1,2", row));
+    }
+
+    /**
+     * Test that column types are inferred from a sample and cells not matching their column convert as before
+     */
+    @Test
+    public void testInferredSchemaKeepsOutput(){
+        IntelligentJsonLineConverter converter = new IntelligentJsonLineConverter(",", "a,b,c,d,e", gson);
+        IntelligentJsonLineConverter typed = converter.inferSchema(Arrays.asList(
+                "1,2.5,2020-01-01,x,", "-3,1e3,1999-12-31,\"y, z\",1"));
+
+        Assertions.assertEquals(
+                Arrays.asList(ColumnType.LONG, ColumnType.DOUBLE, ColumnType.DATE, ColumnType.STRING, ColumnType.LONG),
+                IntStream.range(0, 5).mapToObj(typed.getSchema()::type).collect(Collectors.toList()));
+
+        String[] lines = {"1,2.5,2020-01-01,x,", "x,5,31-01-2020,12,", "9223372036854775808,NaNa,2020/02/30,1e5,a",
+                ",.5,2021-02-29,2020-01-01,", "+7,-Infinityx,,+,-", "1.0,0x10p1,2020-13-01,N,Infinityx"};
+        for (String line : lines)
+            Assertions.assertEquals(converter.intelligentConvert(line), typed.intelligentConvert(line), line);
+    }
+
+    /**
+     * Test that converting the UTF-8 bytes of a line gives the same json as converting the line as text
+     */
+    @Test
+    public void testByteConversionMatchesText(){
+        IntelligentJsonLineConverter converter = new IntelligentJsonLineConverter(",", "a,b,c,d,e", gson);
+        IntelligentJsonLineConverter typed = converter.inferSchema(Arrays.asList(
+                "1,2.5,2020-01-01,x,", "-3,1e3,1999-12-31,\"y, z\",1"));
+        String[] cells = {"", " ", "\"", "\"\"", ",", "|", "a|b", "|12|", "1|2", " 12 ", "\"12\"", "-0", "+7",
+                "9223372036854775808", "1.50", "-0.0", "0.1", "123456789.123456789", "1e3", "0x1p3", "2f",
+                "2020-01-31", "2020/02/30", "31-01-2020", "+12020-01-01", "01-01-+2020", "\u00fcber", "\u0661\u0662",
+                "-\u0663", "1\u00b2", "x\u2028", "x\"\u2028", "x,\u0085", "\u2029\"", "<&>='", "tab\tx", "\"a\"\"b\"",
+                "\ud83d\ude00", "N", "Infinityx", ".5", "caf\u00e9 ", "\u00a0", "\u20ac12", "\\"};
+
+        Random random = new Random(3);
+        List<String> lines = new ArrayList<>(Arrays.asList("", "1,2", "a,b,c,d,e,f", "\"x,y\",1,2,3,4"));
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder line = new StringBuilder();
+            for (int column = 0; column < 5; column++)
+                line.append(column == 0 ? "" : ",").append(cells[random.nextInt(cells.length)]);
+            lines.add(line.toString());
+        }
+
+        for (String line : lines) {
+            for (IntelligentJsonLineConverter c : new IntelligentJsonLineConverter[]{converter, typed}) {
+                String expected = c.intelligentConvert(line);
+                byte[] bytes = ("#" + line + "#").getBytes(StandardCharsets.UTF_8);
+                ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+                direct.put(bytes);
+
+                for (ByteBuffer input : new ByteBuffer[]{ByteBuffer.wrap(bytes), direct}) {
+                    Utf8Builder out = new Utf8Builder();
+                    out.append('x');
+                    boolean converted = c.intelligentConvert(input, 1, bytes.length - 1, out);
+                    Assertions.assertEquals(expected != null, converted, line);
+                    Assertions.assertEquals(expected == null ? "x" : "x" + expected, out.toString(), line);
+                }
+            }
+        }
+
+        ByteBuffer invalid = ByteBuffer.wrap(new byte[]{'a', ',', (byte) 0xC3, ',', 'b', ',', 'c', ',', 'd'});
+        Assertions.assertThrows(UncheckedIOException.class,
+                () -> converter.intelligentConvert(invalid, 0, invalid.limit(), new Utf8Builder()));
+    }
+
+    /**
+     * Test that converting with several workers gives the same output as converting sequentially
+     */
+    @Test
+    public void testParallelConversionKeepsOrder(@TempDir Path tempDir) throws IOException {
+        Main main = new Main();
+        Path inputPath = tempDir.resolve("input.txt");
+        List<String> lines = new ArrayList<>();
+        lines.add("id,name,score,joined");
+        for (int i = 0; i < 5000; i++)
+            lines.add(i + ",\"Name, " + i + "\"," + (i * 0.5) + ",2022-03-" + String.format("%02d", i % 28 + 1));
+        Files.write(inputPath, lines);
+
+        main.convertFileWithIntelligence(inputPath.toString());
+        List<String> sequential = Files.readAllLines(Paths.get(Main.outputFilename));
+
+        ConversionOptions options = new ConversionOptions();
+        options.setWorkers(4);
+        options.setRegionSize(1000);
+        main.convertFileWithIntelligence(inputPath.toString(), options);
+        List<String> parallel = Files.readAllLines(Paths.get(Main.outputFilename));
+
+        options.setMemoryMapped(false);
+        options.setBatchSize(7);
+        main.convertFileWithIntelligence(inputPath.toString(), options);
+        List<String> streamed = Files.readAllLines(Paths.get(Main.outputFilename));
+
+        Assertions.assertEquals(5000, parallel.size());
+        Assertions.assertEquals(sequential, parallel);
+        Assertions.assertEquals(sequential, streamed);
+    }
+
+    /**
+     * Test that gzip input is detected by extension and by magic bytes, and that *.gz output is gzip compressed
+     */
+    @Test
+    public void testGzipInputAndOutput(@TempDir Path tempDir) throws IOException {
+        Main main = new Main();
+        List<String> lines = new ArrayList<>();
+        lines.add("id,name,joined");
+        for (int i = 0; i < 3000; i++)
+            lines.add(i + ",\"Name, " + i + "\",2022-03-" + String.format("%02d", i % 28 + 1));
+
+        Path plain = tempDir.resolve("input.txt");
+        Files.write(plain, lines);
+        main.convertFileWithIntelligence(plain.toString());
+        List<String> expected = Files.readAllLines(Paths.get(Main.outputFilename));
+
+        Path gzip = tempDir.resolve("input.txt.gz");
+        Path disguised = tempDir.resolve("input.csv");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzip))) {
+            out.write((String.join("\n", lines) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        Files.copy(gzip, disguised);
+
+        ConversionOptions options = new ConversionOptions();
+        options.setWorkers(3);
+        options.setBatchSize(100);
+        for (Path input : new Path[]{gzip, disguised}) {
+            Path output = tempDir.resolve(input.getFileName() + ".jsonl.gz");
+            options.setOutputFile(output.toString());
+            main.convertFileWithIntelligence(input.toString(), options);
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(output)), StandardCharsets.UTF_8))) {
+                Assertions.assertEquals(expected, reader.lines().collect(Collectors.toList()), input.toString());
+            }
+        }
+    }
+
+    /**
+     * Test that tail runs convert only complete lines appended since the last run, and that a resumed run cuts
+     * the output to the checkpoint before continuing
+     */
+    @Test
+    public void testResumeAndTail(@TempDir Path tempDir) throws IOException {
+        Main main = new Main();
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < 3000; i++)
+            rows.add(i + ",\"Name, " + i + "\"," + (i % 7 == 0 ? "x" : i * 0.5)
+                    + ",2022-03-" + String.format("%02d", i % 28 + 1));
+        String header = "id,name,score,joined\n";
+        String first = String.join("\n", rows.subList(0, 1000)) + "\n";
+        String second = String.join("\n", rows.subList(1000, 2000)) + "\n";
+        String third = String.join("\n", rows.subList(2000, 3000)) + "\n";
+
+        Path input = tempDir.resolve("input.txt");
+        Files.write(input, (header + first + second + third).getBytes(StandardCharsets.UTF_8));
+        main.convertFileWithIntelligence(input.toString());
+        List<String> expected = Files.readAllLines(Paths.get(Main.outputFilename));
+
+        for (String name : new String[]{"out.jsonl", "out.jsonl.gz"}) {
+            Path output = tempDir.resolve(name);
+            ConversionOptions options = new ConversionOptions();
+            options.setOutputFile(output.toString());
+            options.setWorkers(2);
+            options.setRegionSize(512);
+            options.setCheckpointInterval(1000);
+            options.setTail(true);
+
+            //The last line is still being written
+            Files.write(input, (header + first + second.substring(0, 20)).getBytes(StandardCharsets.UTF_8));
+            main.convertFileWithIntelligence(input.toString(), options);
+            Assertions.assertEquals(expected.subList(0, 1000), readOutput(output));
+
+            Files.write(input, second.substring(20).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            main.convertFileWithIntelligence(input.toString(), options);
+            Assertions.assertEquals(expected.subList(0, 2000), readOutput(output));
+
+            //Output written after the last checkpoint of a crashed run is cut off
+            Files.write(output, "partial".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            Files.write(input, third.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            options.setTail(false);
+            options.setResume(true);
+            main.convertFileWithIntelligence(input.toString(), options);
+            Assertions.assertEquals(expected, readOutput(output), name);
+
+            Checkpoint checkpoint = Checkpoint.read(Checkpoint.pathFor(output)).get();
+            Assertions.assertEquals(Files.size(input), checkpoint.getInputOffset());
+            Assertions.assertEquals(Files.size(output), checkpoint.getOutputOffset());
+            Assertions.assertEquals(ColumnType.MIXED, checkpoint.getSchema().type(2));
+            Assertions.assertEquals(ColumnType.DATE, checkpoint.getSchema().type(3));
+        }
+    }
+
+    /**
+     * Test that a resumed run cuts the rejects file back to the checkpoint, so lines rejected by a crashed run
+     * after its last checkpoint are not written twice
+     */
+    @Test
+    public void testResumeKeepsRejects(@TempDir Path tempDir) throws IOException {
+        Main main = new Main();
+        StringBuilder first = new StringBuilder("id,name\n");
+        StringBuilder second = new StringBuilder();
+        List<String> rejected = new ArrayList<>();
+        int rejectedLater = 0;
+        for (int i = 0; i < 2000; i++) {
+            String line = i % 97 == 5 ? "bad " + i : i + ",name " + i;
+            (i < 1000 ? first : second).append(line).append('\n');
+            if (line.startsWith("bad"))
+                rejected.add(line);
+            if (line.startsWith("bad") && i >= 1000)
+                rejectedLater++;
+        }
+        String oversized = String.join("", Collections.nCopies(300, "w"));
+        second.append(oversized).append('\n');
+        rejected.add(oversized);
+        rejectedLater++;
+
+        Path input = tempDir.resolve("input.txt");
+        Path output = tempDir.resolve("out.jsonl");
+        Path rejects = RejectsFile.pathFor(output);
+        Files.write(rejects, "stale\n".getBytes(StandardCharsets.UTF_8));
+        ConversionOptions options = new ConversionOptions();
+        options.setOutputFile(output.toString());
+        options.setWorkers(3);
+        options.setRegionSize(512);
+        options.setCheckpointInterval(1000);
+        options.setMaxRecordSize(200);
+        options.setTail(true);
+
+        Files.write(input, first.toString().getBytes(StandardCharsets.UTF_8));
+        main.convertFileWithIntelligence(input.toString(), options);
+        Checkpoint checkpoint = Checkpoint.read(Checkpoint.pathFor(output)).get();
+        Assertions.assertEquals(Files.size(rejects), checkpoint.getRejectsOffset());
+        byte[] checkpointBytes = Files.readAllBytes(Checkpoint.pathFor(output));
+
+        //A run which converted the rest but crashed before writing its last checkpoint
+        Files.write(input, second.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        main.convertFileWithIntelligence(input.toString(), options);
+        Files.write(Checkpoint.pathFor(output), checkpointBytes);
+
+        options.setTail(false);
+        options.setResume(true);
+        ConversionReport report = main.convertFileWithIntelligence(input.toString(), options);
+        Assertions.assertEquals(rejected, Files.readAllLines(rejects));
+        Assertions.assertEquals(2000 - (rejected.size() - 1), readOutput(output).size());
+        Assertions.assertEquals(rejectedLater, report.getSkippedRows());
+        Assertions.assertEquals(Files.size(rejects), Checkpoint.read(Checkpoint.pathFor(output)).get()
+                .getRejectsOffset());
+    }
+
+    /**
+     * Test that columnar output holds the same values as the json lines, typed per row group
+     */
+    @Test
+    public void testColumnarOutput(@TempDir Path tempDir) throws IOException {
+        Main main = new Main();
+        List<String> lines = new ArrayList<>();
+        lines.add("id,name,score,joined,mixed,id");
+        for (int i = 0; i < 2000; i++) {
+            String mixed = i < 1000 ? (i % 2 == 0 ? Integer.toString(i) : i + ".5")
+                    : (i % 3 == 0 ? "2022-01-0" + (i % 9 + 1) : "text " + i % 10);
+            lines.add(i + ",\"Name, " + i % 50 + "\"," + (i % 11 == 0 ? "" : Double.toString(i * 0.25)) + ","
+                    + (i % 13 == 0 ? "+10000-01-01" : "2022-03-" + String.format("%02d", i % 28 + 1)) + ","
+                    + mixed + "," + (i + 1L << 40));
+        }
+        Path input = tempDir.resolve("input.txt");
+        Files.write(input, lines);
+        main.convertFileWithIntelligence(input.toString());
+        List<String> expected = Files.readAllLines(Paths.get(Main.outputFilename));
+
+        for (boolean memoryMapped : new boolean[]{true, false}) {
+            ConversionOptions options = new ConversionOptions();
+            options.setOutputFormat(OutputFormat.COLUMNAR);
+            options.setOutputFile(tempDir.resolve("output.pstc").toString());
+            options.setMemoryMapped(memoryMapped);
+            options.setWorkers(2);
+            options.setRegionSize(4096);
+            options.setBatchSize(100);
+            Assertions.assertEquals(2000, main.convertFileWithIntelligence(input.toString(), options).getRows());
+
+            List<Map<String, Object>> rows;
+            try (InputStream in = Files.newInputStream(tempDir.resolve("output.pstc"))) {
+                rows = ColumnarFormat.read(in);
+            }
+            Assertions.assertEquals(expected.size(), rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                JsonObject json = JsonParser.parseString(expected.get(i)).getAsJsonObject();
+                Map<String, Object> row = rows.get(i);
+                Assertions.assertEquals(json.keySet(), row.keySet(), expected.get(i));
+                for (Map.Entry<String, Object> cell : row.entrySet()) {
+                    Object value = cell.getValue();
+                    JsonElement element = json.get(cell.getKey());
+                    if (value instanceof Double)
+                        Assertions.assertEquals(element.getAsDouble(), (Double) value, expected.get(i));
+                    else
+                        Assertions.assertEquals(element.getAsString(), value.toString(), expected.get(i));
+                }
+            }
+            Assertions.assertTrue(rows.get(0).get("id") instanceof Long);
+            Assertions.assertTrue(rows.get(1).get("joined") instanceof LocalDate);
+            Assertions.assertTrue(rows.get(1).get("mixed") instanceof Double);
+        }
+    }
+
+    /**
+     * Test that lines with numbers json cannot hold, NaN and infinite, are rejected instead of ending the conversion
+     */
+    @Test
+    public void testNonFiniteNumbersRejected(@TempDir Path tempDir) throws IOException {
+        IntelligentJsonLineConverter converter = new IntelligentJsonLineConverter(",", "id,score", new Gson());
+        for (String line : new String[]{"1,NaN", "2,1e999", "3,-Infinity", "4,NaN"}) {
+            Assertions.assertNull(converter.intelligentConvert(line), line);
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            Assertions.assertFalse(converter.intelligentConvert(ByteBuffer.wrap(bytes), 0, bytes.length,
+                    new Utf8Builder()), line);
+        }
+        Assertions.assertEquals("{\"id\":5,\"score\":1.5}", converter.intelligentConvert("5,1.5"));
+
+        List<String> lines = new ArrayList<>();
+        List<String> rejected = new ArrayList<>();
+        lines.add("id,score");
+        for (int i = 0; i < 200; i++) {
+            String line = i + "," + (i % 50 == 3 ? "NaN" : i % 50 == 9 ? "1e999" : i + ".5");
+            lines.add(line);
+            if (!line.endsWith(".5"))
+                rejected.add(line);
+        }
+        Path input = tempDir.resolve("input.txt");
+        Files.write(input, lines);
+
+        for (boolean memoryMapped : new boolean[]{true, false}) {
+            Path output = tempDir.resolve("output" + memoryMapped + ".jsonl");
+            ConversionOptions options = new ConversionOptions();
+            options.setOutputFile(output.toString());
+            options.setMemoryMapped(memoryMapped);
+            options.setWorkers(2);
+            options.setRegionSize(256);
+            options.setBatchSize(20);
+
+            ConversionReport report = new Main().convertFileWithIntelligence(input.toString(), options);
+            Assertions.assertEquals(200 - rejected.size(), report.getRows());
+            Assertions.assertEquals(rejected.size(), report.getSkippedRows());
+            List<String> rejects = Files.readAllLines(RejectsFile.pathFor(output));
+            rejects.sort(Comparator.comparingInt(line -> Integer.parseInt(line.substring(0, line.indexOf(',')))));
+            Assertions.assertEquals(rejected, rejects);
+        }
+    }
+
+    /**
+     * Test that lines which cannot be converted go to the rejects file and the counters are reported
+     */
+    @Test
+    public void testMetricsAndRejects(@TempDir Path tempDir) throws Exception {
+        Main main = new Main();
+        List<String> lines = new ArrayList<>();
+        List<String> rejected = new ArrayList<>();
+        lines.add("id,name,joined");
+        for (int i = 0; i < 500; i++) {
+            lines.add(i + ",name " + i + "," + (i % 2 == 0 ? "2022-01-01" : ""));
+            if (i % 100 == 7) {
+                lines.add("bad " + i);
+                rejected.add("bad " + i);
+            }
+        }
+        Path input = tempDir.resolve("input.txt");
+        Files.write(input, lines);
+
+        for (boolean memoryMapped : new boolean[]{true, false}) {
+            Path output = tempDir.resolve("output.jsonl");
+            ConversionOptions options = new ConversionOptions();
+            options.setOutputFile(output.toString());
+            options.setMemoryMapped(memoryMapped);
+            options.setWorkers(3);
+            options.setRegionSize(512);
+            options.setBatchSize(50);
+            options.setMetricsReport(true);
+            options.setJmx(true);
+
+            ConversionReport report = main.convertFileWithIntelligence(input.toString(), options);
+            Assertions.assertEquals(500, report.getRows());
+            Assertions.assertEquals(5, report.getSkippedRows());
+            //Workers hand over their rejected lines as they finish
+            List<String> rejects = Files.readAllLines(RejectsFile.pathFor(output));
+            rejects.sort(Comparator.comparingInt(line -> Integer.parseInt(line.substring(4))));
+            Assertions.assertEquals(rejected, rejects);
+            Assertions.assertTrue(ManagementFactory.getPlatformMBeanServer().queryNames(
+                    new ObjectName("com.example.pst:type=Conversion,*"), null).isEmpty());
+
+            JsonObject metrics = JsonParser.parseString(new String(Files.readAllBytes(
+                    ConversionMetrics.reportPathFor(output)), StandardCharsets.UTF_8)).getAsJsonObject();
+            Assertions.assertEquals(505, metrics.get("rowsRead").getAsLong());
+            Assertions.assertEquals(5, metrics.get("rowsRejected").getAsLong());
+            Assertions.assertTrue(metrics.get("bytesOut").getAsLong() > 0);
+            Assertions.assertTrue(metrics.getAsJsonObject("stageNanos").get("parse").getAsLong() > 0);
+            JsonObject joined = metrics.getAsJsonObject("columnTypes").getAsJsonObject("joined");
+            Assertions.assertEquals(250, joined.get("date").getAsLong());
+            Assertions.assertEquals(250, joined.get("null").getAsLong());
+            Assertions.assertEquals(500, metrics.getAsJsonObject("columnTypes").getAsJsonObject("id")
+                    .get("long").getAsLong());
+        }
+    }
+
+    private static List<String> readOutput(Path output) throws IOException {
+        if (!output.toString().endsWith(".gz"))
+            return Files.readAllLines(output);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(output)), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
     private static Gson constructGson(){
         return new GsonBuilder()
                 .registerTypeAdapter(LocalDate.class, getLocalDateSerializer())
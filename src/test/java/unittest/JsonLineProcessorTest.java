@@ -0,0 +1,221 @@
+package unittest;
+
+import com.example.pst.ConversionOptions;
+import com.example.pst.ConverterFactory;
+import com.example.pst.Dialect;
+import com.example.pst.Flow;
+import com.example.pst.JsonLineProcessor;
+import com.example.pst.Main;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for converting a stream of byte chunks through the flow interfaces
+ */
+public class JsonLineProcessorTest {
+
+    private static final Dialect csv = Dialect.of(",");
+
+    /**
+     * Test that chunks cut anywhere, also inside quotes and characters, convert the same as the whole file
+     */
+    @Test
+    public void chunksConvertLikeFile(@TempDir Path tempDir) throws Exception {
+        StringBuilder text = new StringBuilder("name,note,born\r\n");
+        for (int i = 0; i < 200; i++) {
+            text.append("n").append(i).append(",\"caf\u00e9 ").append(i).append("\nx, \"\"y\"\"\",")
+                    .append(i % 3 == 0 ? "2020-01-31" : "x").append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        text.append("bad\n");
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        Path input = tempDir.resolve("input.csv");
+        Files.write(input, bytes);
+        ConversionOptions options = new ConversionOptions();
+        options.setOutputFile(tempDir.resolve("output.jsonl").toString());
+        new Main().convertFileWithIntelligence(input.toString(), options);
+        byte[] expected = Files.readAllBytes(Paths.get(options.getOutputFile()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            for (int chunkSize : new int[]{1, 2, 7, 100, bytes.length}) {
+                JsonLineProcessor processor = new JsonLineProcessor(csv, new ConverterFactory(4));
+                Assertions.assertArrayEquals(expected, run(bytes, chunkSize, processor), "Chunks of " + chunkSize);
+                Assertions.assertEquals(200, processor.getMetrics().getRowsConverted());
+                Assertions.assertEquals(1, processor.getMetrics().getRowsRejected());
+
+                processor = new JsonLineProcessor(csv, new ConverterFactory(4), 1 << 20, executor);
+                Assertions.assertArrayEquals(expected, run(bytes, chunkSize, processor), "Chunks of " + chunkSize);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that records longer than the maximum record size are rejected, also when they come in over many chunks
+     */
+    @Test
+    public void rejectOversizedRecords() throws Exception {
+        StringBuilder text = new StringBuilder("a,b\n1,x\n");
+        for (int i = 0; i < 5000; i++)
+            text.append("2,\"y");
+        text.append("\r\n3,z\n4,").append(String.join("", Collections.nCopies(200, "w"))).append("\n5,v");
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+
+        for (int chunkSize : new int[]{1, 7, 100, bytes.length}) {
+            JsonLineProcessor processor = new JsonLineProcessor(csv, new ConverterFactory(4), 100, Runnable::run);
+            String json = new String(run(bytes, chunkSize, processor), StandardCharsets.UTF_8);
+            Assertions.assertEquals(Arrays.asList("{\"a\":1,\"b\":\"x\"}", "{\"a\":3,\"b\":\"z\"}",
+                    "{\"a\":5,\"b\":\"v\"}"), Arrays.asList(json.split(System.lineSeparator())),
+                    "Chunks of " + chunkSize);
+            Assertions.assertEquals(2, processor.getMetrics().getRowsRejected());
+        }
+    }
+
+    /**
+     * Test that input is only asked for while the subscriber asks for output
+     */
+    @Test
+    public void slowSubscriberHoldsBackSource(){
+        List<ByteBuffer> chunks = new ArrayList<>();
+        chunks.add(ByteBuffer.wrap("a,b\n".getBytes(StandardCharsets.UTF_8)));
+        for (int i = 0; i < 100; i++)
+            chunks.add(ByteBuffer.wrap((i + "," + i + "\n").getBytes(StandardCharsets.UTF_8)));
+        ChunkPublisher publisher = new ChunkPublisher(chunks);
+        JsonLineProcessor processor = new JsonLineProcessor(csv, new ConverterFactory(4));
+        publisher.subscribe(processor);
+
+        List<String> received = new ArrayList<>();
+        Flow.Subscription[] subscription = new Flow.Subscription[1];
+        processor.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription[0] = s;
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                received.add(StandardCharsets.UTF_8.decode(item).toString().trim());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                Assertions.fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                received.add("complete");
+            }
+        });
+        Assertions.assertEquals(0, publisher.sent);
+
+        subscription[0].request(1);
+        Assertions.assertEquals(Arrays.asList("{\"a\":0,\"b\":0}"), received);
+        Assertions.assertEquals(2, publisher.sent);
+
+        subscription[0].request(2);
+        Assertions.assertEquals(3, received.size());
+        Assertions.assertEquals(4, publisher.sent);
+
+        subscription[0].request(Long.MAX_VALUE);
+        subscription[0].request(Long.MAX_VALUE);
+        Assertions.assertEquals(101, received.size());
+        Assertions.assertEquals("complete", received.get(100));
+    }
+
+    private static byte[] run(byte[] bytes, int chunkSize, JsonLineProcessor processor) throws Exception {
+        List<ByteBuffer> chunks = new ArrayList<>();
+        for (int i = 0; i < bytes.length; i += chunkSize)
+            chunks.add(ByteBuffer.wrap(bytes, i, Math.min(chunkSize, bytes.length - i)).slice());
+        new ChunkPublisher(chunks).subscribe(processor);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CountDownLatch done = new CountDownLatch(1);
+        Throwable[] failure = new Throwable[1];
+        processor.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                out.write(item.array(), item.arrayOffset() + item.position(), item.remaining());
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                failure[0] = throwable;
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+        Assertions.assertTrue(done.await(30, TimeUnit.SECONDS));
+        if (failure[0] != null)
+            throw new IOException(failure[0]);
+        return out.toByteArray();
+    }
+
+    /**
+     * Sends a list of chunks as far as they are asked for
+     */
+    private static final class ChunkPublisher implements Flow.Publisher<ByteBuffer> {
+        private final List<ByteBuffer> chunks;
+        private volatile int sent;
+
+        private ChunkPublisher(List<ByteBuffer> chunks) {
+            this.chunks = chunks;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                private long requested;
+                private boolean completed;
+
+                @Override
+                public synchronized void request(long n) {
+                    requested += n;
+                    while (requested > 0 && sent < chunks.size()) {
+                        requested--;
+                        subscriber.onNext(chunks.get(sent++));
+                    }
+                    if (sent == chunks.size() && !completed) {
+                        completed = true;
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+        }
+    }
+}
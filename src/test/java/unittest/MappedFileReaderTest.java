@@ -0,0 +1,90 @@
+package unittest;
+
+import com.example.pst.Dialect;
+import com.example.pst.MappedFileReader;
+import com.example.pst.RecordReader;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Tests for reading input files through memory mapped regions
+ */
+public class MappedFileReaderTest {
+
+    private static final Dialect comma = Dialect.of(",");
+
+    /**
+     * Test that small regions give the same lines as reading the file line by line
+     */
+    @Test
+    public void regionsMatchLines(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.txt");
+        StringBuilder text = new StringBuilder("name,capital\r\n");
+        for (int i = 0; i < 500; i++)
+            text.append("Land ").append(i).append(i % 3 == 0 ? ",\"Town, \u00fc\"\r\n" : ",Town\n");
+        text.append("\rlast");
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<String> lines = new ArrayList<>();
+        try (MappedFileReader reader = new MappedFileReader(input, 64)) {
+            Assertions.assertEquals("name,capital", reader.getHeader());
+            Iterator<ByteBuffer> regions = reader.regions(reader.getBodyStart(), reader.size(), comma,
+                    RecordReader.defaultMaxRecordSize);
+            while (regions.hasNext())
+                lines.addAll(MappedFileReader.records(regions.next(), comma, RecordReader.defaultMaxRecordSize));
+        }
+
+        List<String> expected = Files.readAllLines(input);
+        Assertions.assertEquals(expected.subList(1, expected.size()), lines);
+    }
+
+    /**
+     * Test that a region is not cut inside a quoted field spanning lines
+     */
+    @Test
+    public void regionsRespectQuotedLineBreaks(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.txt");
+        Files.write(input, "a,b\n1,\"x\ny\nz\"\n2,w\n".getBytes(StandardCharsets.UTF_8));
+
+        List<String> regions = new ArrayList<>();
+        try (MappedFileReader reader = new MappedFileReader(input, 4)) {
+            Iterator<ByteBuffer> iterator = reader.regions(reader.getBodyStart(), reader.size(), comma,
+                    RecordReader.defaultMaxRecordSize);
+            while (iterator.hasNext())
+                regions.add(StandardCharsets.UTF_8.decode(iterator.next()).toString());
+        }
+
+        Assertions.assertEquals("1,\"x\ny\nz\"\n", regions.get(0));
+        Assertions.assertEquals("2,w\n", regions.get(1));
+    }
+    /**
+     * Test that a record longer than the maximum record size is kept whole in one region
+     */
+    @Test
+    public void regionsKeepOversizedRecords(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.txt");
+        String oversized = "2," + String.join("", Collections.nCopies(5000, "w"));
+        Files.write(input, ("a,b\n1,x\n" + oversized + "\r\n3,\"y\nz\"\n").getBytes(StandardCharsets.UTF_8));
+
+        List<String> regions = new ArrayList<>();
+        try (MappedFileReader reader = new MappedFileReader(input, 10)) {
+            Iterator<ByteBuffer> iterator = reader.regions(reader.getBodyStart(), reader.size(), comma, 50);
+            while (iterator.hasNext())
+                regions.add(StandardCharsets.UTF_8.decode(iterator.next()).toString());
+        }
+
+        Assertions.assertEquals(Arrays.asList("1,x\n" + oversized + "\r\n", "3,\"y\nz\"\n"), regions);
+    }
+}
@@ -0,0 +1,69 @@
+package unittest;
+
+import com.example.pst.ParallelGzipOutputStream;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Checks that the parallel gzip members read back as the original stream
+ */
+public class ParallelGzipOutputStreamTest {
+
+    /**
+     * Test that many small members decompress to the written bytes in order
+     */
+    @Test
+    public void membersDecompressInOrder() throws IOException {
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        Random random = new Random(23);
+
+        try (ParallelGzipOutputStream out = new ParallelGzipOutputStream(compressed, 1000, 3, 1)) {
+            for (int i = 0; i < 500; i++) {
+                byte[] bytes = new byte[random.nextInt(300)];
+                for (int k = 0; k < bytes.length; k++)
+                    bytes[k] = (byte) ('a' + random.nextInt(4));
+                expected.write(bytes);
+                if (i % 3 == 0 && bytes.length > 0) {
+                    out.write(bytes[0]);
+                    out.write(bytes, 1, bytes.length - 1);
+                } else {
+                    out.write(bytes);
+                }
+                if (i % 100 == 0)
+                    out.flush();
+            }
+        }
+
+        Assertions.assertArrayEquals(expected.toByteArray(), decompress(compressed.toByteArray()));
+    }
+
+    /**
+     * Test that an empty stream is still a valid gzip file
+     */
+    @Test
+    public void emptyStreamIsValidGzip() throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new ParallelGzipOutputStream(compressed, 1000, 2, Deflater.DEFAULT_COMPRESSION).close();
+
+        Assertions.assertArrayEquals(new byte[0], decompress(compressed.toByteArray()));
+    }
+
+    private static byte[] decompress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read > 0; read = in.read(buffer))
+                out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,239 @@
+package unittest;
+
+import com.example.pst.ConversionOptions;
+import com.example.pst.Dialect;
+import com.example.pst.Main;
+import com.example.pst.MappedFileReader;
+import com.example.pst.RecordReader;
+import com.example.pst.RejectsFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tests for reading records whose quoted fields hold line breaks
+ */
+public class RecordReaderTest {
+
+    private static final Dialect csv = Dialect.of(",");
+
+    /**
+     * Test that lines are joined while a quote is open, also across buffer refills
+     */
+    @Test
+    public void joinQuotedLines() throws IOException {
+        Assertions.assertEquals(Arrays.asList("a,b", "1,\"x\ny\r\nz\"", "", "2,w"),
+                read("a,b\n1,\"x\ny\r\nz\"\r\n\n2,w", csv, 100));
+
+        String longField = String.join("\n", Collections.nCopies(5000, "line"));
+        Assertions.assertEquals(Arrays.asList("1,\"" + longField + "\"", "2,w"),
+                read("1,\"" + longField + "\"\r2,w\n", csv, 1 << 20));
+
+        Dialect backslash = new Dialect(',', '"', Dialect.Escape.BACKSLASH, Dialect.LineTerminator.LF, true);
+        Assertions.assertEquals(Arrays.asList("1,\"a\\\"\nb\"", "c\\", "d"),
+                read("1,\"a\\\"\nb\"\nc\\\nd", backslash, 100));
+    }
+
+    /**
+     * Test that a quote still open after the maximum record size is taken as a stray quote
+     */
+    @Test
+    public void strayQuote() throws IOException {
+        Assertions.assertEquals(Arrays.asList("1,\"x", "2,y", "3,z"), read("1,\"x\n2,y\n3,z\n", csv, 4));
+        Assertions.assertEquals(Arrays.asList("1,\"x", "2,y"), read("1,\"x\r\n2,y", csv, 100));
+    }
+
+    /**
+     * Test that records longer than the maximum record size are handed over in pieces up to their line end,
+     * never joined with the next line by a quote
+     */
+    @Test
+    public void oversizedRecords() throws IOException {
+        List<String> oversized = new ArrayList<>();
+        Assertions.assertEquals(Arrays.asList("1,x", "", "3,z", "5"),
+                read("1,x\n2,yyyy\r\n\n3,z\n\"4,\"\"\"\n5", csv, 4, oversized));
+        Assertions.assertEquals(Arrays.asList("2,yyyy", "\"4,\"\"\""), oversized);
+
+        String longLine = String.join(",", Collections.nCopies(20000, "\ud83d\ude00x"));
+        oversized.clear();
+        List<String> pieces = new ArrayList<>();
+        try (RecordReader reader = new RecordReader(new StringReader("a\n" + longLine + "\r\nb"), csv, 100,
+                (part, last) -> {
+                    Assertions.assertFalse(part.length() > 0
+                            && Character.isHighSurrogate(part.charAt(part.length() - 1)));
+                    pieces.add(part.toString());
+                    if (last) {
+                        oversized.add(String.join("", pieces));
+                        pieces.clear();
+                    }
+                })) {
+            Assertions.assertEquals("a", reader.readRecord());
+            Assertions.assertEquals("b", reader.readRecord());
+            Assertions.assertNull(reader.readRecord());
+        }
+        Assertions.assertEquals(Collections.singletonList(longLine), oversized);
+    }
+
+    /**
+     * Test that records found in bytes match the records read from text
+     */
+    @Test
+    public void recordEndMatchesReader() throws IOException {
+        Random random = new Random(17);
+        for (int n = 0; n < 2000; n++) {
+            char[] chars = new char[random.nextInt(40)];
+            for (int i = 0; i < chars.length; i++)
+                chars[i] = "ab,\"\n\r\\".charAt(random.nextInt(7));
+            String text = new String(chars);
+            for (Dialect dialect : new Dialect[]{csv,
+                    new Dialect(',', '"', Dialect.Escape.BACKSLASH, Dialect.LineTerminator.LF, true)}) {
+                int maxRecordSize = 1 + random.nextInt(20);
+                ByteBuffer bytes = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+                List<String> records = new ArrayList<>();
+                List<String> oversized = new ArrayList<>();
+                for (int start = 0; start < bytes.limit(); ) {
+                    int end = RecordReader.recordEnd(bytes, start, bytes.limit(), dialect, maxRecordSize);
+                    (end - start > maxRecordSize ? oversized : records).add(text.substring(start, end));
+                    start = RecordReader.nextRecord(bytes, end, bytes.limit());
+                }
+                List<String> oversizedRead = new ArrayList<>();
+                Assertions.assertEquals(read(text, dialect, maxRecordSize, oversizedRead), records, text);
+                Assertions.assertEquals(oversizedRead, oversized, text);
+            }
+        }
+    }
+
+    /**
+     * Test that regions are cut at the same record ends as the records read as a stream, also after a stray quote
+     */
+    @Test
+    public void regionsCutLikeStream(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.csv");
+        StringBuilder text = new StringBuilder("id,name,note\n");
+        for (int i = 0; i < 300; i++) {
+            text.append(i).append(",n").append(i);
+            text.append(i % 37 == 5 ? ",\"stray\n" : i % 5 == 0 ? ",\"a\nb\"\n" : ",x\n");
+            if (i % 53 == 7)
+                text.append(i).append(",n,").append(String.join("", Collections.nCopies(60, "w"))).append("\r\n");
+        }
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConversionOptions stream = new ConversionOptions();
+        stream.setMemoryMapped(false);
+        stream.setMaxRecordSize(50);
+        stream.setOutputFile(tempDir.resolve("stream.jsonl").toString());
+        new Main().convertFileWithIntelligence(input.toString(), stream);
+        List<String> expected = Files.readAllLines(Paths.get(stream.getOutputFile()));
+        List<String> expectedRejects = Files.readAllLines(RejectsFile.pathFor(Paths.get(stream.getOutputFile())));
+
+        for (int regionSize : new int[]{1, 17, 100, 200, MappedFileReader.defaultRegionSize}) {
+            ConversionOptions options = new ConversionOptions();
+            options.setMaxRecordSize(50);
+            options.setRegionSize(regionSize);
+            options.setWorkers(3);
+            options.setOutputFile(tempDir.resolve("output" + regionSize + ".jsonl").toString());
+            new Main().convertFileWithIntelligence(input.toString(), options);
+            Assertions.assertEquals(expected, Files.readAllLines(Paths.get(options.getOutputFile())),
+                    "Region size " + regionSize);
+            List<String> rejects = Files.readAllLines(RejectsFile.pathFor(Paths.get(options.getOutputFile())));
+            Collections.sort(rejects);
+            List<String> sortedRejects = new ArrayList<>(expectedRejects);
+            Collections.sort(sortedRejects);
+            Assertions.assertEquals(sortedRejects, rejects, "Region size " + regionSize);
+        }
+    }
+
+    /**
+     * Test that oversized lines are rejected memory mapped and as a stream, written whole to the rejects file
+     */
+    @Test
+    public void rejectOversizedLines(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.csv");
+        String longLine = String.join(",", Collections.nCopies(30000, "caf\u00e9"));
+        StringBuilder text = new StringBuilder("name,note\n");
+        for (int i = 0; i < 300; i++)
+            text.append(i % 100 == 50 ? longLine : "n" + i + ",x").append('\n');
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        for (boolean memoryMapped : new boolean[]{true, false}) {
+            ConversionOptions options = new ConversionOptions();
+            options.setMemoryMapped(memoryMapped);
+            options.setRegionSize(1000);
+            options.setBatchSize(10);
+            options.setWorkers(3);
+            options.setMaxRecordSize(1000);
+            options.setOutputFile(tempDir.resolve("output" + memoryMapped + ".jsonl").toString());
+            Assertions.assertEquals(3, new Main().convertFileWithIntelligence(input.toString(), options)
+                    .getSkippedRows());
+
+            Assertions.assertEquals(297, Files.readAllLines(Paths.get(options.getOutputFile())).size());
+            Assertions.assertEquals(Collections.nCopies(3, longLine),
+                    Files.readAllLines(RejectsFile.pathFor(Paths.get(options.getOutputFile()))));
+        }
+    }
+
+    /**
+     * Test that a field holding line breaks converts to one row memory mapped and as a stream
+     */
+    @Test
+    public void convertMultilineFields(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.csv");
+        StringBuilder text = new StringBuilder("name,note\n");
+        for (int i = 0; i < 300; i++)
+            text.append("n").append(i).append(",\"line ").append(i).append("\nnext, line\"\n");
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        for (boolean memoryMapped : new boolean[]{true, false}) {
+            ConversionOptions options = new ConversionOptions();
+            options.setMemoryMapped(memoryMapped);
+            options.setRegionSize(100);
+            options.setWorkers(3);
+            options.setOutputFile(tempDir.resolve("output" + memoryMapped + ".jsonl").toString());
+            new Main().convertFileWithIntelligence(input.toString(), options);
+
+            List<String> lines = Files.readAllLines(Paths.get(options.getOutputFile()));
+            Assertions.assertEquals(300, lines.size());
+            Assertions.assertEquals("{\"name\":\"n7\",\"note\":\"line 7\\nnext, line\"}", lines.get(7));
+        }
+    }
+
+    private static List<String> read(String text, Dialect dialect, int maxRecordSize) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (RecordReader reader = new RecordReader(new StringReader(text), dialect, maxRecordSize)) {
+            for (String record = reader.readRecord(); record != null; record = reader.readRecord())
+                records.add(record);
+        }
+        return records;
+    }
+
+    private static List<String> read(String text, Dialect dialect, int maxRecordSize, List<String> oversized)
+            throws IOException {
+        List<String> records = new ArrayList<>();
+        StringBuilder pieces = new StringBuilder();
+        try (RecordReader reader = new RecordReader(new StringReader(text), dialect, maxRecordSize,
+                (part, last) -> {
+                    pieces.append(part);
+                    if (last) {
+                        oversized.add(pieces.toString());
+                        pieces.setLength(0);
+                    }
+                })) {
+            for (String record = reader.readRecord(); record != null; record = reader.readRecord())
+                records.add(record);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,186 @@
+package unittest;
+
+import com.example.pst.Checkpoint;
+import com.example.pst.ConversionOptions;
+import com.example.pst.ConversionReport;
+import com.example.pst.IntelligentJsonLineConverter;
+import com.example.pst.Main;
+import com.example.pst.RowFilter;
+import com.example.pst.Utf8Builder;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for converting only some columns and only the rows matching filters
+ */
+public class RowFilterTest {
+
+    /**
+     * Test that a filter is split at its longest operator
+     */
+    @Test
+    public void parseFilter(){
+        RowFilter filter = RowFilter.parse(" born >= 2000-01-01 ");
+        Assertions.assertEquals("born", filter.getColumn());
+        Assertions.assertEquals(RowFilter.Operator.GREATER_OR_EQUAL, filter.getOperator());
+        Assertions.assertEquals("2000-01-01", filter.getValue());
+        Assertions.assertEquals(RowFilter.Operator.NOT_EQUAL, RowFilter.parse("a!=").getOperator());
+        Assertions.assertEquals("", RowFilter.parse("a!=").getValue());
+        Assertions.assertEquals("b=c", RowFilter.parse("a=b=c").getValue());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RowFilter.parse("a"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RowFilter.parse("=a"));
+    }
+
+    /**
+     * Test that cells are compared by their type, on the text and the byte path alike
+     */
+    @Test
+    public void selectAndFilter(){
+        IntelligentJsonLineConverter converter = new IntelligentJsonLineConverter(",", "id,name,score,born,a",
+                new Gson());
+        IntelligentJsonLineConverter all = converter.select(null, Collections.emptyList());
+        Assertions.assertEquals("{\"id\":1,\"name\":\"x\",\"score\":2.5,\"born\":\"2020-01-01\",\"a\":\"y\"}",
+                all.intelligentConvert("1,x,2.5,2020-01-01,y"));
+
+        IntelligentJsonLineConverter projected = converter.select(Arrays.asList("born", "id"), Collections.emptyList());
+        Assertions.assertEquals("{\"id\":1,\"born\":\"2020-01-01\"}",
+                projected.intelligentConvert("1,x,2.5,2020-01-01,y"));
+        Assertions.assertEquals(Arrays.asList("id", "born"), projected.getColumnNames());
+        Assertions.assertNull(projected.intelligentConvert("1,x"));
+
+        String[] lines = {"1,Smith,2.5,2020-01-01,y", "2,Lee,10,1999-12-31,", "3,,-1,x,z",
+                "x,\u00fcber,z,2020-01-01,w"};
+        assertMatches(converter, "id>=2", lines, false, true, true, false);
+        assertMatches(converter, "id!=2", lines, true, false, true, true);
+        assertMatches(converter, "score<3", lines, true, false, true, false);
+        assertMatches(converter, "score=10", lines, false, true, false, false);
+        assertMatches(converter, "born<2020-01-01", lines, false, true, false, false);
+        assertMatches(converter, "born=2020-01-01", lines, true, false, false, true);
+        assertMatches(converter, "name<M", lines, false, true, false, false);
+        assertMatches(converter, "name>M", lines, true, false, false, true);
+        assertMatches(converter, "name!=Lee", lines, true, false, false, true);
+        assertMatches(converter, "a=", lines, false, false, false, false);
+
+        IntelligentJsonLineConverter both = converter.select(Collections.singletonList("name"),
+                Arrays.asList(RowFilter.parse("id>1"), RowFilter.parse("score<=10"), RowFilter.parse("id<3")));
+        Assertions.assertEquals("{\"name\":\"Lee\"}", both.intelligentConvert(lines[1]));
+        Assertions.assertEquals("", both.intelligentConvert(lines[2]));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> converter.select(Collections.singletonList("b"), Collections.emptyList()));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> converter.select(null, Collections.singletonList(RowFilter.parse("b=1"))));
+    }
+
+    /**
+     * Test that a selected and filtered conversion writes the matching rows of a full conversion, memory mapped
+     * and as a stream
+     */
+    @Test
+    public void convertSelectedRows(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.csv");
+        StringBuilder text = new StringBuilder("id,name,note,born\n");
+        for (int i = 0; i < 3000; i++)
+            text.append(i).append(",\"Name, ").append(i % 7).append("\",x").append(i).append(",2020-01-")
+                    .append(String.format("%02d", 1 + i % 28)).append('\n');
+        text.append("bad\n");
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConversionOptions plain = new ConversionOptions();
+        plain.setOutputFile(tempDir.resolve("plain.jsonl").toString());
+        new Main().convertFileWithIntelligence(input.toString(), plain);
+        List<String> expected = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(plain.getOutputFile()))) {
+            JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+            if (json.get("id").getAsLong() <= 2500 && json.get("born").getAsString().compareTo("2020-01-10") >= 0) {
+                json.remove("note");
+                expected.add(json.toString());
+            }
+        }
+
+        for (boolean memoryMapped : new boolean[]{true, false}) {
+            ConversionOptions options = new ConversionOptions();
+            options.setMemoryMapped(memoryMapped);
+            options.setWorkers(3);
+            options.setRegionSize(1000);
+            options.setBatchSize(50);
+            options.setColumns(Arrays.asList("name", "id", "born"));
+            options.setFilters(Arrays.asList(RowFilter.parse("id<=2500"), RowFilter.parse("born>=2020-01-10")));
+            options.setOutputFile(tempDir.resolve("selected" + memoryMapped + ".jsonl").toString());
+            ConversionReport report = new Main().convertFileWithIntelligence(input.toString(), options);
+
+            Assertions.assertEquals(expected, Files.readAllLines(Paths.get(options.getOutputFile())));
+            Assertions.assertEquals(expected.size(), report.getRows());
+            Assertions.assertEquals(1, report.getSkippedRows());
+        }
+    }
+
+    /**
+     * Test that a resumed conversion keeps the selection it started with, and fails for another one
+     */
+    @Test
+    public void resumeKeepsSelection(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.csv");
+        StringBuilder text = new StringBuilder("id,name,score\n");
+        for (int i = 0; i < 500; i++)
+            text.append(i).append(",n").append(i).append(',').append(i % 10).append('\n');
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConversionOptions options = new ConversionOptions();
+        options.setOutputFile(tempDir.resolve("out.jsonl").toString());
+        options.setTail(true);
+        options.setColumns(Arrays.asList("id", "score"));
+        options.setFilters(Arrays.asList(RowFilter.parse("score>=5"), RowFilter.parse("id!=7")));
+        Assertions.assertEquals(249, new Main().convertFileWithIntelligence(input.toString(), options).getRows());
+
+        Checkpoint checkpoint = Checkpoint.read(Checkpoint.pathFor(Paths.get(options.getOutputFile()))).get();
+        Assertions.assertEquals(options.getColumns(), checkpoint.getColumns());
+        Assertions.assertEquals(options.getFilters(), checkpoint.getFilters());
+
+        Files.write(input, "500,n500,9\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        ConversionOptions other = options.copy();
+        other.setColumns(null);
+        Assertions.assertThrows(IOException.class, () -> new Main().convertFileWithIntelligence(input.toString(),
+                other));
+        other.setColumns(options.getColumns());
+        other.setFilters(Collections.singletonList(RowFilter.parse("score>=5")));
+        Assertions.assertThrows(IOException.class, () -> new Main().convertFileWithIntelligence(input.toString(),
+                other));
+
+        Assertions.assertEquals(1, new Main().convertFileWithIntelligence(input.toString(), options).getRows());
+        List<String> lines = Files.readAllLines(Paths.get(options.getOutputFile()));
+        Assertions.assertEquals(250, lines.size());
+        Assertions.assertEquals("{\"id\":500,\"score\":9}", lines.get(249));
+    }
+
+    private static void assertMatches(IntelligentJsonLineConverter converter, String filter, String[] lines,
+                                      boolean... matches) {
+        IntelligentJsonLineConverter filtered = converter.select(null,
+                Collections.singletonList(RowFilter.parse(filter)));
+        for (int i = 0; i < lines.length; i++) {
+            String json = filtered.intelligentConvert(lines[i]);
+            Assertions.assertEquals(matches[i] ? converter.intelligentConvert(lines[i]) : "", json, filter);
+
+            byte[] bytes = lines[i].getBytes(StandardCharsets.UTF_8);
+            Utf8Builder out = new Utf8Builder();
+            Assertions.assertTrue(filtered.intelligentConvert(ByteBuffer.wrap(bytes), 0, bytes.length, out));
+            Assertions.assertEquals(json, out.toString(), filter);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package unittest;
+
+import com.example.pst.ConversionOptions;
+import com.example.pst.ConversionReport;
+import com.example.pst.Main;
+import com.example.pst.ShardedOutput;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Tests for splitting the output into shard files by the hash of a column
+ */
+public class ShardedOutputTest {
+
+    /**
+     * Test that shard files are named after the output
+     */
+    @Test
+    public void shardPaths(){
+        Assertions.assertEquals(Paths.get("out", "data-3.jsonl"),
+                ShardedOutput.pathFor(Paths.get("out", "data.jsonl"), 3, 4));
+        Assertions.assertEquals(Paths.get("data-03.jsonl.gz"),
+                ShardedOutput.pathFor(Paths.get("data.jsonl.gz"), 3, 11));
+        Assertions.assertEquals(Paths.get("data-0"), ShardedOutput.pathFor(Paths.get("data"), 0, 2));
+    }
+
+    /**
+     * Test that every row goes to the shard of its key, the same memory mapped and as a stream, and that ordered
+     * shards keep the input order
+     */
+    @Test
+    public void shardByColumn(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.csv");
+        StringBuilder text = new StringBuilder("id,lastName,born\n");
+        String[] names = {"Smith", "M\u00fcller", "\"Lee, Jr\"", "", "42", "Ng"};
+        for (int i = 0; i < 2000; i++)
+            text.append(i).append(',').append(names[i % names.length]).append(",2020-01-0").append(1 + i % 9)
+                    .append('\n');
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConversionOptions plain = new ConversionOptions();
+        plain.setOutputFile(tempDir.resolve("plain.jsonl").toString());
+        new Main().convertFileWithIntelligence(input.toString(), plain);
+        List<String> expected = Files.readAllLines(Paths.get(plain.getOutputFile()));
+
+        Map<String, Integer> shardOfName = new HashMap<>();
+        for (boolean memoryMapped : new boolean[]{true, false}) {
+            for (boolean ordered : new boolean[]{true, false}) {
+                ConversionOptions options = new ConversionOptions();
+                options.setMemoryMapped(memoryMapped);
+                options.setShardOrdered(ordered);
+                options.setShardColumn("lastName");
+                options.setShards(4);
+                options.setWorkers(3);
+                options.setRegionSize(1000);
+                options.setBatchSize(50);
+                Path output = tempDir.resolve("sharded" + memoryMapped + ordered + ".jsonl");
+                options.setOutputFile(output.toString());
+                ConversionReport report = new Main().convertFileWithIntelligence(input.toString(), options);
+                Assertions.assertEquals(2000, report.getRows());
+                Assertions.assertFalse(Files.exists(output));
+
+                List<String> all = new ArrayList<>();
+                for (int shard = 0; shard < 4; shard++) {
+                    List<String> lines = Files.readAllLines(ShardedOutput.pathFor(output, shard, 4));
+                    for (String line : lines) {
+                        String name = String.valueOf(JsonParser.parseString(line).getAsJsonObject().get("lastName"));
+                        shardOfName.putIfAbsent(name, shard);
+                        Assertions.assertEquals(shard, (int) shardOfName.get(name), line);
+                    }
+                    if (ordered) {
+                        List<String> inputOrder = new ArrayList<>(expected);
+                        inputOrder.retainAll(lines);
+                        Assertions.assertEquals(inputOrder, lines);
+                    }
+                    all.addAll(lines);
+                }
+                Assertions.assertEquals(Files.size(Paths.get(plain.getOutputFile())), report.getOutputBytes());
+                Collections.sort(all);
+                List<String> sorted = new ArrayList<>(expected);
+                Collections.sort(sorted);
+                Assertions.assertEquals(sorted, all);
+            }
+        }
+        Assertions.assertTrue(shardOfName.values().stream().distinct().count() > 1);
+
+        ConversionOptions missing = new ConversionOptions();
+        missing.setShardColumn("firstName");
+        missing.setOutputFile(tempDir.resolve("missing.jsonl").toString());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new Main().convertFileWithIntelligence(input.toString(), missing));
+    }
+
+    /**
+     * Test that many gzip compressed shards, forced to the device, hold the rows of a plain conversion
+     */
+    @Test
+    public void gzipShards(@TempDir Path tempDir) throws IOException {
+        Path input = tempDir.resolve("input.csv");
+        StringBuilder text = new StringBuilder("id,key\n");
+        for (int i = 0; i < 3000; i++)
+            text.append(i).append(",k").append(i % 97).append('\n');
+        Files.write(input, text.toString().getBytes(StandardCharsets.UTF_8));
+
+        ConversionOptions plain = new ConversionOptions();
+        plain.setOutputFile(tempDir.resolve("plain.jsonl").toString());
+        new Main().convertFileWithIntelligence(input.toString(), plain);
+        List<String> expected = Files.readAllLines(Paths.get(plain.getOutputFile()));
+        Collections.sort(expected);
+
+        ConversionOptions options = new ConversionOptions();
+        options.setShardColumn("key");
+        options.setShards(64);
+        options.setFsync(true);
+        options.setWorkers(3);
+        options.setBatchSize(100);
+        Path output = tempDir.resolve("sharded.jsonl.gz");
+        options.setOutputFile(output.toString());
+        ConversionReport report = new Main().convertFileWithIntelligence(input.toString(), options);
+        Assertions.assertEquals(3000, report.getRows());
+
+        List<String> all = new ArrayList<>();
+        for (int shard = 0; shard < 64; shard++) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                    Files.newInputStream(ShardedOutput.pathFor(output, shard, 64))), StandardCharsets.UTF_8))) {
+                all.addAll(reader.lines().collect(Collectors.toList()));
+            }
+        }
+        Collections.sort(all);
+        Assertions.assertEquals(expected, all);
+    }
+}
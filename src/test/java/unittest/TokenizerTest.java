@@ -0,0 +1,105 @@
+package unittest;
+
+import com.example.pst.FieldOffsets;
+import com.example.pst.LineTokenizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Checks the tokenizer against the quote aware regex split it replaces
+ */
+public class TokenizerTest {
+
+    private static final String splitterPostfix = "(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
+
+    /**
+     * Test that quoted delimiters are not treated as field boundaries
+     */
+    @Test
+    public void tokenizeQuotedLine(){
+        String line = "\"Marie, Salomea\",Sklodowska |,\"Curie\",Female,04-07-1934,3000";
+        FieldOffsets offsets = new FieldOffsets();
+
+        int count = LineTokenizer.forDelimeter(",").tokenize(line, offsets);
+
+        Assertions.assertEquals(6, count);
+        Assertions.assertEquals("\"Marie, Salomea\"", offsets.field(line, 0));
+        Assertions.assertEquals("3000", offsets.field(line, 5));
+    }
+
+    /**
+     * Test that the tokenizer matches the regex split, including unbalanced and escaped quotes
+     */
+    @Test
+    public void tokenizeLikeRegexSplit(){
+        char[] alphabet = {'a', ' ', ',', '|', '"'};
+        Random random = new Random(42);
+        FieldOffsets offsets = new FieldOffsets();
+
+        for (String delimeter : new String[]{",", "\\|"}) {
+            LineTokenizer tokenizer = LineTokenizer.forDelimeter(delimeter);
+            for (int n = 0; n < 20000; n++) {
+                char[] chars = new char[random.nextInt(12)];
+                for (int i = 0; i < chars.length; i++)
+                    chars[i] = alphabet[random.nextInt(alphabet.length)];
+                String line = new String(chars);
+
+                String[] expected = line.split(delimeter + splitterPostfix, -1);
+                int count = tokenizer.tokenize(line, offsets);
+
+                Assertions.assertEquals(expected.length, count, line);
+                for (int i = 0; i < count; i++)
+                    Assertions.assertEquals(expected[i], offsets.field(line, i), line);
+            }
+        }
+    }
+
+    /**
+     * Test that tokenizing UTF-8 bytes, scanned a word at a time, gives the same fields as tokenizing the text,
+     * whatever the byte order and the offset of the line in the buffer
+     */
+    @Test
+    public void tokenizeBytesLikeText(){
+        String[] alphabet = {"a", " ", ",", "|", "\"", "\"\"", "\u00e9", "\ud83d\ude00", "\\"};
+        Random random = new Random(7);
+        FieldOffsets textOffsets = new FieldOffsets();
+        FieldOffsets byteOffsets = new FieldOffsets();
+
+        for (LineTokenizer tokenizer : new LineTokenizer[]{new LineTokenizer(','), new LineTokenizer('|'),
+                new LineTokenizer(',', '\'', false), new LineTokenizer(',', '"', true)}) {
+            for (int n = 0; n < 5000; n++) {
+                StringBuilder text = new StringBuilder();
+                for (int i = random.nextInt(60); i > 0; i--)
+                    text.append(alphabet[random.nextInt(alphabet.length)]);
+                String line = text.toString();
+                int count = tokenizer.tokenize(line, textOffsets);
+
+                byte[] utf8 = line.getBytes(StandardCharsets.UTF_8);
+                int offset = random.nextInt(9);
+                ByteBuffer heap = ByteBuffer.allocate(offset + utf8.length + random.nextInt(9));
+                ByteBuffer direct = ByteBuffer.allocateDirect(heap.capacity()).order(ByteOrder.LITTLE_ENDIAN);
+                for (ByteBuffer bytes : new ByteBuffer[]{heap, direct}) {
+                    for (int i = 0; i < utf8.length; i++)
+                        bytes.put(offset + i, utf8[i]);
+                    Assertions.assertEquals(count, tokenizer.tokenize(bytes, offset, offset + utf8.length,
+                            byteOffsets), line);
+                    Assertions.assertEquals(utf8.length == line.length(), byteOffsets.isAscii(), line);
+                    for (int i = 0; i < count; i++) {
+                        byte[] field = new byte[byteOffsets.end(i) - byteOffsets.start(i)];
+                        ByteBuffer slice = bytes.duplicate();
+                        ((Buffer) slice).position(byteOffsets.start(i));
+                        slice.get(field);
+                        Assertions.assertEquals(textOffsets.field(line, i),
+                                new String(field, StandardCharsets.UTF_8), line);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package unittest;
+
+import com.example.pst.IntelligentJsonLineConverter;
+import com.example.pst.RowBuffer;
+import com.example.pst.Utf8Builder;
+import com.example.pst.ValueCache;
+import com.google.gson.GsonBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Tests for remembering converted cells of repeated values
+ */
+public class ValueCacheTest {
+
+    /**
+     * Test that lines with repeated cells convert the same as by a converter which has not seen them before
+     */
+    @Test
+    public void cachedCellsKeepOutput(){
+        String heading = "id,gender,born,score,city";
+        IntelligentJsonLineConverter converter = new IntelligentJsonLineConverter(",", heading,
+                new GsonBuilder().create());
+        String[] genders = {"M", "F", "\"x\"\"y\"", "<a>", ""};
+        String[] dates = {"2020-01-31", "1999/12/31", "+12020-01-01", "x"};
+        String[] cities = {"Oslo", "M\u00fcnchen", "12", "1.5", " Rome "};
+
+        Random random = new Random(5);
+        for (int i = 0; i < 5000; i++) {
+            String line = i + "," + genders[random.nextInt(genders.length)] + ","
+                    + dates[random.nextInt(dates.length)] + "," + random.nextInt(3) + "."
+                    + random.nextInt(2) + "," + cities[random.nextInt(cities.length)];
+            IntelligentJsonLineConverter cold = new IntelligentJsonLineConverter(",", heading,
+                    new GsonBuilder().create());
+            String expected = cold.intelligentConvert(line);
+            Assertions.assertEquals(expected, converter.intelligentConvert(line), line);
+
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            Utf8Builder out = new Utf8Builder();
+            Assertions.assertTrue(converter.intelligentConvert(ByteBuffer.wrap(bytes), 0, bytes.length, out));
+            Assertions.assertEquals(expected, out.toString(), line);
+        }
+    }
+
+    /**
+     * Test that a cache of mostly distinct values turns itself off and tries again later
+     */
+    @Test
+    public void turnsOffForDistinctValues(){
+        ValueCache cache = new ValueCache(ValueCache.defaultCapacity);
+        RowBuffer row = new RowBuffer(1);
+        for (int i = 0; cache.isEnabled(); i++) {
+            String text = Integer.toString(i);
+            Assertions.assertNull(cache.get(text, 0, text.length()));
+            row.setLong(0, i);
+            cache.put(text, row, 0, text);
+            Assertions.assertTrue(i <= 2000, "Cache was not turned off");
+        }
+
+        int lookups = 1;
+        while (!cache.isEnabled()) {
+            Assertions.assertNull(cache.get("1", 0, 1));
+            lookups++;
+        }
+        Assertions.assertTrue(lookups > 1000);
+
+        row.setText(0, "M");
+        cache.put("M", row, 0, "\"M\"");
+        ValueCache.Entry entry = cache.get(ByteBuffer.wrap(new byte[]{'M'}), 0, 1);
+        Assertions.assertNotNull(entry);
+        RowBuffer other = new RowBuffer(1);
+        entry.set(0, other);
+        Assertions.assertEquals("M", other.getString(0));
+        Assertions.assertEquals("\"M\"", other.getJson(0));
+        other.setLong(0, 1);
+        Assertions.assertNull(other.getJson(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ValueCache(100));
+    }
+}
@@ -0,0 +1,159 @@
+package unittest;
+
+import com.example.pst.ValueParsers;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+/**
+ * Checks the exception free recognizers against the JDK parsers they stand in for
+ */
+public class ValueParsersTest {
+
+    private static final String[] samples = {"", "+", "-", "0", "-0", "+12", "007", "1.", ".5", ".", "1.2.3",
+            "9223372036854775807", "9223372036854775808", "-9223372036854775808", "-9223372036854775809",
+            "1e5", "1e", "1e+", "1E-7d", "2f", "2ff", "NaN", "-NaN", "NaNd", "Infinity", "+Infinity", "Infinit",
+            "0x1p3", "0x1.8P-2f", "0x.8p1", "0x1", "0xp1", "0x1.p1", "0X1P+1D", "\u0661\u0662", "-\u0663", "1\u00b2",
+            "12a", "a12", "1 2", "1_000", "1,000", "--1", "+-1", "e5", "1.5e3.2"};
+
+    /**
+     * Test that isLong and parseLong match Long.parseLong
+     */
+    @Test
+    public void recognizeLongs(){
+        for (String text : samples)
+            assertLong(text);
+
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++)
+            assertLong(randomText(random, "0123456789+-"));
+    }
+
+    /**
+     * Test that isDouble matches Double.parseDouble
+     */
+    @Test
+    public void recognizeDoubles(){
+        for (String text : samples)
+            assertDouble(text);
+
+        Random random = new Random(11);
+        for (int i = 0; i < 50000; i++)
+            assertDouble(randomText(random, "019.eE+-xXpPfdDaN"));
+    }
+
+    /**
+     * Test that date shapes match the date time formatter for every supported format
+     */
+    @Test
+    public void recognizeDates(){
+        String[] years = {"0000", "0001", "1900", "1934", "2000", "2020", "2021", "9999"};
+        for (String pattern : new String[]{"yyyy-MM-dd", "yyyy/MM/dd", "dd-MM-yyyy"}) {
+            ValueParsers.DateShape shape = ValueParsers.DateShape.compile(pattern);
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern(pattern);
+
+            for (String year : years) {
+                for (int month = 0; month <= 13; month++) {
+                    for (int day = 0; day <= 32; day++) {
+                        String text = pattern.replace("yyyy", year)
+                                .replace("MM", String.format("%02d", month))
+                                .replace("dd", String.format("%02d", day));
+                        assertDate(shape, formatter, text);
+                    }
+                }
+            }
+
+            for (String text : new String[]{"", "2020-1-01", "2020-01-1", "20200-01-01", "1-01-2020", "01-01-20201",
+                    "2020/01-01", "+12020-01-01", "01-01-+12020", "-2020-01-01", "2020-+1-01", "2020-01-01 ", "x"})
+                assertDate(shape, formatter, text);
+        }
+    }
+
+    /**
+     * Test that epochDay counts days like LocalDate.toEpochDay() and packedDate finds them back
+     */
+    @Test
+    public void countEpochDays(){
+        for (LocalDate date = LocalDate.of(0, 1, 1); date.getYear() <= 9999; date = date.plusDays(1)) {
+            int packed = date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+            Assertions.assertEquals(date.toEpochDay(), ValueParsers.epochDay(packed), date.toString());
+            Assertions.assertEquals(packed, ValueParsers.packedDate((int) date.toEpochDay()), date.toString());
+        }
+    }
+
+    /**
+     * Test that parseDouble gives the same bits as Double.parseDouble
+     */
+    @Test
+    public void parseDoubles(){
+        Random random = new Random(13);
+        for (int i = 0; i < 100000; i++) {
+            String text = randomText(random, "0123456789.-");
+            if (ValueParsers.isDouble(text))
+                assertParsedDouble(text);
+            assertParsedDouble(random.nextInt(1000000) / Math.pow(10, random.nextInt(8)) + "");
+            assertParsedDouble(String.valueOf(random.nextLong() % 1000000000000000L) + "." + random.nextInt(1000));
+        }
+        for (String text : new String[]{"0.1", "-0.0", "+0.5", "1.", ".5", "123456789012345.6",
+                "0.0000000000000000000001", "1.00000000000000000000001", "9007199254740993", "1e22", "2d", "NaN",
+                "0x1p3"})
+            assertParsedDouble(text);
+    }
+
+    private static void assertParsedDouble(String text){
+        Assertions.assertEquals(Double.doubleToRawLongBits(Double.parseDouble(text)),
+                Double.doubleToRawLongBits(ValueParsers.parseDouble(text)), text);
+    }
+
+    private static void assertLong(String text){
+        Long expected;
+        try {
+            expected = Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            expected = null;
+        }
+
+        Assertions.assertEquals(expected != null, ValueParsers.isLong(text), text);
+        if (expected != null)
+            Assertions.assertEquals(expected.longValue(), ValueParsers.parseLong(text), text);
+    }
+
+    private static void assertDouble(String text){
+        boolean expected;
+        try {
+            Double.parseDouble(text);
+            expected = true;
+        } catch (NumberFormatException e) {
+            expected = false;
+        }
+
+        Assertions.assertEquals(expected, ValueParsers.isDouble(text), text);
+    }
+
+    private static void assertDate(ValueParsers.DateShape shape, DateTimeFormatter formatter, String text){
+        LocalDate expected;
+        try {
+            expected = LocalDate.parse(text, formatter);
+        } catch (DateTimeParseException e) {
+            expected = null;
+        }
+
+        int date = shape.parse(text);
+        if (date == ValueParsers.unknownDate)
+            return;
+        LocalDate actual = date == ValueParsers.noDate ? null
+                : LocalDate.of(ValueParsers.year(date), ValueParsers.month(date), ValueParsers.day(date));
+        Assertions.assertEquals(expected, actual, text);
+    }
+
+    private static String randomText(Random random, String alphabet){
+        char[] chars = new char[random.nextInt(8)];
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = alphabet.charAt(random.nextInt(alphabet.length()));
+        return new String(chars);
+    }
+}